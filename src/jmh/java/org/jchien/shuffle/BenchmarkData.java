@@ -0,0 +1,149 @@
+package org.jchien.shuffle;
+
+import org.jchien.shuffle.model.Item;
+import org.jchien.shuffle.model.MoveType;
+import org.jchien.shuffle.model.Pokemon;
+import org.jchien.shuffle.model.RunDetails;
+import org.jchien.shuffle.model.RunDetailsBuilder;
+import org.jchien.shuffle.model.StageType;
+import org.jchien.shuffle.model.UserRunDetails;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Realistic-ish comments and runs shared by the benchmarks.
+ *
+ * @author jchien
+ */
+public class BenchmarkData {
+    public static final String SHORT_RUN = "Got lucky with disruptions this time.\n\n" +
+            "!comp  \n" +
+            "Team: M-Ttar (Lv10), A-Ninetales (Lv12, SL4), Vanilluxe (Lv15, SL5 Shot Out), Silvally (Lv15, SL5)  \n" +
+            "Items: +5 Moves, MS, APU  \n" +
+            "Score: 124,018  \n" +
+            "!end  \n";
+
+    public static final String ROSTER_RUNS = "!roster M-Bee (Lv7, Swap++ SL5, 12/12), SMCX (SL1, 15/15), " +
+            "A-Greninja (Lv15, UP SL5), Flygon (Lv15, Shot Out SL5) !end\n\n" +
+            "!eb 50  \n" +
+            "Team: SMCX, A-Greninja, Flygon, blank  \n" +
+            "Items: none  \n" +
+            "Moves left: 5  \n" +
+            "!end  \n\n" +
+            "!eb 100  \n" +
+            "Team: M-Bee, A-Greninja, Flygon, blank  \n" +
+            "Items: DD  \n" +
+            "Moves left: 1  \n" +
+            "!end  \n\n" +
+            "!run Arcanine  \n" +
+            "Team: SMCX (SL1, 15/15), Lando-T (SL5), Flygon (Lv15), Dugtrio (Block Shot)  \n" +
+            "Items: MS, DD, APU  \n" +
+            "Time left: 12  \n" +
+            "!end  \n";
+
+    public static final String HUGE_NOTES = buildHugeNotes(5000);
+
+    // a single comment with lots of runs, e.g. someone keeping a log of every stage they've cleared
+    public static final String MANY_RUNS = buildManyRuns(500);
+
+    public static final String MALFORMED = "!comp\n" +
+            "\n" +
+            "Team: Gengar (Lv15, Mimikyu (Lv15, SL5)\n" +
+            "\n" +
+            "Items: M+5, MS, APU, C-1, Rare Candy\n" +
+            "\n" +
+            "Scored: 808,472\n" +
+            "\n" +
+            "!end\n\n" +
+            "!eb fifty team: a !end";
+
+    private static String buildManyRuns(int numRuns) {
+        StringBuilder sb = new StringBuilder("Everything I've cleared so far this week.\n\n");
+        for (int i=0; i < numRuns; i++) {
+            sb.append("!eb ").append(i + 1).append("  \n")
+                    .append("Team: SMCX, A-Greninja, Flygon, blank  \n")
+                    .append("Items: none  \n")
+                    .append("Moves left: ").append(i % 10).append("  \n")
+                    .append("!end  \n\n")
+                    .append("This one took a few tries.\n\n");
+        }
+        return sb.toString();
+    }
+
+    private static String buildHugeNotes(int words) {
+        StringBuilder sb = new StringBuilder("!run Meowth\n" +
+                "Team: Meowth (Lv15, SL5 Pay Day), Persian (Lv15), Mewtwo (Lv20, SL3, 10/15)\n" +
+                "Items: none\n" +
+                "Moves left: 3\n" +
+                "Notes: ");
+        Random random = new Random(0);
+        for (int i=0; i < words; i++) {
+            if (i % 40 == 39) {
+                sb.append('\n');
+            }
+            sb.append("word").append(random.nextInt(100)).append(' ');
+        }
+        sb.append("\n!end\n");
+        return sb.toString();
+    }
+
+    private static final String[] NAMES = {
+            "M-Ttar", "A-Ninetales", "Vanilluxe", "Silvally", "SMCX", "A-Greninja", "Flygon", "Lando-T"
+    };
+
+    private static final String[] SKILLS = { null, "Shot Out", "Swap++", "Block Shot", "Pay Day" };
+
+    /**
+     * @param numRuns   number of runs
+     * @param stageType stage type for every run
+     * @return          runs with a mix of teams, items, and results, in no particular order
+     */
+    public static List<UserRunDetails> generateRuns(int numRuns, StageType stageType) {
+        Random random = new Random(numRuns);
+        Item[] allItems = Item.values();
+
+        List<UserRunDetails> runs = new ArrayList<>(numRuns);
+        for (int i=0; i < numRuns; i++) {
+            List<Pokemon> team = new ArrayList<>(4);
+            for (int slot=0; slot < 4; slot++) {
+                team.add(new Pokemon(NAMES[random.nextInt(NAMES.length)],
+                                     random.nextBoolean() ? 10 + random.nextInt(20) : null,
+                                     random.nextBoolean() ? 1 + random.nextInt(5) : null,
+                                     SKILLS[random.nextInt(SKILLS.length)],
+                                     null,
+                                     null,
+                                     random.nextInt(10) == 0));
+            }
+
+            List<Item> items = new ArrayList<>();
+            for (Item item : allItems) {
+                if (random.nextBoolean()) {
+                    items.add(item);
+                }
+            }
+
+            RunDetailsBuilder builder = new RunDetailsBuilder()
+                    .setTeam(team)
+                    .setItems(items)
+                    .setStageType(stageType)
+                    .setNotes(random.nextInt(5) == 0 ? "some notes" : null)
+                    .setThrowables(Arrays.asList());
+
+            if (stageType == StageType.COMPETITION) {
+                builder.setScore(random.nextInt(1000000))
+                        .setMoveType(MoveType.MOVES);
+            } else {
+                builder.setStage("50")
+                        .setMovesLeft(random.nextInt(10))
+                        .setMoveType(MoveType.MOVES);
+            }
+
+            RunDetails run = builder.build();
+            runs.add(new UserRunDetails("user" + i, "c" + Integer.toString(i, 36), run));
+        }
+        return runs;
+    }
+}
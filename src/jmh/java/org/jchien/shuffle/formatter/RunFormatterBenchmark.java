@@ -0,0 +1,110 @@
+package org.jchien.shuffle.formatter;
+
+import org.jchien.shuffle.BenchmarkData;
+import org.jchien.shuffle.metrics.ScoreBotMetrics;
+import org.jchien.shuffle.model.Stage;
+import org.jchien.shuffle.model.StageType;
+import org.jchien.shuffle.model.UserRunDetails;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * sortFromScratch and rankingUpdate compare ordering a stage every poll against keeping its RunRanking around and
+ * only merging in the run that changed. formatRanked uses an up to date ranking, so it's mostly rendering rows and
+ * splitting them into parts. formatCachedRows is the same with every row already in the row cache, like a poll where
+ * nothing changed. Run with -Pjmh.prof=gc to compare allocations.
+ *
+ * @author jchien
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RunFormatterBenchmark {
+    private static final String SUBMISSION_URL = "https://www.reddit.com/r/PokemonShuffle/comments/7ncsuk/test/";
+
+    @Param({"10", "1000", "10000"})
+    public int numRuns;
+
+    @Param({"COMPETITION", "ESCALATION_BATTLE"})
+    public StageType stageType;
+
+    private RunFormatter runFormatter;
+
+    private Stage stage;
+
+    private List<UserRunDetails> runs;
+
+    private RunRanking ranking;
+
+    private RunFormatter cachingFormatter;
+
+    private int nextEdited = 0;
+
+    @Setup
+    public void setup() {
+        runFormatter = new RunFormatter();
+        stage = new Stage(stageType, stageType == StageType.COMPETITION ? null : "50");
+        runs = BenchmarkData.generateRuns(numRuns, stageType);
+        ranking = new RunRanking(stageType);
+        ranking.update(new ArrayList<>(runs));
+
+        cachingFormatter = new RunFormatter(false, 0, new RowCache(numRuns), ScoreBotMetrics.NOOP);
+        cachingFormatter.formatRuns(new ArrayList<>(runs), stage, SUBMISSION_URL, Collections.emptyList(), ranking);
+    }
+
+    @Benchmark
+    public List<String> formatRuns() {
+        // formatRuns sorts in place, copy so every invocation starts from the same unsorted order
+        return runFormatter.formatRuns(new ArrayList<>(runs), stage, SUBMISSION_URL);
+    }
+
+    @Benchmark
+    public List<String> formatRanked() {
+        return runFormatter.formatRuns(new ArrayList<>(runs), stage, SUBMISSION_URL, Collections.emptyList(), ranking);
+    }
+
+    @Benchmark
+    public List<String> formatCachedRows() {
+        return cachingFormatter.formatRuns(new ArrayList<>(runs),
+                                           stage,
+                                           SUBMISSION_URL,
+                                           Collections.emptyList(),
+                                           ranking);
+    }
+
+    @Benchmark
+    public List<UserRunDetails> sortFromScratch() {
+        List<UserRunDetails> copy = new ArrayList<>(runs);
+        RunRanking.sort(copy, stageType);
+        return copy;
+    }
+
+    @Benchmark
+    public List<UserRunDetails> rankingUpdate() {
+        // one comment edited per poll, its run comes back from the parser as a new instance
+        int idx = nextEdited++ % runs.size();
+        UserRunDetails edited = runs.get(idx);
+        runs.set(idx, new UserRunDetails(edited.getUser(), edited.getCommentId(), edited.getRunDetails()));
+
+        List<UserRunDetails> copy = new ArrayList<>(runs);
+        ranking.update(copy);
+        return copy;
+    }
+}
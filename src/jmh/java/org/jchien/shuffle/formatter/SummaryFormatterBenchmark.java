@@ -0,0 +1,65 @@
+package org.jchien.shuffle.formatter;
+
+import org.jchien.shuffle.model.BotComment;
+import org.jchien.shuffle.model.Stage;
+import org.jchien.shuffle.model.StageType;
+import org.jchien.shuffle.model.TablePartId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author jchien
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SummaryFormatterBenchmark {
+    private static final String SUBMISSION_URL = "https://www.reddit.com/r/PokemonShuffle/comments/7ncsuk/test/";
+
+    private SummaryFormatter summaryFormatter;
+
+    private Map<TablePartId, BotComment> tableMap;
+
+    @Setup
+    public void setup() {
+        summaryFormatter = new SummaryFormatter();
+        tableMap = new HashMap<>();
+
+        int id = 0;
+        for (int part=0; part < 5; part++) {
+            tableMap.put(new TablePartId(new Stage(StageType.COMPETITION, null), part),
+                         new BotComment(Integer.toString(id++, 36), ""));
+        }
+        // a typical EB thread has runs for a few dozen stages
+        for (int ebStage=1; ebStage <= 100; ebStage += 3) {
+            for (int part=0; part < 2; part++) {
+                tableMap.put(new TablePartId(new Stage(StageType.ESCALATION_BATTLE, Integer.toString(ebStage)), part),
+                             new BotComment(Integer.toString(id++, 36), ""));
+            }
+        }
+        for (String stageId : new String[] { "meowth", "arcanine", "mewtwo", "100", "250" }) {
+            tableMap.put(new TablePartId(new Stage(StageType.NORMAL, stageId), 0),
+                         new BotComment(Integer.toString(id++, 36), ""));
+        }
+    }
+
+    @Benchmark
+    public String formatSummary() {
+        return summaryFormatter.formatSummary(SUBMISSION_URL, tableMap);
+    }
+}
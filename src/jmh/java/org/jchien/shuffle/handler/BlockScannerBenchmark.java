@@ -0,0 +1,66 @@
+package org.jchien.shuffle.handler;
+
+import org.jchien.shuffle.BenchmarkData;
+import org.jchien.shuffle.handler.BlockScanner.Block;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Block extraction only: BlockScanner against the DOTALL regexes and backwards offset search it replaced.
+ *
+ * @author jchien
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BlockScannerBenchmark {
+    @Param({"short", "roster", "notes", "many"})
+    public String corpus;
+
+    private String commentBody;
+
+    @Setup
+    public void setup() {
+        switch (corpus) {
+            case "short":
+                commentBody = BenchmarkData.SHORT_RUN;
+                break;
+            case "roster":
+                commentBody = BenchmarkData.ROSTER_RUNS;
+                break;
+            case "notes":
+                commentBody = BenchmarkData.HUGE_NOTES;
+                break;
+            case "many":
+                commentBody = BenchmarkData.MANY_RUNS;
+                break;
+            default:
+                throw new IllegalArgumentException("unknown corpus: " + corpus);
+        }
+    }
+
+    @Benchmark
+    public List<Block> scanner() {
+        return BlockScanner.scan(commentBody);
+    }
+
+    @Benchmark
+    public List<Block> regex() {
+        return BlockScannerTest.scanWithRegex(commentBody);
+    }
+}
@@ -0,0 +1,62 @@
+package org.jchien.shuffle.handler;
+
+import org.jchien.shuffle.BenchmarkData;
+import org.jchien.shuffle.metrics.ScoreBotMetrics;
+import org.jchien.shuffle.model.ParsedComment;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full comment parsing: block extraction, RunParser, and Canonicalizer.
+ *
+ * @author jchien
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserCommentHandlerBenchmark {
+    @Param({"short", "roster", "notes", "malformed"})
+    public String corpus;
+
+    private String commentBody;
+
+    @Setup
+    public void setup() {
+        switch (corpus) {
+            case "short":
+                commentBody = BenchmarkData.SHORT_RUN;
+                break;
+            case "roster":
+                commentBody = BenchmarkData.ROSTER_RUNS;
+                break;
+            case "notes":
+                commentBody = BenchmarkData.HUGE_NOTES;
+                break;
+            case "malformed":
+                commentBody = BenchmarkData.MALFORMED;
+                break;
+            default:
+                throw new IllegalArgumentException("unknown corpus: " + corpus);
+        }
+    }
+
+    @Benchmark
+    public ParsedComment parseRuns() {
+        UserCommentHandler handler = new UserCommentHandler("user", "id", commentBody, ScoreBotMetrics.NOOP);
+        return handler.parseRuns();
+    }
+}
@@ -0,0 +1,86 @@
+package org.jchien.shuffle.parser;
+
+import org.jchien.shuffle.model.MoveType;
+import org.jchien.shuffle.model.RunDetails;
+import org.jchien.shuffle.model.StageType;
+import org.jchien.shuffle.parser.exception.FormatException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * canonicalize() covers a whole run. The fields benchmarks only parse the pokemon fields and notes, once with
+ * Canonicalizer's scanners and once with the regexes they replaced. Run with -Pjmh.prof=gc to compare allocations.
+ *
+ * @author jchien
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CanonicalizerBenchmark {
+    private Canonicalizer canonicalizer;
+
+    private RawRunDetails raw;
+
+    @Setup
+    public void setup() {
+        canonicalizer = new Canonicalizer();
+        raw = new RawRunDetails(
+                Arrays.asList(
+                        new RawPokemonBuilder().setName("M-Ttar").setLevel("Lv10").setMsus("12/15").build(),
+                        new RawPokemonBuilder().setName("A-Ninetales").setLevel("Lv12").setSkill("SL4").build(),
+                        new RawPokemonBuilder().setName("Vanilluxe").setLevel("15").setSkill("SL5 Shot Out").build(),
+                        new RawPokemonBuilder().setName("Silvally").setPerfect(true).build()),
+                Arrays.asList("+5 Moves", "MS", "Disruption Delay", "APU"),
+                "124018",
+                null,
+                null,
+                null,
+                StageType.COMPETITION,
+                MoveType.MOVES,
+                "had  a\tbunch of\n disruptions   early on");
+    }
+
+    @Benchmark
+    public RunDetails canonicalize() {
+        return canonicalizer.canonicalize(raw, null, null);
+    }
+
+    @Benchmark
+    public void scannerFields(Blackhole bh) throws FormatException {
+        for (RawPokemon pokemon : raw.getTeam()) {
+            bh.consume(canonicalizer.getLevel(pokemon.getLevel()));
+            bh.consume(canonicalizer.getSkillLevel(pokemon.getSkill()));
+            bh.consume(canonicalizer.getSkillName(pokemon.getSkill()));
+            bh.consume(canonicalizer.getMsuCount(pokemon.getMsus()));
+            bh.consume(canonicalizer.getMaxMsus(pokemon.getMsus()));
+        }
+        bh.consume(canonicalizer.getNotes(raw.getNotes()));
+    }
+
+    @Benchmark
+    public void regexFields(Blackhole bh) throws FormatException {
+        for (RawPokemon pokemon : raw.getTeam()) {
+            bh.consume(CanonicalizerRegexTest.getLevel(pokemon.getLevel()));
+            bh.consume(CanonicalizerRegexTest.getSkillLevel(pokemon.getSkill()));
+            bh.consume(CanonicalizerRegexTest.getSkillName(pokemon.getSkill()));
+            bh.consume(CanonicalizerRegexTest.getMsuCount(pokemon.getMsus()));
+            bh.consume(CanonicalizerRegexTest.getMaxMsus(pokemon.getMsus()));
+        }
+        bh.consume(CanonicalizerRegexTest.getNotes(raw.getNotes()));
+    }
+}
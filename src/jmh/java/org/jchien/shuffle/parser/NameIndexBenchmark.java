@@ -0,0 +1,56 @@
+package org.jchien.shuffle.parser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * load covers startup, reading and indexing the bundled pokemon data. The lookup benchmarks cover an alias that hits
+ * the hash, a typo that goes through the trigram index, and a name that isn't in the data at all.
+ *
+ * @author jchien
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NameIndexBenchmark {
+    private NameIndex index;
+
+    @Setup
+    public void setup() {
+        index = NameIndex.fromResource(ShuffleDex.POKEMON_RESOURCE, true);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public NameIndex load() {
+        return NameIndex.fromResource(ShuffleDex.POKEMON_RESOURCE, true);
+    }
+
+    @Benchmark
+    public String exactHit() {
+        return index.canonicalize("M-Ttar");
+    }
+
+    @Benchmark
+    public String typo() {
+        return index.canonicalize("Mega Tyranitr");
+    }
+
+    @Benchmark
+    public String miss() {
+        return index.canonicalize("Missingno");
+    }
+}
@@ -0,0 +1,91 @@
+package org.jchien.shuffle.parser;
+
+import org.jchien.shuffle.BenchmarkData;
+import org.jchien.shuffle.handler.BlockScanner;
+import org.jchien.shuffle.handler.BlockScanner.Block;
+import org.jchien.shuffle.handler.BlockScanner.BlockType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses every run block in a comment with a new RunParser per block, one reused through RunParserPool, and
+ * FastRunParser. Run with the gc profiler to see the allocation difference:
+ * <pre>./gradlew jmh -Pjmh.include=RunParserBenchmark -Pjmh.prof=gc</pre>
+ *
+ * @author jchien
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RunParserBenchmark {
+    @Param({"short", "roster", "many"})
+    public String corpus;
+
+    private String[] runBlocks;
+
+    @Setup
+    public void setup() {
+        String commentBody;
+        switch (corpus) {
+            case "short":
+                commentBody = BenchmarkData.SHORT_RUN;
+                break;
+            case "roster":
+                commentBody = BenchmarkData.ROSTER_RUNS;
+                break;
+            case "many":
+                commentBody = BenchmarkData.MANY_RUNS;
+                break;
+            default:
+                throw new IllegalArgumentException("unknown corpus: " + corpus);
+        }
+
+        List<Block> blocks = BlockScanner.scan(commentBody);
+        runBlocks = blocks.stream()
+                .filter(b -> b.getType() == BlockType.RUN)
+                .map(Block::getContent)
+                .toArray(String[]::new);
+    }
+
+    @Benchmark
+    public void newParser(Blackhole bh) throws Exception {
+        for (String block : runBlocks) {
+            RunParser p = new RunParser(new StringReader(block));
+            p.start();
+            bh.consume(p.getDetails());
+        }
+    }
+
+    @Benchmark
+    public void pooledParser(Blackhole bh) throws Exception {
+        for (String block : runBlocks) {
+            RunParser p = RunParserPool.acquire(block);
+            p.start();
+            bh.consume(p.getDetails());
+        }
+    }
+
+    @Benchmark
+    public void fastParser(Blackhole bh) {
+        for (String block : runBlocks) {
+            bh.consume(FastRunParser.parse(block));
+        }
+    }
+}
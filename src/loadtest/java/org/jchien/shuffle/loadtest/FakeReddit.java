@@ -0,0 +1,529 @@
+package org.jchien.shuffle.loadtest;
+
+import net.dean.jraw.RedditClient;
+import net.dean.jraw.models.Comment;
+import net.dean.jraw.models.Listing;
+import net.dean.jraw.models.Submission;
+import net.dean.jraw.pagination.BarebonesPaginator;
+import net.dean.jraw.pagination.Paginator;
+import net.dean.jraw.references.CommentReference;
+import net.dean.jraw.references.InboxReference;
+import net.dean.jraw.references.SelfUserReference;
+import net.dean.jraw.references.SubmissionReference;
+import net.dean.jraw.references.SubredditReference;
+import net.dean.jraw.tree.ReplyCommentNode;
+import net.dean.jraw.tree.RootCommentNode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+/**
+ * In-process stand-in for reddit. Holds subreddits, submissions, and comment trees in memory and hands out a
+ * RedditClient whose references read from and write to them, so ScoreBot can be run end to end without a network.
+ * <p>
+ * Every simulated API call sleeps for a configurable latency and takes a slot in a fixed rate limit window, the
+ * same way reddit's X-Ratelimit-Remaining/X-Ratelimit-Reset headers work. Calls that would have exhausted the
+ * window wait for it to reset and are counted as throttled.
+ * <p>
+ * Comment trees are served the way reddit does: the first request only returns the first page of top level
+ * comments and the rest have to be loaded in batches with "load more comments".
+ *
+ * @author jchien
+ */
+public class FakeReddit {
+    public static final String LISTING = "listing";
+    public static final String COMMENTS = "comments";
+    public static final String INSPECT = "inspect";
+    public static final String MORE_CHILDREN = "morechildren";
+    public static final String REPLY = "reply";
+    public static final String EDIT = "edit";
+    public static final String DELETE = "delete";
+    public static final String COMPOSE = "compose";
+
+    private static final int LISTING_PAGE_SIZE = 100;
+
+    private static final String DELETED = "[deleted]";
+
+    private final String botUser;
+
+    private final long latencyMillis;
+
+    private final int requestsPerWindow;
+
+    private final long windowMillis;
+
+    // top level comments returned by the initial comment request, the rest need "load more comments"
+    private final int initialComments;
+
+    // top level comments returned by each "load more comments"
+    private final int moreChildrenBatchSize;
+
+    // subreddit name -> submissions, newest first
+    private final Map<String, List<FakeSubmission>> subreddits = new ConcurrentHashMap<>();
+
+    private final Map<String, FakeSubmission> submissions = new ConcurrentHashMap<>();
+
+    private final Map<String, FakeComment> comments = new ConcurrentHashMap<>();
+
+    // subreddit name -> comments, oldest first
+    private final Map<String, List<FakeComment>> subredditComments = new ConcurrentHashMap<>();
+
+    private final AtomicLong nextId = new AtomicLong(1000);
+
+    // endpoint -> number of calls
+    private final Map<String, LongAdder> callCounts = new ConcurrentHashMap<>();
+
+    private final LongAdder throttledCalls = new LongAdder();
+
+    private final LongAdder messages = new LongAdder();
+
+    private final Object rateLimitLock = new Object();
+
+    private long windowStart = System.currentTimeMillis();
+
+    private int windowRequests = 0;
+
+    private final RedditClient redditClient;
+
+    /**
+     * @param botUser               username of the bot, returned by me()
+     * @param latencyMillis         time each simulated API call takes
+     * @param requestsPerWindow     requests allowed per rate limit window, 0 for no limit
+     * @param windowMillis          length of the rate limit window, reddit uses 10 minutes
+     * @param initialComments       top level comments returned by the first comment request
+     * @param moreChildrenBatchSize top level comments returned by each "load more comments" request
+     */
+    public FakeReddit(String botUser,
+                      long latencyMillis,
+                      int requestsPerWindow,
+                      long windowMillis,
+                      int initialComments,
+                      int moreChildrenBatchSize) {
+        this.botUser = botUser;
+        this.latencyMillis = latencyMillis;
+        this.requestsPerWindow = requestsPerWindow;
+        this.windowMillis = windowMillis;
+        this.initialComments = initialComments;
+        this.moreChildrenBatchSize = moreChildrenBatchSize;
+        this.redditClient = createRedditClient();
+    }
+
+    public RedditClient getRedditClient() {
+        return redditClient;
+    }
+
+    /**
+     * @return id of the new submission
+     */
+    public String addSubmission(String subreddit, String title, Date created) {
+        FakeSubmission submission = new FakeSubmission(newId(), subreddit, title, created);
+        submissions.put(submission.id, submission);
+        List<FakeSubmission> posts = subreddits.computeIfAbsent(subreddit, k -> new CopyOnWriteArrayList<>());
+        posts.add(0, submission);
+        return submission.id;
+    }
+
+    /**
+     * @param parentId  submission or comment id
+     * @return          id of the new comment
+     */
+    public String addComment(String parentId, String author, String body) {
+        FakeComment comment = new FakeComment(newId(), author, body, new Date());
+
+        FakeSubmission submission = submissions.get(parentId);
+        if (submission != null) {
+            comment.submission = submission;
+            submission.topLevel.add(comment);
+        } else {
+            FakeComment parent = getComment(parentId);
+            comment.submission = parent.submission;
+            comment.parent = parent;
+            parent.children.add(comment);
+        }
+
+        comments.put(comment.id, comment);
+        comment.submission.commentCount.incrementAndGet();
+        subredditComments.computeIfAbsent(comment.submission.subreddit,
+                                          k -> Collections.synchronizedList(new ArrayList<>()))
+                .add(comment);
+        return comment.id;
+    }
+
+    public void editComment(String commentId, String body) {
+        FakeComment comment = getComment(commentId);
+        comment.body = body;
+        comment.edited = new Date();
+    }
+
+    public String getCommentBody(String commentId) {
+        return getComment(commentId).body;
+    }
+
+    /**
+     * @return endpoint -> number of calls since the last reset, sorted by endpoint
+     */
+    public Map<String, Long> getCallCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> entry : callCounts.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().sum());
+        }
+        return counts;
+    }
+
+    public long getTotalCalls() {
+        long total = 0;
+        for (LongAdder count : callCounts.values()) {
+            total += count.sum();
+        }
+        return total;
+    }
+
+    public long getThrottledCalls() {
+        return throttledCalls.sum();
+    }
+
+    public long getMessagesSent() {
+        return messages.sum();
+    }
+
+    public void resetCounts() {
+        callCounts.clear();
+        throttledCalls.reset();
+        messages.reset();
+    }
+
+    private String newId() {
+        return Long.toString(nextId.getAndIncrement(), 36);
+    }
+
+    private FakeComment getComment(String commentId) {
+        FakeComment comment = comments.get(commentId);
+        if (comment == null) {
+            throw new IllegalArgumentException("no such comment: " + commentId);
+        }
+        return comment;
+    }
+
+    /**
+     * Simulates the cost of a single API call.
+     */
+    private void call(String endpoint) {
+        callCounts.computeIfAbsent(endpoint, k -> new LongAdder()).increment();
+        waitForRateLimit();
+        sleep(latencyMillis);
+    }
+
+    private void waitForRateLimit() {
+        if (requestsPerWindow <= 0) {
+            return;
+        }
+
+        long waitMillis = 0;
+        synchronized (rateLimitLock) {
+            long now = System.currentTimeMillis();
+            if (now - windowStart >= windowMillis) {
+                windowStart = now;
+                windowRequests = 0;
+            }
+
+            if (windowRequests >= requestsPerWindow) {
+                // reddit would have answered with a 429, wait for the reset like a well behaved client
+                throttledCalls.increment();
+                waitMillis = windowStart + windowMillis - now;
+                windowStart += windowMillis;
+                windowRequests = 0;
+            }
+            windowRequests++;
+        }
+        sleep(waitMillis);
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted during simulated request", e);
+        }
+    }
+
+    private RedditClient createRedditClient() {
+        RedditClient client = mock(RedditClient.class);
+
+        InboxReference inbox = mock(InboxReference.class);
+        doAnswer(invocation -> {
+            call(COMPOSE);
+            messages.increment();
+            return null;
+        }).when(inbox).compose(anyString(), anyString(), anyString());
+
+        SelfUserReference me = mock(SelfUserReference.class);
+        doReturn(botUser).when(me).getUsername();
+        doReturn(inbox).when(me).inbox();
+        doReturn(me).when(client).me();
+
+        doAnswer(invocation -> subredditReference(invocation.getArgument(0))).when(client).subreddit(anyString());
+        doAnswer(invocation -> submissionReference(invocation.getArgument(0))).when(client).submission(anyString());
+        doAnswer(invocation -> commentReference(invocation.getArgument(0))).when(client).comment(anyString());
+
+        return client;
+    }
+
+    private SubredditReference subredditReference(String subreddit) throws NoSuchMethodException {
+        Paginator<?> posts = mock(Paginator.class);
+        doAnswer(invocation -> {
+            List<FakeSubmission> newest = subreddits.getOrDefault(subreddit, Collections.emptyList());
+            return listings(newest, FakeSubmission::toSubmission).iterator();
+        }).when(posts).iterator();
+
+        BarebonesPaginator<?> comments = mock(BarebonesPaginator.class);
+        doAnswer(invocation -> {
+            List<FakeComment> newest = new ArrayList<>(subredditComments.getOrDefault(subreddit,
+                                                                                      Collections.emptyList()));
+            Collections.reverse(newest);
+            return listings(newest, FakeComment::toComment).iterator();
+        }).when(comments).iterator();
+
+        SubredditReference reference = mock(SubredditReference.class);
+        doReturn(mockBuilder("posts", posts)).when(reference).posts();
+        doReturn(mockBuilder("comments", comments)).when(reference).comments();
+        return reference;
+    }
+
+    // builder types differ between JRAW versions, any method that isn't build() just returns the builder
+    private static Object mockBuilder(String referenceMethod, Object paginator) throws NoSuchMethodException {
+        Class<?> builderType = SubredditReference.class.getMethod(referenceMethod).getReturnType();
+        return mock(builderType, invocation ->
+                "build".equals(invocation.getMethod().getName()) ? paginator : invocation.getMock());
+    }
+
+    // pages are fetched lazily, like the real paginators
+    private <F, T> Iterable<Listing<T>> listings(List<F> newest, Function<F, T> converter) {
+        return () -> new Iterator<Listing<T>>() {
+            private int offset = 0;
+
+            @Override
+            public boolean hasNext() {
+                return offset < newest.size();
+            }
+
+            @Override
+            public Listing<T> next() {
+                call(LISTING);
+
+                int end = Math.min(offset + LISTING_PAGE_SIZE, newest.size());
+                List<T> page = new ArrayList<>();
+                for (F item : newest.subList(offset, end)) {
+                    page.add(converter.apply(item));
+                }
+                offset = end;
+
+                @SuppressWarnings("unchecked")
+                Listing<T> listing = mock(Listing.class);
+                doAnswer(invocation -> page.iterator()).when(listing).iterator();
+                doReturn(page.size()).when(listing).size();
+                return listing;
+            }
+        };
+    }
+
+    private SubmissionReference submissionReference(String submissionId) {
+        FakeSubmission submission = submissions.get(submissionId);
+        if (submission == null) {
+            throw new IllegalArgumentException("no such submission: " + submissionId);
+        }
+
+        SubmissionReference reference = mock(SubmissionReference.class);
+        doAnswer(invocation -> {
+            call(COMMENTS);
+            return submission.loadComments();
+        }).when(reference).comments();
+        doAnswer(invocation -> {
+            call(INSPECT);
+            return submission.toSubmission();
+        }).when(reference).inspect();
+        doAnswer(invocation -> {
+            call(REPLY);
+            return getComment(addComment(submissionId, botUser, invocation.getArgument(0))).toComment();
+        }).when(reference).reply(anyString());
+        return reference;
+    }
+
+    private CommentReference commentReference(String commentId) {
+        CommentReference reference = mock(CommentReference.class);
+        doAnswer(invocation -> {
+            call(REPLY);
+            return getComment(addComment(commentId, botUser, invocation.getArgument(0))).toComment();
+        }).when(reference).reply(anyString());
+        doAnswer(invocation -> {
+            call(EDIT);
+            editComment(commentId, invocation.getArgument(0));
+            return null;
+        }).when(reference).edit(anyString());
+        doAnswer(invocation -> {
+            call(DELETE);
+            FakeComment comment = getComment(commentId);
+            comment.author = DELETED;
+            comment.body = DELETED;
+            return null;
+        }).when(reference).delete();
+        return reference;
+    }
+
+    private class FakeSubmission {
+        private final String id;
+
+        private final String subreddit;
+
+        private final String title;
+
+        private final Date created;
+
+        private final List<FakeComment> topLevel = new CopyOnWriteArrayList<>();
+
+        private final AtomicInteger commentCount = new AtomicInteger();
+
+        private Submission submission;
+
+        // parent of the top level comments, only the subject is ever read from it
+        private RootCommentNode parentNode;
+
+        private FakeSubmission(String id, String subreddit, String title, Date created) {
+            this.id = id;
+            this.subreddit = subreddit;
+            this.title = title;
+            this.created = created;
+        }
+
+        private synchronized Submission toSubmission() {
+            if (submission == null) {
+                submission = mock(Submission.class);
+                doReturn(id).when(submission).getId();
+                doReturn(subreddit).when(submission).getSubreddit();
+                doReturn(title).when(submission).getTitle();
+                doReturn(created).when(submission).getCreated();
+                doReturn("https://www.reddit.com/r/" + subreddit + "/comments/" + id + "/")
+                        .when(submission).getUrl();
+                doReturn(false).when(submission).isLocked();
+                doAnswer(invocation -> commentCount.get()).when(submission).getCommentCount();
+            }
+            return submission;
+        }
+
+        private synchronized RootCommentNode getParentNode() {
+            if (parentNode == null) {
+                parentNode = mock(RootCommentNode.class);
+                doReturn(toSubmission()).when(parentNode).getSubject();
+            }
+            return parentNode;
+        }
+
+        /**
+         * @return a new root node that pages through a snapshot of the top level comments
+         */
+        private RootCommentNode loadComments() {
+            List<FakeComment> snapshot = new ArrayList<>(topLevel);
+            AtomicInteger loaded = new AtomicInteger(Math.min(initialComments, snapshot.size()));
+
+            RootCommentNode root = mock(RootCommentNode.class);
+            doReturn(toSubmission()).when(root).getSubject();
+            doReturn(null).when(root).getParent();
+            doAnswer(invocation -> toNodes(snapshot.subList(0, loaded.get()))).when(root).getReplies();
+            doAnswer(invocation -> loaded.get() < snapshot.size()).when(root).hasMoreChildren();
+            doAnswer(invocation -> {
+                call(MORE_CHILDREN);
+                int start = loaded.get();
+                int end = Math.min(start + moreChildrenBatchSize, snapshot.size());
+                loaded.set(end);
+                return toNodes(snapshot.subList(start, end));
+            }).when(root).replaceMore(redditClient);
+            return root;
+        }
+    }
+
+    private class FakeComment {
+        private final String id;
+
+        private final Date created;
+
+        private final List<FakeComment> children = new CopyOnWriteArrayList<>();
+
+        private FakeSubmission submission;
+
+        private FakeComment parent;
+
+        private volatile String author;
+
+        private volatile String body;
+
+        private volatile Date edited;
+
+        private Comment comment;
+
+        private ReplyCommentNode node;
+
+        private FakeComment(String id, String author, String body, Date created) {
+            this.id = id;
+            this.author = author;
+            this.body = body;
+            this.created = created;
+        }
+
+        // mocks are created once and read the current state, so edits show up in later polls
+        private synchronized Comment toComment() {
+            if (comment == null) {
+                comment = mock(Comment.class);
+                doReturn(id).when(comment).getId();
+                doReturn("t1_" + id).when(comment).getFullName();
+                doReturn("t3_" + submission.id).when(comment).getSubmissionFullName();
+                doReturn(submission.subreddit).when(comment).getSubreddit();
+                doReturn(created).when(comment).getCreated();
+                doAnswer(invocation -> author).when(comment).getAuthor();
+                doAnswer(invocation -> body).when(comment).getBody();
+                doAnswer(invocation -> edited).when(comment).getEdited();
+            }
+            return comment;
+        }
+
+        private synchronized ReplyCommentNode toNode() {
+            if (node == null) {
+                node = mock(ReplyCommentNode.class);
+                doReturn(toComment()).when(node).getSubject();
+                doAnswer(invocation -> parent != null ? parent.toNode() : submission.getParentNode())
+                        .when(node).getParent();
+                // nested replies are always fully loaded, and callers get a copy they're free to clear
+                doAnswer(invocation -> toNodes(children)).when(node).getReplies();
+                doReturn(false).when(node).hasMoreChildren();
+                doReturn(Collections.emptyList()).when(node).replaceMore(redditClient);
+            }
+            return node;
+        }
+    }
+
+    private static List<ReplyCommentNode> toNodes(List<FakeComment> comments) {
+        List<ReplyCommentNode> nodes = new ArrayList<>(comments.size());
+        for (FakeComment comment : comments) {
+            nodes.add(comment.toNode());
+        }
+        return nodes;
+    }
+}
@@ -0,0 +1,211 @@
+package org.jchien.shuffle.loadtest;
+
+import org.jchien.shuffle.bot.ConfigUtils;
+import org.jchien.shuffle.bot.ScoreBot;
+import org.jchien.shuffle.bot.ScoreBotPropsConfig;
+import org.jchien.shuffle.bot.SubmissionCache;
+import org.jchien.shuffle.metrics.ScoreBotMetrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Runs ScoreBot.poll() end to end against a FakeReddit full of large synthetic threads and reports how long each
+ * poll took and how many API calls it made.
+ * <p>
+ * The first poll starts cold, so every comment gets parsed and every table gets created. Some comments are edited
+ * before each later poll to exercise the incremental path. Finally a few new comments are written and picked up
+ * through the new comments fast path.
+ * <p>
+ * Settings are read from system properties, e.g.
+ * <pre>./gradlew loadTest -Dloadtest.comments=10000 -Dloadtest.latencyMillis=50</pre>
+ *
+ * @author jchien
+ */
+public class LoadTest {
+    private static final String BOT_USER = "shufflescorebot";
+
+    private static final String SUBREDDIT = "PokemonShuffle";
+
+    private static final String[] TEAMS = {
+            "M-Ttar (Lv10), A-Ninetales (Lv12, SL4), Vanilluxe (Lv15, SL5 Shot Out), Silvally (Lv15, SL5)",
+            "SMCX (SL1, 15/15), A-Greninja (Lv15, SL5), Flygon (Lv15), Lando-T (SL5)",
+            "M-Bee (Lv7, SL5 Swap++, 12/12), A-Greninja, Flygon, Dugtrio (Block Shot)",
+    };
+
+    private static final String[] ITEMS = { "none", "MS", "+5 Moves, MS, APU", "DD", "MS, DD, APU" };
+
+    private static final String[] STAGES = { "Arcanine", "Meowth", "Mewtwo" };
+
+    private static final String CHATTER = "Nice run! Which skill did you use for the last slot? I keep running " +
+            "out of moves right before the final disruption.";
+
+    public static void main(String[] args) throws Exception {
+        int numSubmissions = Integer.getInteger("loadtest.submissions", 1);
+        int numComments = Integer.getInteger("loadtest.comments", 10000);
+        int repliesPerComment = Integer.getInteger("loadtest.repliesPerComment", 3);
+        int numPolls = Integer.getInteger("loadtest.polls", 3);
+        int numNewComments = Integer.getInteger("loadtest.newComments", 50);
+        double editRatio = Double.parseDouble(System.getProperty("loadtest.editRatio", "0.01"));
+        long latencyMillis = Long.getLong("loadtest.latencyMillis", 20);
+        int requestsPerWindow = Integer.getInteger("loadtest.requestsPerWindow", 600);
+        long windowMillis = Long.getLong("loadtest.windowMillis", 600000);
+        int initialComments = Integer.getInteger("loadtest.initialComments", 200);
+        int moreChildrenBatchSize = Integer.getInteger("loadtest.moreChildrenBatchSize", 100);
+        int pollThreads = Integer.getInteger("loadtest.pollThreads", 1);
+        double writesPerMinute = Double.parseDouble(System.getProperty("loadtest.writesPerMinute", "0"));
+
+        FakeReddit reddit = new FakeReddit(BOT_USER,
+                                           latencyMillis,
+                                           requestsPerWindow,
+                                           windowMillis,
+                                           initialComments,
+                                           moreChildrenBatchSize);
+
+        Random random = new Random(0);
+        List<String> submissionIds = new ArrayList<>();
+        List<String> userComments = new ArrayList<>();
+        for (int i=0; i < numSubmissions; i++) {
+            String submissionId = reddit.addSubmission(SUBREDDIT, "Load test thread " + i, new Date());
+            submissionIds.add(submissionId);
+            userComments.addAll(populateThread(reddit, submissionId, numComments, repliesPerComment, random));
+        }
+
+        ScoreBotPropsConfig config = new ScoreBotPropsConfig();
+        config.setUsername(BOT_USER);
+        config.setSubreddits(Collections.singletonList(SUBREDDIT));
+        config.setPollDays(15);
+        config.setPollThreads(pollThreads);
+        config.setParseCacheSize(Math.max(50000, numSubmissions * numComments));
+        config.setWritesPerMinute(writesPerMinute);
+        config.setStreamComments(true);
+
+        ScoreBot scoreBot = new ScoreBot(config,
+                                         new ConfigUtils(config),
+                                         reddit.getRedditClient(),
+                                         new SubmissionCache(config),
+                                         ScoreBotMetrics.NOOP);
+
+        System.out.println("submissions: " + numSubmissions +
+                                   ", comments per submission: " + numComments +
+                                   ", latency: " + latencyMillis + " ms" +
+                                   ", rate limit: " + requestsPerWindow + " requests per " + windowMillis + " ms");
+
+        try {
+            for (int poll=1; poll <= numPolls; poll++) {
+                if (poll > 1) {
+                    editComments(reddit, userComments, editRatio, random);
+                }
+
+                reddit.resetCounts();
+                long start = System.nanoTime();
+                scoreBot.poll();
+                long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+                report("poll " + poll, elapsedMillis, numSubmissions * numComments, reddit);
+            }
+
+            if (numNewComments > 0) {
+                // first check just finds where the new comments listing starts
+                config.setNewCommentsEnabled(true);
+                scoreBot.pollNewComments();
+
+                for (int i=0; i < numNewComments; i++) {
+                    String submissionId = submissionIds.get(random.nextInt(submissionIds.size()));
+                    reddit.addComment(submissionId, "newuser" + i, generateRunComment(random));
+                }
+
+                reddit.resetCounts();
+                long start = System.nanoTime();
+                scoreBot.pollNewComments();
+                long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+                report("new comments", elapsedMillis, numSubmissions * numComments, reddit);
+            }
+        } finally {
+            scoreBot.shutdown();
+        }
+    }
+
+    /**
+     * @return ids of comments that contain runs
+     */
+    private static List<String> populateThread(FakeReddit reddit,
+                                               String submissionId,
+                                               int numComments,
+                                               int repliesPerComment,
+                                               Random random) {
+        List<String> runComments = new ArrayList<>();
+
+        int added = 0;
+        int user = 0;
+        while (added < numComments) {
+            String commentId = reddit.addComment(submissionId, "user" + user++, generateRunComment(random));
+            runComments.add(commentId);
+            added++;
+
+            for (int i=0; i < repliesPerComment && added < numComments; i++) {
+                reddit.addComment(commentId, "user" + user++, CHATTER);
+                added++;
+            }
+        }
+
+        return runComments;
+    }
+
+    private static String generateRunComment(Random random) {
+        String team = TEAMS[random.nextInt(TEAMS.length)];
+        String items = ITEMS[random.nextInt(ITEMS.length)];
+
+        switch (random.nextInt(3)) {
+            case 0:
+                return "!comp  \n" +
+                        "Team: " + team + "  \n" +
+                        "Items: " + items + "  \n" +
+                        "Score: " + random.nextInt(200000) + "  \n" +
+                        "!end  \n";
+            case 1:
+                return "!eb " + (1 + random.nextInt(100)) + "  \n" +
+                        "Team: " + team + "  \n" +
+                        "Items: " + items + "  \n" +
+                        "Moves left: " + random.nextInt(10) + "  \n" +
+                        "!end  \n";
+            default:
+                return "!run " + STAGES[random.nextInt(STAGES.length)] + "  \n" +
+                        "Team: " + team + "  \n" +
+                        "Items: " + items + "  \n" +
+                        "Time left: " + random.nextInt(60) + "  \n" +
+                        "!end  \n";
+        }
+    }
+
+    private static void editComments(FakeReddit reddit, List<String> commentIds, double editRatio, Random random) {
+        int numEdits = (int) (commentIds.size() * editRatio);
+        for (int i=0; i < numEdits; i++) {
+            String commentId = commentIds.get(random.nextInt(commentIds.size()));
+            reddit.editComment(commentId, generateRunComment(random));
+        }
+    }
+
+    private static void report(String label, long elapsedMillis, int numComments, FakeReddit reddit) {
+        double commentsPerSec = elapsedMillis > 0 ? numComments * 1000.0 / elapsedMillis : numComments;
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(label)
+                .append(": ").append(elapsedMillis).append(" ms")
+                .append(", ").append(String.format("%.0f", commentsPerSec)).append(" comments/s")
+                .append(", api calls: ").append(reddit.getTotalCalls())
+                .append(", throttled: ").append(reddit.getThrottledCalls())
+                .append(", messages: ").append(reddit.getMessagesSent());
+
+        for (Map.Entry<String, Long> entry : reddit.getCallCounts().entrySet()) {
+            sb.append("\n    ").append(entry.getKey()).append(": ").append(entry.getValue());
+        }
+
+        System.out.println(sb);
+    }
+}
@@ -0,0 +1,131 @@
+package org.jchien.shuffle.bot;
+
+import com.google.common.annotations.VisibleForTesting;
+import net.dean.jraw.models.Submission;
+import org.jchien.shuffle.model.SubmissionFingerprint;
+
+import javax.annotation.Nullable;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * Decides which submissions from one poll of the listing get processed, and in what order.
+ * <p>
+ * A submission is hot if it's new to us, its comment count changed, or it had a comment written or edited within
+ * hotMillis, and hot submissions are processed on every poll. Once a submission goes quiet, the time between
+ * processing it doubles every time its idle time doubles: baseIntervalMillis once it's been idle for hotMillis,
+ * twice that once it's been idle for twice as long, and so on up to maxIntervalMillis. A submission with no user
+ * comments counts as active when it was posted, so old threads decay the same way.
+ * <p>
+ * Submissions that are due come out most overdue first, relative to their interval, so hot threads get the
+ * submission workers before cold ones.
+ *
+ * @author jchien
+ */
+class AdaptivePollQueue {
+    private static final Comparator<Entry> MOST_URGENT_FIRST =
+            Comparator.comparingDouble((Entry e) -> e.urgency).reversed();
+
+    private final long hotMillis;
+
+    private final long baseIntervalMillis;
+
+    private final long maxIntervalMillis;
+
+    private final Instant now;
+
+    private final PriorityQueue<Entry> queue = new PriorityQueue<>(MOST_URGENT_FIRST);
+
+    AdaptivePollQueue(long hotMillis, long baseIntervalMillis, long maxIntervalMillis, Instant now) {
+        this.hotMillis = hotMillis;
+        this.baseIntervalMillis = baseIntervalMillis;
+        this.maxIntervalMillis = maxIntervalMillis;
+        this.now = now;
+    }
+
+    /**
+     * @param submission    submission from the subreddit listing
+     * @param fingerprint   submission as of the last time we processed it, null if we haven't
+     * @return              true if the submission is due and was queued
+     */
+    boolean offer(Submission submission, @Nullable SubmissionFingerprint fingerprint) {
+        double urgency = getUrgency(submission, fingerprint);
+        if (urgency < 1) {
+            return false;
+        }
+
+        queue.add(new Entry(submission, urgency));
+        return true;
+    }
+
+    /**
+     * @return the most overdue submission, or null if there aren't any left
+     */
+    @Nullable
+    Submission poll() {
+        Entry entry = queue.poll();
+        return entry != null ? entry.submission : null;
+    }
+
+    int size() {
+        return queue.size();
+    }
+
+    /**
+     * @return time since the submission was processed over the time it should wait between processing,
+     *         at least 1 if it's due
+     */
+    private double getUrgency(Submission submission, @Nullable SubmissionFingerprint fingerprint) {
+        if (fingerprint == null || fingerprint.getCommentCount() != submission.getCommentCount()) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        Instant lastActivity = submission.getCreated().toInstant();
+        Instant latestModifiedDate = fingerprint.getLatestModifiedDate();
+        if (latestModifiedDate != null && latestModifiedDate.isAfter(lastActivity)) {
+            lastActivity = latestModifiedDate;
+        }
+
+        long interval = getInterval(now.toEpochMilli() - lastActivity.toEpochMilli(),
+                                    hotMillis,
+                                    baseIntervalMillis,
+                                    maxIntervalMillis);
+        if (interval == 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        long sinceProcessed = now.toEpochMilli() - fingerprint.getProcessedDate().toEpochMilli();
+        return (double) sinceProcessed / interval;
+    }
+
+    /**
+     * @param idleMillis    time since the last comment or edit
+     * @return              millis to wait between processing a submission, 0 to process it on every poll
+     */
+    @VisibleForTesting
+    static long getInterval(long idleMillis, long hotMillis, long baseIntervalMillis, long maxIntervalMillis) {
+        if (idleMillis < hotMillis) {
+            return 0;
+        }
+
+        // doublings of hotMillis that fit in idleMillis
+        int doublings = 63 - Long.numberOfLeadingZeros(idleMillis / Math.max(hotMillis, 1));
+        if (doublings >= Long.numberOfLeadingZeros(baseIntervalMillis)) {
+            // shifting would overflow, which is way past any sane max anyway
+            return maxIntervalMillis;
+        }
+        return Math.min(baseIntervalMillis << doublings, maxIntervalMillis);
+    }
+
+    private static class Entry {
+        private final Submission submission;
+
+        private final double urgency;
+
+        private Entry(Submission submission, double urgency) {
+            this.submission = submission;
+            this.urgency = urgency;
+        }
+    }
+}
@@ -24,8 +24,10 @@ public class ConfigUtils {
         validateConfiguration();
     }
 
-    public LocalDateTime getEndTime() {
-        int pollDays = config.getPollDays();
+    /**
+     * @param pollDays  how many days back to process submissions
+     */
+    public LocalDateTime getEndTime(int pollDays) {
         LocalDateTime pollEnd = LocalDateTime.now().minusDays(pollDays);
 
         LocalDateTime stopDate = getStopDate();
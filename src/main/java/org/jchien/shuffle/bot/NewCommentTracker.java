@@ -0,0 +1,117 @@
+package org.jchien.shuffle.bot;
+
+import net.dean.jraw.models.Comment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers the newest comment we've seen in each subreddit's new comments listing so each check only has to look
+ * at the comments written since the last one.
+ * <p>
+ * The listing only has new comments, not edits, so this can't replace the full sweep. It just lets us pick up new
+ * runs quickly between sweeps.
+ *
+ * @author jchien
+ */
+public class NewCommentTracker {
+    private static final Logger LOG = LoggerFactory.getLogger(NewCommentTracker.class);
+
+    private static final String SUBMISSION_PREFIX = "t3_";
+
+    private final int maxPages;
+
+    // subreddit -> newest comment seen
+    private final Map<String, Watermark> watermarks = new ConcurrentHashMap<>();
+
+    /**
+     * @param maxPages  max listing pages to read per check, if we fall this far behind the full sweep catches up
+     */
+    public NewCommentTracker(int maxPages) {
+        this.maxPages = maxPages;
+    }
+
+    /**
+     * The first check for a subreddit only records where the listing currently starts, since everything before
+     * that is the full sweep's job.
+     *
+     * @param subreddit subreddit the listing is for
+     * @param pages     new comments listing pages, newest first
+     * @param botUser   bot username, our own comments don't count as updates
+     * @return          ids of submissions with new user comments since the last check, newest first
+     */
+    public Set<String> findUpdatedSubmissions(String subreddit,
+                                              Iterator<? extends Iterable<Comment>> pages,
+                                              String botUser) {
+        Watermark watermark = watermarks.get(subreddit);
+
+        Set<String> submissionIds = new LinkedHashSet<>();
+        Comment newest = null;
+        boolean caughtUp = false;
+        int numPages = 0;
+
+        while (!caughtUp && numPages < maxPages && pages.hasNext()) {
+            Iterable<Comment> page = pages.next();
+            numPages++;
+
+            for (Comment comment : page) {
+                if (newest == null) {
+                    newest = comment;
+                }
+
+                if (watermark == null || watermark.covers(comment)) {
+                    caughtUp = true;
+                    break;
+                }
+
+                if (!botUser.equals(comment.getAuthor())) {
+                    submissionIds.add(getSubmissionId(comment.getSubmissionFullName()));
+                }
+            }
+        }
+
+        if (!caughtUp && watermark != null) {
+            LOG.warn("didn't reach the last seen comment in " + subreddit + " after " + numPages +
+                             " pages, the next full sweep will pick up anything missed");
+        }
+
+        if (newest != null) {
+            watermarks.put(subreddit, new Watermark(newest.getId(), newest.getCreated().toInstant()));
+        }
+
+        return submissionIds;
+    }
+
+    private static String getSubmissionId(String fullName) {
+        if (fullName.startsWith(SUBMISSION_PREFIX)) {
+            return fullName.substring(SUBMISSION_PREFIX.length());
+        }
+        return fullName;
+    }
+
+    private static class Watermark {
+        private final String commentId;
+
+        private final Instant created;
+
+        private Watermark(String commentId, Instant created) {
+            this.commentId = commentId;
+            this.created = created;
+        }
+
+        /**
+         * Comment ids are the primary check, but the newest comment could have been deleted since, so fall back to
+         * the created time. Timestamps only have second resolution, so comments written in the same second as the
+         * watermark get looked at again, which is harmless.
+         */
+        private boolean covers(Comment comment) {
+            return commentId.equals(comment.getId()) || comment.getCreated().toInstant().isBefore(created);
+        }
+    }
+}
@@ -1,20 +1,47 @@
 package org.jchien.shuffle.bot;
 
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import net.dean.jraw.RedditClient;
+import net.dean.jraw.models.Comment;
 import net.dean.jraw.models.Listing;
 import net.dean.jraw.models.Submission;
 import net.dean.jraw.models.SubredditSort;
+import net.dean.jraw.pagination.BarebonesPaginator;
 import net.dean.jraw.pagination.Paginator;
+import org.jchien.shuffle.formatter.RowCache;
+import org.jchien.shuffle.handler.BotOutputLedger;
+import org.jchien.shuffle.handler.HandlerContext;
+import org.jchien.shuffle.handler.MessageOutbox;
+import org.jchien.shuffle.handler.ParsedCommentCache;
+import org.jchien.shuffle.handler.RunRankingCache;
 import org.jchien.shuffle.handler.SubmissionHandler;
+import org.jchien.shuffle.metrics.ScoreBotMetrics;
+import org.jchien.shuffle.model.SubmissionFingerprint;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author jchien
@@ -29,54 +56,311 @@ public class ScoreBot {
 
     private RedditClient redditClient;
 
+    private SubmissionCache submissionCache;
+
+    private ScoreBotMetrics metrics;
+
+    // shared by all submissions so unchanged comments are only parsed once across polls
+    private ParsedCommentCache parsedCommentCache;
+
+    // shared by all submissions so rows for unchanged runs are only rendered once across polls, null if disabled
+    private RowCache rowCache;
+
+    // what the bot has written in each submission, null if bot comments are read back from reddit on every poll
+    private BotOutputLedger outputLedger;
+
+    // sends notifications in the background, null if they're sent with each submission's other writes
+    private MessageOutbox messageOutbox;
+
+    private HandlerContext handlerContext;
+
+    private NewCommentTracker newCommentTracker;
+
+    // subreddit -> its settings and submission workers, in config order
+    private Map<String, SubredditSchedule> schedules = new LinkedHashMap<>();
+
+    // runs each subreddit's polls on its own schedule, null if subreddits are polled one after another
+    private ScheduledExecutorService subredditScheduler;
+
     @Autowired
     public ScoreBot(ScoreBotPropsConfig config,
                     ConfigUtils configUtils,
-                    RedditClient redditClient) {
+                    RedditClient redditClient,
+                    SubmissionCache submissionCache,
+                    ScoreBotMetrics metrics) {
         this.config = config;
         this.configUtils = configUtils;
         this.redditClient = redditClient;
+        this.submissionCache = submissionCache;
+        this.metrics = metrics;
+        this.parsedCommentCache = new ParsedCommentCache(config.getParseCacheSize());
+        this.rowCache = config.getRowCacheSize() > 0 ? new RowCache(config.getRowCacheSize()) : null;
+        this.outputLedger = createOutputLedger(config.getLedgerFile(), config.getLedgerReconcileMillis());
+
+        // shared by all submissions so concurrent workers don't multiply our write rate
+        RateLimiter writeLimiter = createWriteLimiter(config.getWritesPerMinute());
+        this.messageOutbox = config.isMessageOutboxEnabled()
+                ? new MessageOutbox(redditClient,
+                                    writeLimiter,
+                                    config.getMessageCoalesceMillis(),
+                                    config.getMessageMaxAttempts(),
+                                    metrics)
+                : null;
+
+        this.handlerContext = new HandlerContext(
+                redditClient,
+                parsedCommentCache,
+                writeLimiter,
+                config.isStreamComments(),
+                config.isStableTableParts(),
+                config.getTablePartSlack(),
+                config.isFastRunParser(),
+                config.getRankingCacheSize() > 0 ? new RunRankingCache(config.getRankingCacheSize()) : null,
+                rowCache,
+                outputLedger,
+                messageOutbox,
+                metrics);
+        this.newCommentTracker = new NewCommentTracker(config.getNewCommentsMaxPages());
+
+        if (config.getSubreddits() != null) {
+            for (String subreddit : config.getSubreddits()) {
+                schedules.put(subreddit, new SubredditSchedule(subreddit, config.getSubredditProps(subreddit)));
+            }
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!config.isIndependentSubreddits() || schedules.isEmpty()) {
+            return;
+        }
+
+        // a thread per task, so every subreddit's polls can run at the same time
+        int tasksPerSubreddit = config.isNewCommentsEnabled() ? 2 : 1;
+        subredditScheduler = Executors.newScheduledThreadPool(schedules.size() * tasksPerSubreddit,
+                                                              new ThreadFactoryBuilder()
+                                                                      .setNameFormat("poll-%d")
+                                                                      .setDaemon(true)
+                                                                      .build());
+
+        for (SubredditSchedule schedule : schedules.values()) {
+            Runnable poll = () -> {
+                pollSafely(schedule);
+                saveCaches();
+            };
+            subredditScheduler.scheduleWithFixedDelay(() -> runScheduled(poll),
+                                                      0,
+                                                      schedule.getPollDelayMillis(),
+                                                      TimeUnit.MILLISECONDS);
+
+            if (config.isNewCommentsEnabled()) {
+                long delay = config.getNewCommentsDelayMillis();
+                subredditScheduler.scheduleWithFixedDelay(() -> runScheduled(() -> pollNewCommentsSafely(schedule)),
+                                                          delay,
+                                                          delay,
+                                                          TimeUnit.MILLISECONDS);
+            }
+
+            LOG.info("polling " + schedule.getSubreddit() + " every " + schedule.getPollDelayMillis() + " ms");
+        }
+    }
+
+    // a scheduled task that throws never runs again, so make sure nothing gets out
+    private static void runScheduled(Runnable task) {
+        try {
+            task.run();
+        } catch (Throwable t) {
+            LOG.error("problem running scheduled poll", t);
+        }
+    }
+
+    private static BotOutputLedger createOutputLedger(String ledgerFile, long reconcileMillis) {
+        if (reconcileMillis <= 0) {
+            return null;
+        }
+        boolean persistent = ledgerFile != null && !ledgerFile.isEmpty();
+        return new BotOutputLedger(persistent ? Paths.get(ledgerFile) : null, reconcileMillis);
+    }
+
+    private static RateLimiter createWriteLimiter(double writesPerMinute) {
+        if (writesPerMinute <= 0) {
+            return null;
+        }
+        return RateLimiter.create(writesPerMinute / 60);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (subredditScheduler != null) {
+            subredditScheduler.shutdownNow();
+        }
+
+        for (SubredditSchedule schedule : schedules.values()) {
+            schedule.shutdown();
+        }
+
+        if (messageOutbox != null) {
+            messageOutbox.shutdown();
+        }
     }
 
     @Scheduled(fixedDelayString = "${shufflescorebot.pollDelayMillis}")
     public void poll() {
-        for (String subreddit : config.getSubreddits()) {
-            try {
-                poll(subreddit);
-            } catch (Exception e) {
-                LOG.error("problem polling subreddit", e);
+        if (subredditScheduler != null) {
+            // every subreddit has its own schedule
+            return;
+        }
+
+        for (SubredditSchedule schedule : schedules.values()) {
+            pollSafely(schedule);
+        }
+
+        saveCaches();
+    }
+
+    private void pollSafely(SubredditSchedule schedule) {
+        if (!schedule.tryStart()) {
+            LOG.info("still polling " + schedule.getSubreddit() + ", skipping this poll");
+            return;
+        }
+
+        try {
+            poll(schedule);
+        } catch (Exception e) {
+            LOG.error("problem polling subreddit", e);
+        } finally {
+            schedule.finish();
+        }
+    }
+
+    // called after every poll, and subreddits can be polled concurrently
+    private synchronized void saveCaches() {
+        int maxPollDays = config.getPollDays();
+        for (SubredditSchedule schedule : schedules.values()) {
+            maxPollDays = Math.max(maxPollDays, schedule.getPollDays());
+        }
+
+        // keep everything any subreddit is still polling
+        Instant oldestDate = Instant.now().minus(Duration.ofDays(maxPollDays));
+        submissionCache.evictBefore(oldestDate);
+        submissionCache.save();
+
+        if (outputLedger != null) {
+            outputLedger.evictBefore(oldestDate);
+            outputLedger.save();
+        }
+    }
+
+    /**
+     * Fast path between full sweeps, only reprocesses submissions that got new comments since the last check.
+     * A check never overlaps with a full sweep of the same subreddit. Both take the subreddit's SubredditSchedule
+     * guard with tryStart(), and whichever can't get it is skipped. That guard is what keeps them apart when
+     * independentSubreddits is on, since each subreddit's sweeps and checks then run on their own scheduler threads.
+     */
+    @Scheduled(fixedDelayString = "${shufflescorebot.newCommentsDelayMillis}")
+    public void pollNewComments() {
+        if (!config.isNewCommentsEnabled() || subredditScheduler != null) {
+            return;
+        }
+
+        for (SubredditSchedule schedule : schedules.values()) {
+            pollNewCommentsSafely(schedule);
+        }
+    }
+
+    private void pollNewCommentsSafely(SubredditSchedule schedule) {
+        if (!schedule.tryStart()) {
+            // the full poll will pick up the new comments
+            return;
+        }
+
+        try {
+            pollNewComments(schedule);
+        } catch (Exception e) {
+            LOG.error("problem polling new comments", e);
+        } finally {
+            schedule.finish();
+        }
+    }
+
+    private void pollNewComments(SubredditSchedule schedule) {
+        String subreddit = schedule.getSubreddit();
+        long start = System.currentTimeMillis();
+
+        String botUser = redditClient.me().getUsername();
+        BarebonesPaginator<Comment> paginator = redditClient.subreddit(subreddit)
+                .comments()
+                .limit(100)
+                .build();
+        Set<String> submissionIds = newCommentTracker.findUpdatedSubmissions(subreddit,
+                                                                             paginator.iterator(),
+                                                                             botUser);
+        if (submissionIds.isEmpty()) {
+            return;
+        }
+
+        LocalDateTime endTime = configUtils.getEndTime(schedule.getPollDays());
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (String submissionId : submissionIds) {
+            Submission submission = redditClient.submission(submissionId).inspect();
+            if (isBefore(submission, endTime) || submission.isLocked()) {
+                continue;
             }
+            results.add(schedule.getSubmissionExecutor().submit(() -> handleSubmission(submission)));
         }
+
+        int failedThreads = awaitSubmissions(results);
+
+        long elapsed = System.currentTimeMillis() - start;
+        metrics.recordNewCommentsPoll(subreddit, elapsed);
+
+        LOG.info(elapsed + " ms, subreddit: " + subreddit +
+                         ", threads with new comments: " + submissionIds.size() +
+                         ", processed threads: " + results.size() +
+                         ", failed threads: " + failedThreads);
     }
 
-    private void poll(String subreddit) {
+    private void poll(SubredditSchedule schedule) {
         // We're not using CommentStream because there's no sort by last edit option.
         // We want to be able to see bot commands added to any comments in the last n days,
         // and listings only return up to 1000 things. So we need to do something much slower
         // and inefficient in order to get all comments in the desired time window.
 
-        LocalDateTime endTime = configUtils.getEndTime();
-        LOG.info("processing posts until " + endTime);
+        String subreddit = schedule.getSubreddit();
+        LocalDateTime endTime = configUtils.getEndTime(schedule.getPollDays());
+        LOG.info("processing " + subreddit + " posts until " + endTime);
 
         Paginator<Submission> paginator = getPaginator(redditClient, subreddit);
 
         int totalComments = 0;
         int totalThreads = 0;
+        int skippedThreads = 0;
 
         long start = System.currentTimeMillis();
+        long lag = schedule.markPollStart(start);
+        if (lag >= 0) {
+            metrics.recordPollLag(subreddit, lag);
+        }
+
         boolean done = false;
         Iterator<Listing<Submission>> it = paginator.iterator();
 
+        // keep paginating while earlier submissions are being processed
+        List<Future<Boolean>> results = new ArrayList<>();
+
+        // when on, due submissions are held until the listing is done so the most overdue ones are processed first
+        AdaptivePollQueue adaptiveQueue = config.isAdaptivePolling()
+                ? new AdaptivePollQueue(config.getAdaptiveHotMillis(),
+                                        config.getAdaptiveBaseIntervalMillis(),
+                                        config.getAdaptiveMaxIntervalMillis(),
+                                        Instant.now())
+                : null;
+
         while (!done && it.hasNext()) {
             Listing<Submission> submissions = it.next();
 
-            // todo parallelize this
             for (Submission submission : submissions) {
-                LocalDateTime postTime = LocalDateTime.ofInstant(
-                        submission.getCreated().toInstant(),
-                        ZoneId.systemDefault());
-
-                if (postTime.isBefore(endTime)) {
+                if (isBefore(submission, endTime)) {
                     done = true;
                     break;
                 }
@@ -85,16 +369,103 @@ public class ScoreBot {
                     continue;
                 }
 
-                SubmissionHandler submissionHandler = new SubmissionHandler(redditClient, submission);
-                submissionHandler.handleSubmission();
+                if (adaptiveQueue != null) {
+                    if (!adaptiveQueue.offer(submission, submissionCache.get(submission.getId()))) {
+                        skippedThreads++;
+                    }
+                    continue;
+                }
+
+                if (submissionCache.isUnchanged(submission, Instant.now())) {
+                    skippedThreads++;
+                    continue;
+                }
+
+                results.add(schedule.getSubmissionExecutor().submit(() -> handleSubmission(submission)));
 
                 totalThreads++;
                 totalComments += submission.getCommentCount();
             }
         }
 
+        if (adaptiveQueue != null) {
+            Submission submission;
+            while ((submission = adaptiveQueue.poll()) != null) {
+                Submission toHandle = submission;
+                results.add(schedule.getSubmissionExecutor().submit(() -> handleSubmission(toHandle)));
+
+                totalThreads++;
+                totalComments += submission.getCommentCount();
+            }
+        }
+
+        int failedThreads = awaitSubmissions(results);
+
+        metrics.recordPoll(subreddit, System.currentTimeMillis() - start);
+
         long elapsed = (System.currentTimeMillis() - start) / 1000;
-        LOG.info(elapsed + " seconds, threads: " + totalThreads + ", comments: " + totalComments);
+        LOG.info(elapsed + " seconds, subreddit: " + subreddit +
+                         ", threads: " + totalThreads +
+                         ", skipped threads: " + skippedThreads +
+                         ", failed threads: " + failedThreads +
+                         ", comments: " + totalComments +
+                         (lag >= 0 ? ", poll lag seconds: " + lag / 1000 : "") +
+                         ", cached parses: " + parsedCommentCache.size() +
+                         (rowCache != null ? ", row cache hit rate: " + rowCache.stats().hitRate() : ""));
+    }
+
+    private static boolean isBefore(Submission submission, LocalDateTime endTime) {
+        LocalDateTime postTime = LocalDateTime.ofInstant(
+                submission.getCreated().toInstant(),
+                ZoneId.systemDefault());
+        return postTime.isBefore(endTime);
+    }
+
+    /**
+     * @param submission    submission to process
+     * @return              true if the submission was processed without errors
+     */
+    private boolean handleSubmission(Submission submission) {
+        try {
+            SubmissionHandler submissionHandler = new SubmissionHandler(handlerContext, submission);
+            submissionHandler.handleSubmission();
+
+            submissionCache.put(new SubmissionFingerprint(
+                    submission.getId(),
+                    submission.getCommentCount(),
+                    submissionHandler.getLatestModifiedDate(),
+                    submissionHandler.getTableHash(),
+                    Instant.now()));
+            return true;
+        } catch (Exception e) {
+            // don't let one bad submission stop us from processing the rest of them
+            metrics.increment(ScoreBotMetrics.SUBMISSION_ERROR);
+            LOG.error("problem processing submission " + submission.getUrl(), e);
+            return false;
+        }
+    }
+
+    /**
+     * @param results   pending results from handleSubmission
+     * @return          number of submissions that failed
+     */
+    private int awaitSubmissions(List<Future<Boolean>> results) {
+        int failed = 0;
+        for (Future<Boolean> result : results) {
+            try {
+                if (!result.get()) {
+                    failed++;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted while waiting for submissions", e);
+            } catch (ExecutionException e) {
+                // handleSubmission catches exceptions, so this should only be an Error
+                LOG.error("problem processing submission", e);
+                failed++;
+            }
+        }
+        return failed;
     }
 
     private Paginator<Submission> getPaginator(RedditClient redditClient, String subreddit) {
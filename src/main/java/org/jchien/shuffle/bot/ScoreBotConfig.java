@@ -6,7 +6,10 @@ import net.dean.jraw.http.OkHttpNetworkAdapter;
 import net.dean.jraw.http.UserAgent;
 import net.dean.jraw.oauth.Credentials;
 import net.dean.jraw.oauth.OAuthHelper;
+import org.jchien.shuffle.metrics.ScoreBotMetrics;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.boot.actuate.metrics.GaugeService;
 import org.springframework.context.annotation.Bean;
 import org.springframework.stereotype.Component;
 
@@ -42,4 +45,9 @@ public class ScoreBotConfig {
 
         return redditClient;
     }
+
+    @Bean
+    public ScoreBotMetrics getScoreBotMetrics(CounterService counterService, GaugeService gaugeService) {
+        return new ScoreBotMetrics(counterService, gaugeService);
+    }
 }
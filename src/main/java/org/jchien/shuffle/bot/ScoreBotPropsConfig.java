@@ -3,7 +3,9 @@ package org.jchien.shuffle.bot;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * @author jchien
@@ -29,6 +31,90 @@ public class ScoreBotPropsConfig {
     // this feature helps avoid massive resubmission of comments or PMs when formatting changes
     private String stopDate = null;
 
+    // number of submissions to process concurrently, 1 processes them serially on the scheduler thread
+    private int pollThreads = 1;
+
+    // file to persist submission fingerprints to between restarts, fingerprints are kept in memory only if unset
+    private String cacheFile = null;
+
+    // skip submissions whose comment count hasn't changed if we processed them within this many millis,
+    // 0 disables skipping. Edits don't change the comment count so this is the upper bound on edit latency.
+    private long maxSkipMillis = 0;
+
+    // max number of comment parse results to keep between polls
+    private long parseCacheSize = 50000;
+
+    // max comment replies, edits, deletes, and PMs per minute across all submissions, 0 for no limit
+    private double writesPerMinute = 30;
+
+    // process comments batch by batch as they're loaded instead of loading the whole comment tree first
+    private boolean streamComments = false;
+
+    // keep runs in the same aggregate table part across updates, so a new run usually means editing one part
+    // instead of every part after it
+    private boolean stableTableParts = false;
+
+    // chars to leave free in newly laid out table parts when stableTableParts is on
+    private int tablePartSlack = 1500;
+
+    // between full sweeps, check each subreddit's new comments listing and only process the submissions that got
+    // new comments. Edits still wait for the next full sweep, so pollDelayMillis can be raised when this is on.
+    private boolean newCommentsEnabled = false;
+
+    // delay between new comment checks
+    private long newCommentsDelayMillis = 10000;
+
+    // max new comment listing pages to read per check, anything older is left for the next full sweep
+    private int newCommentsMaxPages = 5;
+
+    // parse well formed run blocks with FastRunParser, anything it can't handle still goes through RunParser
+    private boolean fastRunParser = false;
+
+    // max number of submissions to keep table orderings for between polls, so only changed runs need to be sorted.
+    // 0 sorts every table from scratch.
+    private long rankingCacheSize = 200;
+
+    // max number of rendered table rows to keep between polls, so rows for unchanged runs aren't rendered again.
+    // 0 renders every row every time.
+    private long rowCacheSize = 50000;
+
+    // file to persist the bot output ledger to between restarts, the ledger is kept in memory only if unset
+    private String ledgerFile = null;
+
+    // trust the ledger's record of what the bot wrote in a submission for this many millis before reading the bot
+    // comments back from reddit, 0 disables the ledger and bot comments are read from reddit on every poll
+    private long ledgerReconcileMillis = 0;
+
+    // send notifications about changed bot replies from a background outbox instead of with each submission's writes
+    private boolean messageOutboxEnabled = false;
+
+    // when messageOutboxEnabled is on, notifications for a user within this many millis are sent as one message
+    private long messageCoalesceMillis = 300000;
+
+    // when messageOutboxEnabled is on, max times to try sending a message before giving up
+    private int messageMaxAttempts = 3;
+
+    // poll each subreddit on its own schedule so a slow subreddit doesn't hold up the others. When off, subreddits
+    // are polled one after another every pollDelayMillis.
+    private boolean independentSubreddits = false;
+
+    // process quiet submissions less often instead of on every poll, see AdaptivePollQueue. Overrides maxSkipMillis.
+    private boolean adaptivePolling = false;
+
+    // when adaptivePolling is on, submissions with a comment written or edited this recently are processed every poll
+    private long adaptiveHotMillis = 3600000;
+
+    // when adaptivePolling is on, millis between processing a submission once it stops being hot, doubled each time
+    // its idle time doubles
+    private long adaptiveBaseIntervalMillis = 60000;
+
+    // when adaptivePolling is on, max millis between processing a submission no matter how long it's been quiet
+    private long adaptiveMaxIntervalMillis = 21600000;
+
+    // subreddit -> settings that override the global ones for that subreddit, e.g.
+    // shufflescorebot.subredditSettings.PokemonShuffle.pollThreads=4
+    private Map<String, SubredditProps> subredditSettings = new HashMap<>();
+
     public String getUsername() {
         return username;
     }
@@ -92,4 +178,269 @@ public class ScoreBotPropsConfig {
     public void setStopDate(String stopDate) {
         this.stopDate = stopDate;
     }
+
+    public int getPollThreads() {
+        return pollThreads;
+    }
+
+    public void setPollThreads(int pollThreads) {
+        this.pollThreads = pollThreads;
+    }
+
+    public String getCacheFile() {
+        return cacheFile;
+    }
+
+    public void setCacheFile(String cacheFile) {
+        this.cacheFile = cacheFile;
+    }
+
+    public long getMaxSkipMillis() {
+        return maxSkipMillis;
+    }
+
+    public void setMaxSkipMillis(long maxSkipMillis) {
+        this.maxSkipMillis = maxSkipMillis;
+    }
+
+    public long getParseCacheSize() {
+        return parseCacheSize;
+    }
+
+    public void setParseCacheSize(long parseCacheSize) {
+        this.parseCacheSize = parseCacheSize;
+    }
+
+    public double getWritesPerMinute() {
+        return writesPerMinute;
+    }
+
+    public void setWritesPerMinute(double writesPerMinute) {
+        this.writesPerMinute = writesPerMinute;
+    }
+
+    public boolean isStreamComments() {
+        return streamComments;
+    }
+
+    public void setStreamComments(boolean streamComments) {
+        this.streamComments = streamComments;
+    }
+
+    public boolean isStableTableParts() {
+        return stableTableParts;
+    }
+
+    public void setStableTableParts(boolean stableTableParts) {
+        this.stableTableParts = stableTableParts;
+    }
+
+    public int getTablePartSlack() {
+        return tablePartSlack;
+    }
+
+    public void setTablePartSlack(int tablePartSlack) {
+        this.tablePartSlack = tablePartSlack;
+    }
+
+    public boolean isNewCommentsEnabled() {
+        return newCommentsEnabled;
+    }
+
+    public void setNewCommentsEnabled(boolean newCommentsEnabled) {
+        this.newCommentsEnabled = newCommentsEnabled;
+    }
+
+    public long getNewCommentsDelayMillis() {
+        return newCommentsDelayMillis;
+    }
+
+    public void setNewCommentsDelayMillis(long newCommentsDelayMillis) {
+        this.newCommentsDelayMillis = newCommentsDelayMillis;
+    }
+
+    public int getNewCommentsMaxPages() {
+        return newCommentsMaxPages;
+    }
+
+    public void setNewCommentsMaxPages(int newCommentsMaxPages) {
+        this.newCommentsMaxPages = newCommentsMaxPages;
+    }
+
+    public boolean isFastRunParser() {
+        return fastRunParser;
+    }
+
+    public void setFastRunParser(boolean fastRunParser) {
+        this.fastRunParser = fastRunParser;
+    }
+
+    public long getRankingCacheSize() {
+        return rankingCacheSize;
+    }
+
+    public void setRankingCacheSize(long rankingCacheSize) {
+        this.rankingCacheSize = rankingCacheSize;
+    }
+
+    public long getRowCacheSize() {
+        return rowCacheSize;
+    }
+
+    public void setRowCacheSize(long rowCacheSize) {
+        this.rowCacheSize = rowCacheSize;
+    }
+
+    public String getLedgerFile() {
+        return ledgerFile;
+    }
+
+    public void setLedgerFile(String ledgerFile) {
+        this.ledgerFile = ledgerFile;
+    }
+
+    public long getLedgerReconcileMillis() {
+        return ledgerReconcileMillis;
+    }
+
+    public void setLedgerReconcileMillis(long ledgerReconcileMillis) {
+        this.ledgerReconcileMillis = ledgerReconcileMillis;
+    }
+
+    public boolean isMessageOutboxEnabled() {
+        return messageOutboxEnabled;
+    }
+
+    public void setMessageOutboxEnabled(boolean messageOutboxEnabled) {
+        this.messageOutboxEnabled = messageOutboxEnabled;
+    }
+
+    public long getMessageCoalesceMillis() {
+        return messageCoalesceMillis;
+    }
+
+    public void setMessageCoalesceMillis(long messageCoalesceMillis) {
+        this.messageCoalesceMillis = messageCoalesceMillis;
+    }
+
+    public int getMessageMaxAttempts() {
+        return messageMaxAttempts;
+    }
+
+    public void setMessageMaxAttempts(int messageMaxAttempts) {
+        this.messageMaxAttempts = messageMaxAttempts;
+    }
+
+    public boolean isIndependentSubreddits() {
+        return independentSubreddits;
+    }
+
+    public void setIndependentSubreddits(boolean independentSubreddits) {
+        this.independentSubreddits = independentSubreddits;
+    }
+
+    public boolean isAdaptivePolling() {
+        return adaptivePolling;
+    }
+
+    public void setAdaptivePolling(boolean adaptivePolling) {
+        this.adaptivePolling = adaptivePolling;
+    }
+
+    public long getAdaptiveHotMillis() {
+        return adaptiveHotMillis;
+    }
+
+    public void setAdaptiveHotMillis(long adaptiveHotMillis) {
+        this.adaptiveHotMillis = adaptiveHotMillis;
+    }
+
+    public long getAdaptiveBaseIntervalMillis() {
+        return adaptiveBaseIntervalMillis;
+    }
+
+    public void setAdaptiveBaseIntervalMillis(long adaptiveBaseIntervalMillis) {
+        this.adaptiveBaseIntervalMillis = adaptiveBaseIntervalMillis;
+    }
+
+    public long getAdaptiveMaxIntervalMillis() {
+        return adaptiveMaxIntervalMillis;
+    }
+
+    public void setAdaptiveMaxIntervalMillis(long adaptiveMaxIntervalMillis) {
+        this.adaptiveMaxIntervalMillis = adaptiveMaxIntervalMillis;
+    }
+
+    public Map<String, SubredditProps> getSubredditSettings() {
+        return subredditSettings;
+    }
+
+    public void setSubredditSettings(Map<String, SubredditProps> subredditSettings) {
+        this.subredditSettings = subredditSettings;
+    }
+
+    /**
+     * @return settings for the subreddit, with anything it doesn't override filled in from the global settings
+     */
+    public SubredditProps getSubredditProps(String subreddit) {
+        SubredditProps overrides = null;
+        for (Map.Entry<String, SubredditProps> entry : subredditSettings.entrySet()) {
+            if (entry.getKey().equalsIgnoreCase(subreddit)) {
+                overrides = entry.getValue();
+            }
+        }
+
+        SubredditProps props = new SubredditProps();
+        props.setPollDelayMillis(pollDelayMillis);
+        props.setPollDays(pollDays);
+        props.setPollThreads(pollThreads);
+        if (overrides != null) {
+            if (overrides.getPollDelayMillis() != null) {
+                props.setPollDelayMillis(overrides.getPollDelayMillis());
+            }
+            if (overrides.getPollDays() != null) {
+                props.setPollDays(overrides.getPollDays());
+            }
+            if (overrides.getPollThreads() != null) {
+                props.setPollThreads(overrides.getPollThreads());
+            }
+        }
+        return props;
+    }
+
+    /**
+     * Per subreddit overrides, null means use the global setting.
+     */
+    public static class SubredditProps {
+        // only used when independentSubreddits is on
+        private Long pollDelayMillis;
+
+        private Integer pollDays;
+
+        private Integer pollThreads;
+
+        public Long getPollDelayMillis() {
+            return pollDelayMillis;
+        }
+
+        public void setPollDelayMillis(Long pollDelayMillis) {
+            this.pollDelayMillis = pollDelayMillis;
+        }
+
+        public Integer getPollDays() {
+            return pollDays;
+        }
+
+        public void setPollDays(Integer pollDays) {
+            this.pollDays = pollDays;
+        }
+
+        public Integer getPollThreads() {
+            return pollThreads;
+        }
+
+        public void setPollThreads(Integer pollThreads) {
+            this.pollThreads = pollThreads;
+        }
+    }
 }
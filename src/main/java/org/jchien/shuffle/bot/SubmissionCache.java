@@ -0,0 +1,194 @@
+package org.jchien.shuffle.bot;
+
+import com.google.common.annotations.VisibleForTesting;
+import net.dean.jraw.models.Submission;
+import org.jchien.shuffle.model.SubmissionFingerprint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers what each submission looked like the last time we processed it so quiet threads can be skipped.
+ * <p>
+ * The submission listing only tells us the comment count, so a comment edit won't change the fingerprint.
+ * To still pick up edits, a submission is only skipped if we've fully processed it within maxSkipMillis.
+ *
+ * @author jchien
+ */
+@Component
+public class SubmissionCache {
+    private static final Logger LOG = LoggerFactory.getLogger(SubmissionCache.class);
+
+    private static final String DELIM = "\t";
+
+    private static final String NULL_VALUE = "-";
+
+    private final Map<String, SubmissionFingerprint> fingerprints = new ConcurrentHashMap<>();
+
+    private final Path cacheFile;
+
+    private final long maxSkipMillis;
+
+    @Autowired
+    public SubmissionCache(ScoreBotPropsConfig config) {
+        this(getPath(config.getCacheFile()), config.getMaxSkipMillis());
+    }
+
+    @VisibleForTesting
+    SubmissionCache(Path cacheFile, long maxSkipMillis) {
+        this.cacheFile = cacheFile;
+        this.maxSkipMillis = maxSkipMillis;
+
+        load();
+    }
+
+    private static Path getPath(String cacheFile) {
+        if (cacheFile == null || cacheFile.isEmpty()) {
+            return null;
+        }
+        return Paths.get(cacheFile);
+    }
+
+    /**
+     * @param submission    submission from the subreddit listing
+     * @param now           current time
+     * @return              true if the submission hasn't changed since we last processed it and it isn't due
+     *                      for a full refresh yet
+     */
+    public boolean isUnchanged(Submission submission, Instant now) {
+        if (maxSkipMillis <= 0) {
+            return false;
+        }
+
+        SubmissionFingerprint fingerprint = fingerprints.get(submission.getId());
+        if (fingerprint == null) {
+            return false;
+        }
+
+        if (fingerprint.getCommentCount() != submission.getCommentCount()) {
+            return false;
+        }
+
+        Instant refreshDate = fingerprint.getProcessedDate().plusMillis(maxSkipMillis);
+        return now.isBefore(refreshDate);
+    }
+
+    public SubmissionFingerprint get(String submissionId) {
+        return fingerprints.get(submissionId);
+    }
+
+    public void put(SubmissionFingerprint fingerprint) {
+        SubmissionFingerprint previous = fingerprints.put(fingerprint.getSubmissionId(), fingerprint);
+
+        if (LOG.isDebugEnabled()
+                && previous != null
+                && previous.getTableHash() != fingerprint.getTableHash()) {
+            LOG.debug("tables changed for submission " + fingerprint.getSubmissionId());
+        }
+    }
+
+    /**
+     * Drop fingerprints for submissions we're no longer polling so the cache file doesn't grow forever.
+     *
+     * @param oldestDate    remove fingerprints that were last processed before this
+     */
+    public void evictBefore(Instant oldestDate) {
+        fingerprints.values().removeIf(fp -> fp.getProcessedDate().isBefore(oldestDate));
+    }
+
+    private void load() {
+        if (cacheFile == null || !Files.exists(cacheFile)) {
+            return;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(cacheFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                try {
+                    SubmissionFingerprint fingerprint = parseLine(line);
+                    fingerprints.put(fingerprint.getSubmissionId(), fingerprint);
+                } catch (RuntimeException e) {
+                    LOG.warn("skipping bad submission cache line: \"" + line + "\"", e);
+                }
+            }
+            LOG.info("loaded " + fingerprints.size() + " submission fingerprints from " + cacheFile);
+        } catch (IOException e) {
+            // worst case we reprocess everything, same as if there was no cache
+            LOG.warn("unable to read submission cache " + cacheFile, e);
+        }
+    }
+
+    public void save() {
+        if (cacheFile == null) {
+            return;
+        }
+
+        try {
+            Path parent = cacheFile.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+
+            // write to a temp file first so a crash mid-write doesn't clobber the existing cache
+            Path tmpFile = Files.createTempFile(parent, cacheFile.getFileName().toString(), ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(tmpFile, StandardCharsets.UTF_8)) {
+                for (SubmissionFingerprint fingerprint : fingerprints.values()) {
+                    writer.write(formatLine(fingerprint));
+                    writer.newLine();
+                }
+            }
+            Files.move(tmpFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOG.error("unable to write submission cache " + cacheFile, e);
+        }
+    }
+
+    @VisibleForTesting
+    static String formatLine(SubmissionFingerprint fingerprint) {
+        return fingerprint.getSubmissionId() + DELIM +
+                fingerprint.getCommentCount() + DELIM +
+                formatInstant(fingerprint.getLatestModifiedDate()) + DELIM +
+                Long.toHexString(fingerprint.getTableHash()) + DELIM +
+                formatInstant(fingerprint.getProcessedDate());
+    }
+
+    @VisibleForTesting
+    static SubmissionFingerprint parseLine(String line) {
+        String[] fields = line.split(DELIM);
+        if (fields.length != 5) {
+            throw new IllegalArgumentException("expected 5 fields but found " + fields.length);
+        }
+
+        return new SubmissionFingerprint(
+                fields[0],
+                Integer.parseInt(fields[1]),
+                parseInstant(fields[2]),
+                Long.parseUnsignedLong(fields[3], 16),
+                parseInstant(fields[4]));
+    }
+
+    private static String formatInstant(Instant instant) {
+        if (instant == null) {
+            return NULL_VALUE;
+        }
+        return Long.toString(instant.toEpochMilli());
+    }
+
+    private static Instant parseInstant(String s) {
+        if (NULL_VALUE.equals(s)) {
+            return null;
+        }
+        return Instant.ofEpochMilli(Long.parseLong(s));
+    }
+}
@@ -0,0 +1,95 @@
+package org.jchien.shuffle.bot;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Polling state for one subreddit: its settings, its own pool of submission workers so a busy subreddit can't take
+ * every worker, and a guard so its polls never overlap.
+ *
+ * @author jchien
+ */
+class SubredditSchedule {
+    private final String subreddit;
+
+    private final long pollDelayMillis;
+
+    private final int pollDays;
+
+    // runs SubmissionHandlers, submissions don't share any state so they can be processed independently
+    private final ExecutorService submissionExecutor;
+
+    // true while a full poll or new comment check is running
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    // start time of the last full poll, 0 if there hasn't been one
+    private volatile long lastPollStart = 0;
+
+    SubredditSchedule(String subreddit, ScoreBotPropsConfig.SubredditProps props) {
+        this.subreddit = subreddit;
+        this.pollDelayMillis = props.getPollDelayMillis();
+        this.pollDays = props.getPollDays();
+        this.submissionExecutor = createSubmissionExecutor(subreddit, props.getPollThreads());
+    }
+
+    private static ExecutorService createSubmissionExecutor(String subreddit, int pollThreads) {
+        if (pollThreads <= 1) {
+            // process submissions on the calling thread, same as before we had a worker pool
+            return MoreExecutors.newDirectExecutorService();
+        }
+
+        return Executors.newFixedThreadPool(pollThreads, new ThreadFactoryBuilder()
+                .setNameFormat("submission-" + subreddit + "-%d")
+                .setDaemon(true)
+                .build());
+    }
+
+    String getSubreddit() {
+        return subreddit;
+    }
+
+    long getPollDelayMillis() {
+        return pollDelayMillis;
+    }
+
+    int getPollDays() {
+        return pollDays;
+    }
+
+    ExecutorService getSubmissionExecutor() {
+        return submissionExecutor;
+    }
+
+    /**
+     * @return true if nothing else is polling the subreddit, in which case finish() must be called when done
+     */
+    boolean tryStart() {
+        return running.compareAndSet(false, true);
+    }
+
+    void finish() {
+        running.set(false);
+    }
+
+    /**
+     * Polls are scheduled pollDelayMillis after the previous one finishes, so anything past that delay is time spent
+     * on the previous poll or waiting to be run.
+     *
+     * @param start start time of a full poll
+     * @return      millis between the starts of this and the previous full poll, minus pollDelayMillis,
+     *              or -1 if this is the first one
+     */
+    long markPollStart(long start) {
+        long previous = lastPollStart;
+        lastPollStart = start;
+        return previous > 0 ? Math.max(start - previous - pollDelayMillis, 0) : -1;
+    }
+
+    void shutdown() {
+        submissionExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,196 @@
+package org.jchien.shuffle.formatter;
+
+import org.jchien.shuffle.model.Stage;
+import org.jchien.shuffle.model.StageType;
+import org.jchien.shuffle.model.TablePartId;
+
+import javax.annotation.Nullable;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+
+/**
+ * Hidden marker at the end of the first line of every bot comment, so a bot comment can be classified by reading
+ * one fixed layout instead of trying each header pattern.
+ * <p>
+ * The marker is an empty markdown link, which reddit doesn't render. Its fragment is "ssb", the format version,
+ * then a kind char: s for the summary, r for a reply to a user comment, or t for a table part. Table parts go on
+ * with a stage type char, the part number, and if the stage has an id, a period and the url encoded stage id.
+ * For example [](#ssb1te0.50) is the first part of EB stage 50.
+ *
+ * @author jchien
+ */
+public class CommentMarker {
+    public enum Kind {
+        SUMMARY,
+        TABLE,
+        REPLY
+    }
+
+    public static final int VERSION = 1;
+
+    private static final String PREFIX = "[](#ssb";
+
+    private static final char SUMMARY_CHAR = 's';
+    private static final char TABLE_CHAR = 't';
+    private static final char REPLY_CHAR = 'r';
+
+    private static final char COMPETITION_CHAR = 'c';
+    private static final char ESCALATION_BATTLE_CHAR = 'e';
+    private static final char NORMAL_CHAR = 'n';
+
+    private static final char STAGE_ID_DELIM = '.';
+
+    private static final String ENCODING = "UTF-8";
+
+    public static final String SUMMARY = PREFIX + VERSION + SUMMARY_CHAR + ")";
+
+    public static final String REPLY = PREFIX + VERSION + REPLY_CHAR + ")";
+
+    private final Kind kind;
+
+    private final TablePartId tablePartId;
+
+    private CommentMarker(Kind kind, @Nullable TablePartId tablePartId) {
+        this.kind = kind;
+        this.tablePartId = tablePartId;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return table part the comment holds, null if it isn't a table
+     */
+    @Nullable
+    public TablePartId getTablePartId() {
+        return tablePartId;
+    }
+
+    /**
+     * @param sb        comment being written, the marker should end its first line
+     * @param stageType table's stage type
+     * @param stageId   normalized stage id, null for competitions
+     * @param part      zero based part number
+     */
+    public static void appendTable(StringBuilder sb, StageType stageType, @Nullable String stageId, int part) {
+        sb.append(PREFIX)
+                .append(VERSION)
+                .append(TABLE_CHAR)
+                .append(toChar(stageType))
+                .append(part);
+        if (stageId != null) {
+            sb.append(STAGE_ID_DELIM).append(encode(stageId));
+        }
+        sb.append(')');
+    }
+
+    /**
+     * @param comment   bot comment
+     * @return          the comment's marker, or null if it doesn't have one we understand, e.g. it was written
+     *                  before markers were added
+     */
+    @Nullable
+    public static CommentMarker find(String comment) {
+        int eol = comment.indexOf('\n');
+        int end = eol >= 0 ? eol : comment.length();
+
+        // markdown line breaks leave trailing spaces after the marker
+        while (end > 0 && (comment.charAt(end - 1) == ' ' || comment.charAt(end - 1) == '\r')) {
+            end--;
+        }
+        if (end == 0 || comment.charAt(end - 1) != ')') {
+            return null;
+        }
+
+        int start = comment.lastIndexOf(PREFIX, end);
+        if (start < 0) {
+            return null;
+        }
+
+        try {
+            return decode(comment, start + PREFIX.length(), end - 1);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    // fields are in comment[pos, end)
+    private static CommentMarker decode(String comment, int pos, int end) {
+        if (end - pos < 2 || comment.charAt(pos) - '0' != VERSION) {
+            return null;
+        }
+        pos++;
+
+        char kindChar = comment.charAt(pos++);
+        switch (kindChar) {
+            case SUMMARY_CHAR:
+                return pos == end ? new CommentMarker(Kind.SUMMARY, null) : null;
+            case REPLY_CHAR:
+                return pos == end ? new CommentMarker(Kind.REPLY, null) : null;
+            case TABLE_CHAR:
+                break;
+            default:
+                return null;
+        }
+
+        StageType stageType = toStageType(comment.charAt(pos++));
+
+        int part = 0;
+        int digits = 0;
+        while (pos < end && Character.isDigit(comment.charAt(pos))) {
+            part = part * 10 + (comment.charAt(pos++) - '0');
+            digits++;
+        }
+        if (stageType == null || digits == 0) {
+            return null;
+        }
+
+        String stageId = null;
+        if (pos < end) {
+            if (comment.charAt(pos) != STAGE_ID_DELIM) {
+                return null;
+            }
+            stageId = decode(comment.substring(pos + 1, end));
+        }
+
+        return new CommentMarker(Kind.TABLE, new TablePartId(new Stage(stageType, stageId), part));
+    }
+
+    private static char toChar(StageType stageType) {
+        switch (stageType) {
+            case COMPETITION: return COMPETITION_CHAR;
+            case ESCALATION_BATTLE: return ESCALATION_BATTLE_CHAR;
+            case NORMAL: return NORMAL_CHAR;
+            default: throw new IllegalArgumentException("no table marker for stage type: " + stageType);
+        }
+    }
+
+    @Nullable
+    private static StageType toStageType(char c) {
+        switch (c) {
+            case COMPETITION_CHAR: return StageType.COMPETITION;
+            case ESCALATION_BATTLE_CHAR: return StageType.ESCALATION_BATTLE;
+            case NORMAL_CHAR: return StageType.NORMAL;
+            default: return null;
+        }
+    }
+
+    // keeps the stage id from closing the link early or breaking up the marker
+    private static String encode(String stageId) {
+        try {
+            return URLEncoder.encode(stageId, ENCODING);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String decode(String encoded) {
+        try {
+            return URLDecoder.decode(encoded, ENCODING);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
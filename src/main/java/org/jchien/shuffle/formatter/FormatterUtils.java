@@ -32,4 +32,11 @@ public class FormatterUtils {
     public static String getCommentPermalink(String submissionUrl, String commentId) {
         return submissionUrl + commentId;
     }
+
+    /**
+     * Same as getCommentPermalink() without building a separate string.
+     */
+    public static void appendCommentPermalink(StringBuilder sb, String submissionUrl, String commentId) {
+        sb.append(submissionUrl).append(commentId);
+    }
 }
@@ -16,9 +16,11 @@ public class InvalidRunFormatter {
     public static String formatInvalidRuns(Instant lastModTime, List<UserRunDetails> invalidRuns) {
         StringBuilder sb = new StringBuilder();
 
-        sb.append("It looks like you were trying to write run details, but I couldn't parse what you wrote.  \n" +
-                "[Check out the examples and syntax overview.](https://jachien.github.io/shuffle-score-bot/)  \n" +
-                "*****\n\n");
+        sb.append("It looks like you were trying to write run details, but I couldn't parse what you wrote.")
+                .append(CommentMarker.REPLY)
+                .append("  \n" +
+                        "[Check out the examples and syntax overview.](https://jachien.github.io/shuffle-score-bot/)  \n" +
+                        "*****\n\n");
         for (UserRunDetails urd : invalidRuns) {
             RunDetails run = urd.getRunDetails();
             appendStage(sb, run.getStageType(), run.getStage());
@@ -51,7 +53,7 @@ public class InvalidRunFormatter {
     }
 
     public static String getAllGoodMessage() {
-        return "Everything is good now.";
+        return "Everything is good now." + CommentMarker.REPLY;
     }
 
     public static String getPrivateMessageContent(String submissionUrl, String userCommentId, String replyBody) {
@@ -0,0 +1,92 @@
+package org.jchien.shuffle.formatter;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import org.jchien.shuffle.model.RunDetails;
+import org.jchien.shuffle.model.UserRunDetails;
+
+import java.util.Objects;
+
+/**
+ * Remembers rendered table rows between polls. Most runs in a big thread don't change from one poll to the next, so
+ * their rows can be reused instead of rendered again. Safe to share between RunFormatters on different threads.
+ * <p>
+ * Rows are keyed by submission url, comment id, user, and the run itself. The key hashes the run's content once, and
+ * unchanged comments come back from ParsedCommentCache as the same RunDetails instance, so most lookups are settled
+ * by the hash and an identity check without comparing the runs field by field.
+ *
+ * @author jchien
+ */
+public class RowCache {
+    private final Cache<Key, String> cache;
+
+    /**
+     * @param maxRows   max number of rows to keep, least recently used rows are evicted first
+     */
+    public RowCache(long maxRows) {
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maxRows)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * @return  rendered row, or null if it isn't cached
+     */
+    String get(Key key) {
+        return cache.getIfPresent(key);
+    }
+
+    void put(Key key, String row) {
+        cache.put(key, row);
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * @return  hits and misses since the cache was created
+     */
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    static class Key {
+        private final String submissionUrl;
+
+        private final String commentId;
+
+        private final String user;
+
+        private final RunDetails runDetails;
+
+        private final int hash;
+
+        Key(String submissionUrl, UserRunDetails urd) {
+            this.submissionUrl = submissionUrl;
+            this.commentId = urd.getCommentId();
+            this.user = urd.getUser();
+            this.runDetails = urd.getRunDetails();
+            this.hash = Objects.hash(submissionUrl, commentId, user, runDetails);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return hash == key.hash &&
+                    Objects.equals(submissionUrl, key.submissionUrl) &&
+                    Objects.equals(commentId, key.commentId) &&
+                    Objects.equals(user, key.user) &&
+                    Objects.equals(runDetails, key.runDetails);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package org.jchien.shuffle.formatter;
 
 import com.google.common.annotations.VisibleForTesting;
+import org.jchien.shuffle.metrics.ScoreBotMetrics;
 import org.jchien.shuffle.model.Item;
 import org.jchien.shuffle.model.MoveType;
 import org.jchien.shuffle.model.Pokemon;
@@ -9,14 +10,16 @@ import org.jchien.shuffle.model.Stage;
 import org.jchien.shuffle.model.StageType;
 import org.jchien.shuffle.model.UserRunDetails;
 
+import javax.annotation.Nullable;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
-import java.util.function.Function;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
 
-import static java.util.Comparator.*;
 import static org.jchien.shuffle.formatter.FormatterUtils.appendCapitalizedWords;
 
 /**
@@ -30,14 +33,87 @@ public class RunFormatter {
     // looking at actual comp runs, a single row is around 240 chars long
     final static int MAX_ROW_LENGTH = 1024;
 
+    // rendered tables larger than this don't keep their buffers around for the next table
+    private static final int MAX_RETAINED_CHARS = 1 << 20;
+
+    // formatted pokemon cells to remember per thread, cleared when it gets bigger than this
+    private static final int MAX_CACHED_CELLS = 4096;
+
+    private static final ThreadLocal<RenderBuffers> BUFFERS = ThreadLocal.withInitial(RenderBuffers::new);
+
+    private final boolean stableParts;
+
+    private final int partSlack;
+
+    private final RowCache rowCache;
+
+    private final ScoreBotMetrics metrics;
+
+    public RunFormatter() {
+        this(false, 0);
+    }
+
+    public RunFormatter(boolean stableParts, int partSlack) {
+        this(stableParts, partSlack, null, ScoreBotMetrics.NOOP);
+    }
+
+    /**
+     * @param stableParts   keep runs in the same table part across updates so fewer parts need to be edited
+     * @param partSlack     chars to leave free in newly laid out parts when stableParts is on
+     * @param rowCache      rows rendered by earlier polls, null to render every row
+     * @param metrics       metrics
+     */
+    public RunFormatter(boolean stableParts,
+                        int partSlack,
+                        @Nullable RowCache rowCache,
+                        ScoreBotMetrics metrics) {
+        this.stableParts = stableParts;
+        this.partSlack = stableParts ? partSlack : 0;
+        this.rowCache = rowCache;
+        this.metrics = metrics;
+    }
+
+    public boolean isStableParts() {
+        return stableParts;
+    }
+
     public List<String> formatRuns(List<UserRunDetails> runs, Stage stage, String submissionUrl) {
+        return formatRuns(runs, stage, submissionUrl, Collections.emptyList());
+    }
+
+    public List<String> formatRuns(List<UserRunDetails> runs,
+                                   Stage stage,
+                                   String submissionUrl,
+                                   List<Set<String>> previousParts) {
+        return formatRuns(runs, stage, submissionUrl, previousParts, null);
+    }
+
+    /**
+     * @param runs          runs for the stage, will be sorted
+     * @param stage         stage
+     * @param submissionUrl submission url
+     * @param previousParts comment ids of the runs in each part of the existing table, only used for stable parts
+     * @param ranking       ranking kept from the last time the stage was formatted, null to sort from scratch
+     * @return              comment body for each part of the table
+     */
+    public List<String> formatRuns(List<UserRunDetails> runs,
+                                   Stage stage,
+                                   String submissionUrl,
+                                   List<Set<String>> previousParts,
+                                   @Nullable RunRanking ranking) {
+        if (ranking != null) {
+            ranking.update(runs);
+        } else {
+            RunRanking.sort(runs, stage.getStageType());
+        }
+
         switch (stage.getStageType()) {
             case COMPETITION:
-                return formatCompetitionRun(runs, submissionUrl);
+                return formatCompetitionRun(runs, submissionUrl, previousParts);
             case ESCALATION_BATTLE:
-                return formatEscalationBattleStage(runs, stage, submissionUrl);
+                return formatEscalationBattleStage(runs, stage, submissionUrl, previousParts);
             case NORMAL:
-                return formatMainExSpecStage(runs, stage, submissionUrl);
+                return formatMainExSpecStage(runs, stage, submissionUrl, previousParts);
             default:
                 throw new IllegalArgumentException("unsupported stage type: " + stage.getStageType() +
                                                            " for stage " + stage + " in " + submissionUrl);
@@ -51,51 +127,26 @@ public class RunFormatter {
 
     @VisibleForTesting
     List<String> formatCompetitionRun(List<UserRunDetails> runs, String submissionUrl) {
-        // inlining these lambdas into Comparator.comparing() makes intellij 2017.3.1 think it's a syntax error
-        Function<UserRunDetails, Integer> score = (r) -> r.getRunDetails().getScore();
-
-        // sort by score desc, username
-        Comparator<UserRunDetails> comparator = comparing(score, nullsLast(reverseOrder()))
-                .thenComparing(UserRunDetails::getUser, String.CASE_INSENSITIVE_ORDER);
-
-        Collections.sort(runs, comparator);
-
-        int partNum = 0;
-        List<String> ret = new ArrayList<>();
-
-        // username (link to /u/user) | team | items | score (link to comment)
-        StringBuilder sb = new StringBuilder();
-        appendCompetitionHeader(sb, partNum);
-
-        StringBuilder rowBuilder = new StringBuilder();
-        for (UserRunDetails urd : runs) {
-            rowBuilder.setLength(0);
-            appendCompetitionRow(rowBuilder, urd, submissionUrl);
-
-            if (rowBuilder.length() > MAX_ROW_LENGTH) {
-                // This row is really long so skip it. We won't tell the user.
-                // I don't expect this to happen unless the user is filling
-                // their run with garbage data.
-                continue;
-            }
-
-            if (sb.length() + rowBuilder.length() > MAX_COMMENT_LENGTH) {
-                ret.add(sb.toString());
-
-                sb.setLength(0);
-                partNum++;
-                appendCompetitionHeader(sb, partNum);
-            }
-
-            sb.append(rowBuilder);
-        }
+        RunRanking.sort(runs, StageType.COMPETITION);
+        return formatCompetitionRun(runs, submissionUrl, Collections.emptyList());
+    }
 
-        ret.add(sb.toString());
-        return ret;
+    /**
+     * @param runs  runs sorted by RunRanking
+     */
+    private List<String> formatCompetitionRun(List<UserRunDetails> runs,
+                                              String submissionUrl,
+                                              List<Set<String>> previousParts) {
+        return formatTable(runs,
+                           submissionUrl,
+                           previousParts,
+                           (sb, partNum) -> appendCompetitionHeader(sb, partNum),
+                           (sb, urd, buffers) -> appendCompetitionRow(sb, urd, submissionUrl, buffers));
     }
 
     private void appendCompetitionHeader(StringBuilder sb, int partNum) {
         sb.append(COMP_HEADER_PREFIX);
+        CommentMarker.appendTable(sb, StageType.COMPETITION, null, partNum);
         sb.append('\n');
 
         appendPartNumber(sb, partNum);
@@ -103,15 +154,18 @@ public class RunFormatter {
         sb.append(COMP_TABLE_HEADER);
     }
 
-    private void appendCompetitionRow(StringBuilder sb, UserRunDetails urd, String submissionUrl) {
+    private void appendCompetitionRow(StringBuilder sb,
+                                      UserRunDetails urd,
+                                      String submissionUrl,
+                                      RenderBuffers buffers) {
         RunDetails run = urd.getRunDetails();
         appendUser(sb, urd.getUser());
         appendDelimiter(sb);
-        appendTeam(sb, run.getTeam());
+        appendTeam(sb, run.getTeam(), buffers);
         appendDelimiter(sb);
         appendItems(sb, run.getItems());
         appendDelimiter(sb);
-        appendScore(sb, submissionUrl, urd.getCommentId(), run.getScore());
+        appendScore(sb, submissionUrl, urd.getCommentId(), run.getScore(), buffers);
         appendDelimiter(sb);
         appendNotes(sb, run.hasNotes());
         sb.append('\n');
@@ -125,79 +179,180 @@ public class RunFormatter {
             "Username | Mega Slot | Slot 2 | Slot 3 | Slot 4 | Items | Result | Notes\n" +
             "|:-:|:-:|:-:|:-:|:-:|:-:|:-:|:-:\n";
 
-    private List<String> formatEscalationBattleStage(List<UserRunDetails> runs, Stage stage, String submissionUrl) {
-        return formatNonCompetitionStage(runs, stage, submissionUrl, EB_STAGE_HEADER_PREFIX);
+    private List<String> formatEscalationBattleStage(List<UserRunDetails> runs,
+                                                     Stage stage,
+                                                     String submissionUrl,
+                                                     List<Set<String>> previousParts) {
+        return formatNonCompetitionStage(runs, stage, submissionUrl, previousParts, EB_STAGE_HEADER_PREFIX);
     }
 
-    private List<String> formatMainExSpecStage(List<UserRunDetails> runs, Stage stage, String submissionUrl) {
-        return formatNonCompetitionStage(runs, stage, submissionUrl, MES_STAGE_HEADER_PREFIX);
+    private List<String> formatMainExSpecStage(List<UserRunDetails> runs,
+                                               Stage stage,
+                                               String submissionUrl,
+                                               List<Set<String>> previousParts) {
+        return formatNonCompetitionStage(runs, stage, submissionUrl, previousParts, MES_STAGE_HEADER_PREFIX);
     }
 
+    /**
+     * @param runs  runs sorted by RunRanking
+     */
     private List<String> formatNonCompetitionStage(List<UserRunDetails> runs,
                                                    Stage stage,
                                                    String submissionUrl,
+                                                   List<Set<String>> previousParts,
                                                    String stageHeaderPrefix) {
-        // inlining these lambdas into Comparator.comparing() makes intellij 2017.3.1 think it's a syntax error
-        Function<UserRunDetails, Integer> itemsCost = r -> r.getRunDetails().getItemsCost();
-        Function<UserRunDetails, Integer> unitsLeft = urd -> {
-            RunDetails r = urd.getRunDetails();
-            if (r.getMoveType() == null) {
-                return null;
-            }
-            switch (r.getMoveType()) {
-                case MOVES: return r.getMovesLeft();
-                case TIME: return r.getTimeLeft();
-                default: return null;
-            }
-        };
-
-        // sort by item cost asc, moves / time left desc, username
-        // We're not going to validate whether this was supposed to be a moves stage or a time stage.
-        // If people have conflicting moves types then that's too bad,
-        // later on we'll implement excluding runs for comments below some reddit score threshold, probably 0 or 1.
-        Comparator<UserRunDetails> comparator = comparing(itemsCost, nullsLast(naturalOrder()))
-                .thenComparing(unitsLeft, nullsLast(reverseOrder()))
-                .thenComparing(UserRunDetails::getUser, String.CASE_INSENSITIVE_ORDER);
-
-        Collections.sort(runs, comparator);
-
-        int partNum = 0;
-        List<String> ret = new ArrayList<>();
+        return formatTable(runs,
+                           submissionUrl,
+                           previousParts,
+                           (sb, partNum) -> appendStageHeader(sb, stage, partNum, stageHeaderPrefix),
+                           (sb, urd, buffers) -> appendStageRow(sb, urd, submissionUrl, buffers));
+    }
 
-        // username (link to /u/user) | team | items | score (link to comment)
-        StringBuilder sb = new StringBuilder();
-        appendStageHeader(sb, stage, partNum, stageHeaderPrefix);
+    /**
+     * Split sorted runs into as many comments as needed to stay under reddit's comment length limit.
+     * <p>
+     * By default every part is filled as much as possible, so adding a run near the top of a big table pushes a row
+     * from each part into the next one and every part needs an edit. With stable parts, each part starts with the
+     * same runs it started with last time, and freshly laid out parts leave partSlack chars free so new runs usually
+     * fit in the part they sort into. Only when a part overflows do its last rows spill into the next part.
+     * <p>
+     * Every row is rendered back to back into one reusable buffer, remembering where each row starts, so splitting
+     * into parts only needs the row lengths and each part is copied out of the buffer in one go. Rows that haven't
+     * changed since an earlier poll are copied from the row cache instead of rendered again.
+     *
+     * @param runs          sorted runs
+     * @param submissionUrl submission url
+     * @param previousParts comment ids of the runs in each part of the table as it was last written
+     * @param headerAppender appends the header for a part number
+     * @param rowAppender   appends the row for a run
+     * @return              comment body for each part
+     */
+    private List<String> formatTable(List<UserRunDetails> runs,
+                                     String submissionUrl,
+                                     List<Set<String>> previousParts,
+                                     BiConsumer<StringBuilder, Integer> headerAppender,
+                                     RowAppender rowAppender) {
+        RenderBuffers buffers = BUFFERS.get();
+        try {
+            return formatTable(runs, submissionUrl, previousParts, headerAppender, rowAppender, buffers);
+        } finally {
+            buffers.trim();
+        }
+    }
 
-        StringBuilder rowBuilder = new StringBuilder();
+    private List<String> formatTable(List<UserRunDetails> runs,
+                                     String submissionUrl,
+                                     List<Set<String>> previousParts,
+                                     BiConsumer<StringBuilder, Integer> headerAppender,
+                                     RowAppender rowAppender,
+                                     RenderBuffers buffers) {
+        StringBuilder rows = buffers.rows;
+        rows.setLength(0);
+
+        // row i is rows[rowStarts[i], rowStarts[i + 1])
+        int[] rowStarts = buffers.getRowStarts(runs.size() + 1);
+        List<String> commentIds = new ArrayList<>(runs.size());
+
+        int numRows = 0;
+        int cacheHits = 0;
         for (UserRunDetails urd : runs) {
-            rowBuilder.setLength(0);
-            appendStageRow(rowBuilder, urd, submissionUrl);
+            int rowStart = rows.length();
+            if (rowCache == null) {
+                rowAppender.append(rows, urd, buffers);
+            } else {
+                RowCache.Key key = new RowCache.Key(submissionUrl, urd);
+                String cachedRow = rowCache.get(key);
+                if (cachedRow != null) {
+                    rows.append(cachedRow);
+                    cacheHits++;
+                } else {
+                    rowAppender.append(rows, urd, buffers);
+                    rowCache.put(key, rows.substring(rowStart));
+                }
+            }
 
-            if (rowBuilder.length() > MAX_ROW_LENGTH) {
+            if (rows.length() - rowStart > MAX_ROW_LENGTH) {
                 // This row is really long so skip it. We won't tell the user.
                 // I don't expect this to happen unless the user is filling
                 // their run with garbage data.
+                rows.setLength(rowStart);
                 continue;
             }
 
-            if (sb.length() + rowBuilder.length() > MAX_COMMENT_LENGTH) {
-                ret.add(sb.toString());
+            commentIds.add(urd.getCommentId());
+            rowStarts[++numRows] = rows.length();
+        }
+
+        if (rowCache != null && !runs.isEmpty()) {
+            metrics.recordGauge(ScoreBotMetrics.ROW_CACHE_HIT_RATE, (double) cacheHits / runs.size());
+        }
 
-                sb.setLength(0);
-                partNum++;
-                appendStageHeader(sb, stage, partNum, stageHeaderPrefix);
+        // index of the first row in each part we're keeping from the previous layout
+        List<Integer> partStarts = new ArrayList<>();
+        partStarts.add(0);
+        if (stableParts) {
+            for (int part=1; part < previousParts.size(); part++) {
+                int start = indexOfAny(commentIds, previousParts.get(part));
+                if (start > partStarts.get(partStarts.size() - 1)) {
+                    partStarts.add(start);
+                }
+                // otherwise all of this part's runs were removed or moved up, so it's dropped
             }
+        }
+
+        int numPreviousParts = stableParts ? previousParts.size() : 0;
 
-            sb.append(rowBuilder);
+        List<String> ret = new ArrayList<>();
+        StringBuilder sb = buffers.part;
+        int row = 0;
+        for (int partNum=0; ; partNum++) {
+            sb.setLength(0);
+            headerAppender.accept(sb, partNum);
+            int headerLength = sb.length();
+
+            int end = partNum + 1 < partStarts.size() ? partStarts.get(partNum + 1) : numRows;
+
+            // parts that already exist can be filled up, new ones get some room to grow
+            int maxLength = partNum < numPreviousParts ? MAX_COMMENT_LENGTH : MAX_COMMENT_LENGTH - partSlack;
+
+            int firstRow = row;
+            int partLength = headerLength;
+            while (row < end) {
+                int rowLength = rowStarts[row + 1] - rowStarts[row];
+                if (partLength + rowLength > maxLength && partLength > headerLength) {
+                    break;
+                }
+                partLength += rowLength;
+                row++;
+            }
+
+            buffers.appendRows(sb, rowStarts[firstRow], rowStarts[row]);
+            ret.add(sb.toString());
+
+            if (row >= numRows) {
+                return ret;
+            }
+
+            // anything that didn't fit spills into the next part
+            if (partNum + 1 < partStarts.size()) {
+                partStarts.set(partNum + 1, row);
+            }
         }
+    }
 
-        ret.add(sb.toString());
-        return ret;
+    private static int indexOfAny(List<String> commentIds, Set<String> ids) {
+        for (int i=0; i < commentIds.size(); i++) {
+            if (ids.contains(commentIds.get(i))) {
+                return i;
+            }
+        }
+        return -1;
     }
 
     private void appendStageHeader(StringBuilder sb, Stage stage, int partNum, String stageHeaderPrefix) {
         sb.append(stageHeaderPrefix);
         appendCapitalizedWords(sb, stage.getStageId());
+        CommentMarker.appendTable(sb, stage.getStageType(), stage.getStageId(), partNum);
         sb.append('\n');
 
         appendPartNumber(sb, partNum);
@@ -205,11 +360,11 @@ public class RunFormatter {
         sb.append(STAGE_TABLE_HEADER);
     }
 
-    private void appendStageRow(StringBuilder sb, UserRunDetails urd, String submissionUrl) {
+    private void appendStageRow(StringBuilder sb, UserRunDetails urd, String submissionUrl, RenderBuffers buffers) {
         RunDetails details = urd.getRunDetails();
         appendUser(sb, urd.getUser());
         appendDelimiter(sb);
-        appendTeam(sb, details.getTeam());
+        appendTeam(sb, details.getTeam(), buffers);
         appendDelimiter(sb);
         appendItems(sb, details.getItems());
         appendDelimiter(sb);
@@ -249,13 +404,13 @@ public class RunFormatter {
         sb.append("/u/").append(user);
     }
 
-    private void appendTeam(StringBuilder sb, List<Pokemon> team) {
+    private void appendTeam(StringBuilder sb, List<Pokemon> team, RenderBuffers buffers) {
         String delim = "";
         for (int i=0; i < 4; i++) {
             sb.append(delim);
             if (team.size() > i) {
                 Pokemon pokemon = team.get(i);
-                appendPokemon(sb, pokemon);
+                appendPokemon(sb, pokemon, buffers);
             } else {
                 sb.append("*blank*");
             }
@@ -263,16 +418,27 @@ public class RunFormatter {
         }
     }
 
-    private void appendPokemon(StringBuilder sb, Pokemon pokemon) {
+    // the same pokemon shows up on a lot of teams, so each distinct one is only formatted once
+    private void appendPokemon(StringBuilder sb, Pokemon pokemon, RenderBuffers buffers) {
+        String cell = buffers.pokemonCells.get(pokemon);
+        if (cell != null) {
+            sb.append(cell);
+            return;
+        }
+
+        int start = sb.length();
         sb.append("**");
         appendCapitalizedWords(sb, pokemon.getName());
         sb.append("**");
 
-        sb.append(getPokemonStats(pokemon));
+        appendPokemonStats(sb, pokemon);
+
+        buffers.pokemonCells.put(pokemon, sb.substring(start));
     }
 
-    private String getPokemonStats(Pokemon pokemon) {
-        StringBuilder sb = new StringBuilder(" (");
+    private void appendPokemonStats(StringBuilder sb, Pokemon pokemon) {
+        int start = sb.length();
+        sb.append(" (");
         String delim = "";
         if (pokemon.isPerfect()) {
             sb.append("Perfect");
@@ -302,12 +468,10 @@ public class RunFormatter {
         }
         sb.append(")");
 
-        // if we have no stats specified, the string will be " ()"
-        if (sb.length() > 3) {
-            return sb.toString();
+        // if we have no stats specified, we only appended " ()"
+        if (sb.length() - start <= 3) {
+            sb.setLength(start);
         }
-
-        return "";
     }
 
     private void appendItems(StringBuilder sb, List<Item> items) {
@@ -324,15 +488,16 @@ public class RunFormatter {
         }
     }
 
-    private void appendScore(StringBuilder sb, String submissionUrl, String commentId, Integer score) {
+    private void appendScore(StringBuilder sb,
+                             String submissionUrl,
+                             String commentId,
+                             Integer score,
+                             RenderBuffers buffers) {
         final String formattedScore;
         if (score == null) {
             formattedScore = null;
         } else {
-            DecimalFormat df = new DecimalFormat();
-            df.setGroupingSize(3);
-            df.setGroupingUsed(true);
-            formattedScore = df.format(score);
+            formattedScore = buffers.scoreFormat.format(score);
         }
         appendResult(sb, submissionUrl, commentId, formattedScore);
     }
@@ -369,7 +534,7 @@ public class RunFormatter {
             sb.append(result);
         }
         sb.append("](");
-        sb.append(FormatterUtils.getCommentPermalink(submissionUrl, commentId));
+        FormatterUtils.appendCommentPermalink(sb, submissionUrl, commentId);
         sb.append(')');
     }
 
@@ -378,4 +543,67 @@ public class RunFormatter {
             sb.append("yes");
         }
     }
+
+    private interface RowAppender {
+        void append(StringBuilder sb, UserRunDetails urd, RenderBuffers buffers);
+    }
+
+    /**
+     * Scratch space reused by every table formatted on a thread.
+     */
+    private static class RenderBuffers {
+        private StringBuilder rows = new StringBuilder();
+
+        private StringBuilder part = new StringBuilder(MAX_COMMENT_LENGTH);
+
+        private char[] chars = new char[MAX_COMMENT_LENGTH];
+
+        private int[] rowStarts = new int[64];
+
+        private final Map<Pokemon, String> pokemonCells = new HashMap<>();
+
+        // DecimalFormat isn't thread safe, which is why this is per thread instead of shared
+        private final DecimalFormat scoreFormat = new DecimalFormat();
+
+        private RenderBuffers() {
+            scoreFormat.setGroupingSize(3);
+            scoreFormat.setGroupingUsed(true);
+        }
+
+        private int[] getRowStarts(int size) {
+            if (rowStarts.length < size) {
+                rowStarts = new int[Math.max(size, rowStarts.length * 2)];
+            }
+            return rowStarts;
+        }
+
+        /**
+         * Appends rows[start, end) to sb.
+         */
+        private void appendRows(StringBuilder sb, int start, int end) {
+            int length = end - start;
+            if (chars.length < length) {
+                chars = new char[length];
+            }
+            rows.getChars(start, end, chars, 0);
+            sb.append(chars, 0, length);
+        }
+
+        // don't hold onto memory from one huge table forever
+        private void trim() {
+            if (rows.capacity() > MAX_RETAINED_CHARS) {
+                rows = new StringBuilder();
+                rowStarts = new int[64];
+            }
+            if (part.capacity() > MAX_RETAINED_CHARS) {
+                part = new StringBuilder(MAX_COMMENT_LENGTH);
+            }
+            if (chars.length > MAX_RETAINED_CHARS) {
+                chars = new char[MAX_COMMENT_LENGTH];
+            }
+            if (pokemonCells.size() > MAX_CACHED_CELLS) {
+                pokemonCells.clear();
+            }
+        }
+    }
 }
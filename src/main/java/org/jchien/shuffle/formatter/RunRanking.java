@@ -0,0 +1,181 @@
+package org.jchien.shuffle.formatter;
+
+import org.jchien.shuffle.model.RunDetails;
+import org.jchien.shuffle.model.StageType;
+import org.jchien.shuffle.model.UserRunDetails;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Table order for one stage's runs, kept up to date across polls.
+ * <p>
+ * Competition runs are ordered by score desc, then username. Other stages are ordered by item cost asc, then moves or
+ * time left desc, then username. Unknown values sort last. Sort keys are worked out once per run and stored as
+ * primitives, so comparisons don't box or add up item costs.
+ * <p>
+ * Unchanged comments come back from ParsedCommentCache as the same UserRunDetails instances, so update() only has
+ * to remove runs that are gone, sort the new ones, and merge them in instead of sorting the whole stage again.
+ * Runs that tie on everything stay in the order they were first seen, same as a stable sort.
+ *
+ * @author jchien
+ */
+public class RunRanking {
+    private static final Comparator<RankedRun> ORDER = (a, b) -> {
+        int cmp = Long.compare(a.primary, b.primary);
+        if (cmp != 0) {
+            return cmp;
+        }
+        cmp = Long.compare(a.secondary, b.secondary);
+        if (cmp != 0) {
+            return cmp;
+        }
+        cmp = String.CASE_INSENSITIVE_ORDER.compare(a.user, b.user);
+        if (cmp != 0) {
+            return cmp;
+        }
+        return Long.compare(a.seq, b.seq);
+    };
+
+    private final StageType stageType;
+
+    // in table order
+    private final List<RankedRun> ranked = new ArrayList<>();
+
+    private final Map<UserRunDetails, RankedRun> rankedByRun = new IdentityHashMap<>();
+
+    private long nextSeq = 0;
+
+    public RunRanking(StageType stageType) {
+        this.stageType = stageType;
+    }
+
+    /**
+     * Sorts runs into table order without keeping any state around.
+     *
+     * @param runs      runs for a stage, sorted in place
+     * @param stageType type of the stage
+     */
+    public static void sort(List<UserRunDetails> runs, StageType stageType) {
+        new RunRanking(stageType).update(runs);
+    }
+
+    /**
+     * Brings the ranking up to date with the stage's current runs and sorts them into table order.
+     *
+     * @param runs  every run currently in the stage, sorted in place
+     */
+    public synchronized void update(List<UserRunDetails> runs) {
+        Set<UserRunDetails> current = Collections.newSetFromMap(new IdentityHashMap<>(runs.size()));
+        current.addAll(runs);
+
+        // drop runs that were edited or deleted since the last update
+        if (ranked.removeIf(r -> !current.contains(r.urd))) {
+            rankedByRun.keySet().retainAll(current);
+        }
+
+        List<RankedRun> added = new ArrayList<>();
+        for (UserRunDetails urd : runs) {
+            if (!rankedByRun.containsKey(urd)) {
+                RankedRun r = rank(urd);
+                added.add(r);
+                rankedByRun.put(urd, r);
+            }
+        }
+
+        if (!added.isEmpty()) {
+            added.sort(ORDER);
+            merge(added);
+        }
+
+        runs.clear();
+        for (RankedRun r : ranked) {
+            runs.add(r.urd);
+        }
+    }
+
+    public synchronized int size() {
+        return ranked.size();
+    }
+
+    // only the new runs get sorted, then they're merged into the runs that are already in order
+    private void merge(List<RankedRun> added) {
+        if (ranked.isEmpty()) {
+            ranked.addAll(added);
+            return;
+        }
+
+        List<RankedRun> merged = new ArrayList<>(ranked.size() + added.size());
+        int i = 0;
+        int j = 0;
+        while (i < ranked.size() && j < added.size()) {
+            if (ORDER.compare(ranked.get(i), added.get(j)) <= 0) {
+                merged.add(ranked.get(i++));
+            } else {
+                merged.add(added.get(j++));
+            }
+        }
+        merged.addAll(ranked.subList(i, ranked.size()));
+        merged.addAll(added.subList(j, added.size()));
+
+        ranked.clear();
+        ranked.addAll(merged);
+    }
+
+    private RankedRun rank(UserRunDetails urd) {
+        RunDetails run = urd.getRunDetails();
+        if (stageType == StageType.COMPETITION) {
+            return new RankedRun(urd, descNullsLast(run.getScore()), 0, nextSeq++);
+        }
+
+        // We're not going to validate whether this was supposed to be a moves stage or a time stage.
+        // If people have conflicting moves types then that's too bad,
+        // later on we'll implement excluding runs for comments below some reddit score threshold, probably 0 or 1.
+        return new RankedRun(urd, ascNullsLast(run.getItemsCost()), descNullsLast(getUnitsLeft(run)), nextSeq++);
+    }
+
+    private static Integer getUnitsLeft(RunDetails r) {
+        if (r.getMoveType() == null) {
+            return null;
+        }
+        switch (r.getMoveType()) {
+            case MOVES: return r.getMovesLeft();
+            case TIME: return r.getTimeLeft();
+            default: return null;
+        }
+    }
+
+    private static long ascNullsLast(Integer value) {
+        return value == null ? Long.MAX_VALUE : value;
+    }
+
+    private static long descNullsLast(Integer value) {
+        return value == null ? Long.MAX_VALUE : -(long) value;
+    }
+
+    private static class RankedRun {
+        private final UserRunDetails urd;
+
+        private final long primary;
+
+        private final long secondary;
+
+        private final String user;
+
+        // order the run was first seen in, breaks ties
+        private final long seq;
+
+        private RankedRun(UserRunDetails urd, long primary, long secondary, long seq) {
+            this.urd = urd;
+            this.primary = primary;
+            this.secondary = secondary;
+            this.user = urd.getUser();
+            this.seq = seq;
+        }
+    }
+}
@@ -22,7 +22,10 @@ import static org.jchien.shuffle.formatter.FormatterUtils.appendCapitalizedWords
  */
 public class SummaryFormatter {
 
-    public final static String SUMMARY_HEADER = "###Run Round-up\n\n";
+    // summary comments written before markers were added start with just this
+    public final static String SUMMARY_TITLE = "###Run Round-up";
+
+    public final static String SUMMARY_HEADER = SUMMARY_TITLE + CommentMarker.SUMMARY + "\n\n";
 
     private static final Comparator<TablePartId> PART_NUM_COMPARATOR = comparingInt(TablePartId::getPart);
 
@@ -0,0 +1,201 @@
+package org.jchien.shuffle.handler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds every run and roster block in a comment in a single pass.
+ * <p>
+ * This matches the same blocks as the regexes it replaced, see BlockScannerTest: a block starts with a keyword at the
+ * start of the comment or after whitespace, and ends at the first !end after it. Run and roster blocks are tracked
+ * independently, so a run block inside a roster block is still found. Line and column offsets are counted as we go
+ * instead of searching backwards from each block.
+ *
+ * @author jchien
+ */
+public class BlockScanner {
+    public enum BlockType {
+        RUN,
+        ROSTER,
+    }
+
+    private static final String[] RUN_KEYWORDS = { "!comp", "!eb", "!run" };
+
+    private static final String ROSTER_KEYWORD = "!roster";
+
+    private static final String END_KEYWORD = "!end";
+
+    /**
+     * @param comment   full comment
+     * @return          run and roster blocks, in the order their !end appears
+     */
+    public static List<Block> scan(String comment) {
+        List<Block> blocks = new ArrayList<>();
+
+        OpenBlock run = null;
+        OpenBlock roster = null;
+
+        int line = 0;
+        int lineStart = 0;
+
+        int len = comment.length();
+        for (int i=0; i < len; i++) {
+            char c = comment.charAt(i);
+
+            if (c == '\n') {
+                line++;
+                lineStart = i + 1;
+                continue;
+            }
+
+            if (c != '!') {
+                continue;
+            }
+
+            if (run != null || roster != null) {
+                int end = matchKeyword(comment, i, END_KEYWORD);
+                if (end >= 0) {
+                    if (run != null) {
+                        blocks.add(run.close(comment, end));
+                        run = null;
+                    }
+                    if (roster != null) {
+                        blocks.add(roster.close(comment, end));
+                        roster = null;
+                    }
+                    i = end - 1;
+                    continue;
+                }
+            }
+
+            if (i > 0 && !isSpace(comment.charAt(i - 1))) {
+                continue;
+            }
+
+            if (run == null) {
+                for (String keyword : RUN_KEYWORDS) {
+                    if (matchKeyword(comment, i, keyword) >= 0) {
+                        run = new OpenBlock(BlockType.RUN, i, line, i - lineStart);
+                        break;
+                    }
+                }
+            }
+
+            if (roster == null && matchKeyword(comment, i, ROSTER_KEYWORD) >= 0) {
+                roster = new OpenBlock(BlockType.ROSTER, i, line, i - lineStart);
+            }
+        }
+
+        return blocks;
+    }
+
+    /**
+     * @return index after the keyword if it's at pos and followed by a word boundary, -1 otherwise
+     */
+    private static int matchKeyword(String comment, int pos, String keyword) {
+        int end = pos + keyword.length();
+        if (end > comment.length()) {
+            return -1;
+        }
+
+        for (int i=0; i < keyword.length(); i++) {
+            // keywords are ascii, and the patterns were only case insensitive for ascii
+            char c = comment.charAt(pos + i);
+            char k = keyword.charAt(i);
+            if (c != k && !(k >= 'a' && k <= 'z' && c == k - 'a' + 'A')) {
+                return -1;
+            }
+        }
+
+        if (end < comment.length() && isWordChar(comment.codePointAt(end))) {
+            return -1;
+        }
+        return end;
+    }
+
+    // same as \s in java regex
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    // same as what \b considers a word character in java regex, keywords always end in a letter so any
+    // non-spacing mark following them has a base character
+    private static boolean isWordChar(int codePoint) {
+        return codePoint == '_'
+                || Character.isLetterOrDigit(codePoint)
+                || Character.getType(codePoint) == Character.NON_SPACING_MARK;
+    }
+
+    private static class OpenBlock {
+        private final BlockType type;
+
+        private final int start;
+
+        private final int lineOffset;
+
+        private final int colOffset;
+
+        private OpenBlock(BlockType type, int start, int lineOffset, int colOffset) {
+            this.type = type;
+            this.start = start;
+            this.lineOffset = lineOffset;
+            this.colOffset = colOffset;
+        }
+
+        private Block close(String comment, int end) {
+            return new Block(type, comment.substring(start, end), lineOffset, colOffset);
+        }
+    }
+
+    public static class Block {
+        private final BlockType type;
+
+        private final String content;
+
+        private final int lineOffset;
+
+        private final int colOffset;
+
+        public Block(BlockType type, String content, int lineOffset, int colOffset) {
+            this.type = type;
+            this.content = content;
+            this.lineOffset = lineOffset;
+            this.colOffset = colOffset;
+        }
+
+        public BlockType getType() {
+            return type;
+        }
+
+        /**
+         * @return block from the start keyword through !end
+         */
+        public String getContent() {
+            return content;
+        }
+
+        /**
+         * @return number of new lines before the block
+         */
+        public int getLineOffset() {
+            return lineOffset;
+        }
+
+        /**
+         * @return number of characters between the block and the preceding new line
+         */
+        public int getColOffset() {
+            return colOffset;
+        }
+
+        @Override
+        public String toString() {
+            return "Block{" +
+                    "type=" + type +
+                    ", content='" + content + '\'' +
+                    ", lineOffset=" + lineOffset +
+                    ", colOffset=" + colOffset +
+                    '}';
+        }
+    }
+}
@@ -2,28 +2,38 @@ package org.jchien.shuffle.handler;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Sets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import net.dean.jraw.RedditClient;
 import net.dean.jraw.models.Comment;
 import net.dean.jraw.models.Submission;
-import net.dean.jraw.references.InboxReference;
+import org.jchien.shuffle.formatter.CommentMarker;
 import org.jchien.shuffle.formatter.FormatterUtils;
 import org.jchien.shuffle.formatter.RunFormatter;
+import org.jchien.shuffle.formatter.RunRanking;
 import org.jchien.shuffle.formatter.InvalidRunFormatter;
 import org.jchien.shuffle.formatter.SummaryFormatter;
+import org.jchien.shuffle.metrics.ScoreBotMetrics;
 import org.jchien.shuffle.model.BotComment;
+import org.jchien.shuffle.model.BotOutput;
 import org.jchien.shuffle.model.InvalidRuns;
 import org.jchien.shuffle.model.Stage;
 import org.jchien.shuffle.model.StageType;
+import org.jchien.shuffle.model.SubmissionOutput;
 import org.jchien.shuffle.model.TablePartId;
 import org.jchien.shuffle.model.UserRunDetails;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -40,6 +50,10 @@ import static java.util.Comparator.nullsFirst;
 /**
  * Unlike UserCommentHandler, this is intended to handle all the bot comments for a single sumbission.
  * Naming things is hard.
+ * <p>
+ * Existing bot comments are only kept as ids and content hashes. If the BotOutputLedger has a trusted entry for the
+ * submission, that's what we compare against and the bot comments in the comment tree are ignored. Otherwise they're
+ * found in the comment tree like always and the ledger entry is rebuilt from them.
  * @author jchien
  */
 public class BotCommentHandler {
@@ -54,36 +68,77 @@ public class BotCommentHandler {
             comparing(TablePartId::getStage, STAGE_COMPARATOR)
             .thenComparing(TablePartId::getPart, naturalOrder());
 
-    private RedditClient redditClient;
+    private RedditWriter redditWriter;
+
+    private ScoreBotMetrics metrics;
 
     private Submission submission;
 
-    private BotComment summaryComment = null;
+    private BotOutput summaryComment = null;
 
     // map of all aggregate tables as they are BEFORE any writes or updates from this run
-    private Map<TablePartId, BotComment> aggregateTableMap = new TreeMap<>(TABLE_PART_ID_COMPARATOR);
+    private Map<TablePartId, BotOutput> aggregateTableMap = new TreeMap<>(TABLE_PART_ID_COMPARATOR);
 
     private List<String> dupeAggregateCommentIds = new ArrayList<>();
 
     // user comment id -> bot reply
-    private Map<String, BotComment> botReplyMap = new TreeMap<>();
+    private Map<String, BotOutput> botReplyMap = new TreeMap<>();
+
+    // null if bot comments are found in the comment tree every time
+    private BotOutputLedger outputLedger = null;
+
+    // reconcile time of the ledger entry we started from, null if we're reading bot comments from the comment tree
+    private Instant ledgerReconciledDate = null;
 
-    private RunFormatter runFormatter = new RunFormatter();
+    // matches links to run comments in table rows, created on first use
+    private Pattern runLinkPattern = null;
+
+    private RunFormatter runFormatter;
+
+    // null if tables are sorted from scratch
+    private RunRankingCache runRankingCache = null;
 
     private SummaryFormatter summaryFormatter = new SummaryFormatter();
 
-    public BotCommentHandler(RedditClient redditClient, Submission submission) {
-        this.redditClient = redditClient;
+    // hash of the latest aggregate tables, computed after they're written
+    private long tableHash = 0;
+
+    // true if a stage's table couldn't be written, so the ledger won't match what's on reddit
+    private boolean tableWriteFailed = false;
+
+    public BotCommentHandler(HandlerContext context, Submission submission) {
+        this.metrics = context.getMetrics();
+        this.redditWriter = new RedditWriter(context.getRedditClient(),
+                                             context.getWriteLimiter(),
+                                             context.getMessageOutbox(),
+                                             metrics);
         this.submission = submission;
+        this.runFormatter = new RunFormatter(context.isStableTableParts(),
+                                             context.getTablePartSlack(),
+                                             context.getRowCache(),
+                                             metrics);
+        this.runRankingCache = context.getRunRankingCache();
+        this.outputLedger = context.getOutputLedger();
+
+        if (outputLedger != null) {
+            SubmissionOutput output = outputLedger.getTrusted(submission.getId(), Instant.now());
+            if (output != null) {
+                summaryComment = output.getSummary();
+                aggregateTableMap.putAll(output.getTables());
+                botReplyMap.putAll(output.getReplies());
+                ledgerReconciledDate = output.getReconciledDate();
+            }
+        }
     }
 
     @VisibleForTesting
     BotCommentHandler(RedditClient redditClient,
                       Submission submission,
-                      BotComment summaryComment,
-                      Map<TablePartId, BotComment> aggregateTableMap,
-                      Map<String, BotComment> botReplyMap, RunFormatter runFormatter) {
-        this.redditClient = redditClient;
+                      BotOutput summaryComment,
+                      Map<TablePartId, BotOutput> aggregateTableMap,
+                      Map<String, BotOutput> botReplyMap, RunFormatter runFormatter) {
+        this.metrics = ScoreBotMetrics.NOOP;
+        this.redditWriter = new RedditWriter(redditClient, null, metrics);
         this.submission = submission;
         this.summaryComment = summaryComment;
         this.aggregateTableMap = aggregateTableMap;
@@ -92,83 +147,140 @@ public class BotCommentHandler {
     }
 
     public void processBotComment(String commentId, String commentBody, String parentId) {
-        boolean isSummaryTable = cacheSummaryTable(commentId, commentBody);
-
-        boolean isAggregateTable = cacheAggregateTable(commentId, commentBody);
-
-        if (!isSummaryTable && !isAggregateTable) {
-            cacheBotReply(commentId, commentBody, parentId);
+        if (ledgerReconciledDate != null) {
+            // already know what we wrote from the ledger
+            return;
         }
-    }
 
-    // return true if this comment was a summary table
-    private boolean cacheSummaryTable(String commentId, String commentBody) {
-        if (isSummaryComment(commentBody)) {
-            summaryComment = new BotComment(commentId, commentBody);
-
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("found summary table, id = " + commentId);
+        CommentMarker marker = CommentMarker.find(commentBody);
+        if (marker != null) {
+            switch (marker.getKind()) {
+                case SUMMARY:
+                    cacheSummaryTable(commentId, commentBody);
+                    break;
+                case TABLE:
+                    cacheAggregateTable(commentId, commentBody, marker.getTablePartId());
+                    break;
+                default:
+                    cacheBotReply(commentId, commentBody, parentId);
             }
+            return;
+        }
 
-            return true;
+        // written before comments had markers, figure out what it is from the headers
+        if (isSummaryComment(commentBody)) {
+            cacheSummaryTable(commentId, commentBody);
+            return;
         }
 
-        return false;
+        TablePartId partId = getTablePartId(commentBody);
+        if (partId != null) {
+            cacheAggregateTable(commentId, commentBody, partId);
+        } else {
+            cacheBotReply(commentId, commentBody, parentId);
+        }
     }
 
-    // return true if this comment was an aggregate table
-    private boolean cacheAggregateTable(String commentId, String commentBody) {
-        TablePartId partId = getTablePartId(commentBody);
+    private void cacheSummaryTable(String commentId, String commentBody) {
+        summaryComment = new BotOutput(commentId, BotOutput.hashContent(commentBody));
 
-        if (partId == null) {
-            return false;
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("found summary table, id = " + commentId);
         }
+    }
 
+    private void cacheAggregateTable(String commentId, String commentBody, TablePartId partId) {
         if (LOG.isDebugEnabled()) {
             LOG.debug("found " + partId + " from comment " + commentId);
         }
 
         if (aggregateTableMap.containsKey(partId)) {
             dupeAggregateCommentIds.add(commentId);
-            BotComment existingComment = aggregateTableMap.get(partId);
+            BotOutput existingComment = aggregateTableMap.get(partId);
             LOG.warn("duplicate partId found: " + partId + " in commentId " + commentId + ", duplicate of " + existingComment.getCommentId());
         } else {
-            aggregateTableMap.put(partId, new BotComment(commentId, commentBody));
+            aggregateTableMap.put(partId, toTableOutput(commentId, commentBody));
         }
-
-        return true;
     }
 
     private void cacheBotReply(String commentId, String commentBody, String parentId) {
-        botReplyMap.put(parentId, new BotComment(commentId, commentBody));
+        botReplyMap.put(parentId, new BotOutput(commentId, BotOutput.hashContent(commentBody)));
+    }
+
+    private BotOutput toTableOutput(String commentId, String commentBody) {
+        return new BotOutput(commentId, BotOutput.hashContent(commentBody), getRunCommentIds(commentBody));
     }
 
     public void createOrUpdateBotComments(Map<Stage, List<UserRunDetails>> stageMap,
                                           Map<String, String> authorMap,
                                           Map<String, InvalidRuns> invalidRunMap) {
+        if (outputLedger != null) {
+            // if anything below throws, we don't know what made it to reddit, so read it back next time
+            outputLedger.remove(submission.getId());
+        }
+
         Map<TablePartId, BotComment> latestTableMap = writeAggregateTables(stageMap);
 
+        tableHash = hashTables(latestTableMap);
+
         removeEmptyAggregateTables(latestTableMap);
 
         removeDupeAggregateTables();
 
-        writeBotReplies(authorMap, invalidRunMap);
+        Map<String, BotOutput> latestReplyMap = writeBotReplies(authorMap, invalidRunMap);
+
+        int failed = redditWriter.flush();
+
+        if (outputLedger != null && failed == 0 && !tableWriteFailed) {
+            updateLedger(latestTableMap, latestReplyMap);
+        }
+    }
+
+    private void updateLedger(Map<TablePartId, BotComment> latestTableMap, Map<String, BotOutput> latestReplyMap) {
+        Map<TablePartId, BotOutput> tables = new HashMap<>();
+        for (Map.Entry<TablePartId, BotComment> entry : latestTableMap.entrySet()) {
+            BotComment comment = entry.getValue();
+            tables.put(entry.getKey(), toTableOutput(comment.getCommentId(), comment.getContent()));
+        }
+
+        Instant reconciledDate = ledgerReconciledDate != null ? ledgerReconciledDate : Instant.now();
+        outputLedger.put(new SubmissionOutput(submission.getId(),
+                                              summaryComment,
+                                              tables,
+                                              latestReplyMap,
+                                              reconciledDate));
     }
 
-    private BotComment createSummaryTable() {
-        Comment comment = redditClient.submission(submission.getId()).reply(SummaryFormatter.SUMMARY_HEADER);
-        return new BotComment(comment.getId(), comment.getBody());
+    public long getTableHash() {
+        return tableHash;
+    }
+
+    private static long hashTables(Map<TablePartId, BotComment> tableMap) {
+        Hasher hasher = Hashing.murmur3_128().newHasher();
+        for (BotComment comment : tableMap.values()) {
+            hasher.putString(comment.getCommentId(), StandardCharsets.UTF_8);
+            hasher.putString(comment.getContent(), StandardCharsets.UTF_8);
+        }
+        return hasher.hash().asLong();
+    }
+
+    private BotOutput createSummaryTable() {
+        Comment comment = redditWriter.replyToSubmission(submission.getId(), SummaryFormatter.SUMMARY_HEADER);
+        return new BotOutput(comment.getId(), BotOutput.hashContent(SummaryFormatter.SUMMARY_HEADER));
     }
 
     private void updateSummaryTable(Map<TablePartId, BotComment> latestAggregateTableMap) {
         String submissionUrl = submission.getUrl();
+        long formatStart = System.nanoTime();
         String summaryTable = summaryFormatter.formatSummary(submissionUrl, latestAggregateTableMap);
-        if (!contentEquals(summaryComment.getContent(), summaryTable)) {
+        metrics.recordSince(ScoreBotMetrics.FORMAT, formatStart);
+        if (!summaryComment.hasContent(summaryTable)) {
             if (LOG.isDebugEnabled()) {
                 String url = FormatterUtils.getCommentPermalink(submissionUrl, summaryComment.getCommentId());
                 LOG.debug("updating summary comment at " + url);
             }
-            redditClient.comment(summaryComment.getCommentId()).edit(summaryTable);
+            redditWriter.edit(summaryComment.getCommentId(), summaryTable);
+            summaryComment = new BotOutput(summaryComment.getCommentId(), BotOutput.hashContent(summaryTable));
         } else {
             if (LOG.isDebugEnabled()) {
                 String url = FormatterUtils.getCommentPermalink(submissionUrl, summaryComment.getCommentId());
@@ -197,6 +309,7 @@ public class BotCommentHandler {
                     latestTableMap.put(new TablePartId(stage, part), comment);
                 }
             } catch (Exception e) {
+                tableWriteFailed = true;
                 LOG.error("failed to write table for stage " + stage + " at " + submission.getUrl(), e);
             }
         }
@@ -214,7 +327,15 @@ public class BotCommentHandler {
                                          List<UserRunDetails> runs) {
         String submissionUrl = submission.getUrl();
 
-        final List<String> commentBodies = runFormatter.formatRuns(runs, stage, submissionUrl);
+        RunRanking ranking = runRankingCache != null ? runRankingCache.get(submission.getId(), stage) : null;
+
+        long formatStart = System.nanoTime();
+        final List<String> commentBodies = runFormatter.formatRuns(runs,
+                                                                   stage,
+                                                                   submissionUrl,
+                                                                   getPreviousParts(stage),
+                                                                   ranking);
+        metrics.recordSince(ScoreBotMetrics.FORMAT, formatStart);
 
         if (LOG.isDebugEnabled()) {
             LOG.debug("generated comments:\n" + Arrays.asList(commentBodies));
@@ -235,6 +356,46 @@ public class BotCommentHandler {
         return botComments;
     }
 
+    /**
+     * @return comment ids of the runs in each part of the existing table for the stage, in part order
+     */
+    private List<Set<String>> getPreviousParts(Stage stage) {
+        if (!runFormatter.isStableParts()) {
+            return Collections.emptyList();
+        }
+
+        List<Set<String>> parts = new ArrayList<>();
+        for (int partNum=0; ; partNum++) {
+            BotOutput comment = aggregateTableMap.get(new TablePartId(stage, partNum));
+            if (comment == null) {
+                return parts;
+            }
+            parts.add(comment.getRunCommentIds());
+        }
+    }
+
+    /**
+     * @return comment ids of the runs in a table part, empty if stable parts are off since they aren't needed
+     */
+    private Set<String> getRunCommentIds(String tableContent) {
+        if (!runFormatter.isStableParts()) {
+            return Collections.emptySet();
+        }
+
+        if (runLinkPattern == null) {
+            // every row links to the run's comment
+            String permalinkPrefix = FormatterUtils.getCommentPermalink(submission.getUrl(), "");
+            runLinkPattern = Pattern.compile("]\\(" + Pattern.quote(permalinkPrefix) + "(\\w+)\\)");
+        }
+
+        Set<String> commentIds = new HashSet<>();
+        Matcher m = runLinkPattern.matcher(tableContent);
+        while (m.find()) {
+            commentIds.add(m.group(1));
+        }
+        return commentIds;
+    }
+
     /**
      * @param partId            table part id
      * @param parentId          reply to parentId if no table for partId exists already
@@ -244,7 +405,7 @@ public class BotCommentHandler {
     @VisibleForTesting
     BotComment writeTablePart(TablePartId partId, String parentId, String commentBody) {
         String submissionUrl = submission.getUrl();
-        BotComment existing = aggregateTableMap.get(partId);
+        BotOutput existing = aggregateTableMap.get(partId);
 
         if (existing == null) {
             // no bot comment exists yet
@@ -252,37 +413,36 @@ public class BotCommentHandler {
             if (LOG.isDebugEnabled()) {
                 LOG.debug("no comment for " + partId + " yet in " + submissionUrl + ", creating new comment");
             }
-            Comment reply = redditClient.comment(parentId).reply(commentBody);
+            Comment reply = redditWriter.reply(parentId, commentBody);
             return new BotComment(reply.getId(), commentBody);
-        } else if (!contentEquals(existing.getContent(), commentBody)) {
+        } else if (!existing.hasContent(commentBody)) {
             // we've already written a comment for this part but it's outdated
 
             if (LOG.isDebugEnabled()) {
                 LOG.debug("comment for " + partId + " outdated in " + submissionUrl +
                                   ", updating comment " + existing.getCommentId());
             }
-            redditClient.comment(existing.getCommentId()).edit(commentBody);
+            redditWriter.edit(existing.getCommentId(), commentBody);
             return new BotComment(existing.getCommentId(), commentBody);
         } else {
             // no need to write anything, existing bot comment already has correct content
             if (LOG.isDebugEnabled()) {
                 LOG.debug("comment " + existing.getCommentId() + ", " + partId + " already up to date in " + submissionUrl);
             }
-            return existing;
+            return new BotComment(existing.getCommentId(), commentBody);
         }
     }
 
     private void removeEmptyAggregateTables(Map<TablePartId, BotComment> latestTableMap) {
         Set<TablePartId> emptyParts = Sets.difference(aggregateTableMap.keySet(), latestTableMap.keySet());
         for (TablePartId part : emptyParts) {
-            BotComment comment = aggregateTableMap.get(part);
-            String commentId = comment.getCommentId();
+            String commentId = aggregateTableMap.get(part).getCommentId();
 
             if (LOG.isDebugEnabled()) {
                 LOG.debug("removing empty aggregate table with comment id " + commentId);
             }
 
-            redditClient.comment(commentId).delete();
+            redditWriter.delete(commentId);
         }
     }
 
@@ -293,11 +453,15 @@ public class BotCommentHandler {
 
         LOG.debug("removing duplicate aggregate comment ids: " + dupeAggregateCommentIds);
         for (String commentId : dupeAggregateCommentIds) {
-            redditClient.comment(commentId).delete();
+            redditWriter.delete(commentId);
         }
     }
 
-    private void writeBotReplies(Map<String, String> authorMap, Map<String, InvalidRuns> invalidRunMap) {
+    /**
+     * @return user comment id -> bot reply, after writes and updates
+     */
+    private Map<String, BotOutput> writeBotReplies(Map<String, String> authorMap, Map<String, InvalidRuns> invalidRunMap) {
+        Map<String, BotOutput> latestReplyMap = new HashMap<>();
         Set<String> badCommentIds = new TreeSet<>();
 
         for (Map.Entry<String, InvalidRuns> entry : invalidRunMap.entrySet()) {
@@ -308,54 +472,79 @@ public class BotCommentHandler {
             Instant lastModDate = invalidRuns.getLastModifiedDate();
             List<UserRunDetails> urds = invalidRuns.getRuns();
             String botReplyBody = InvalidRunFormatter.formatInvalidRuns(lastModDate, urds);
-            createOrUpdateReply(userCommentId, botReplyBody, authorMap);
+            latestReplyMap.put(userCommentId, createOrUpdateReply(userCommentId, botReplyBody, authorMap));
         }
 
         // now update replies for people who fixed their previously bad comment
         Set<String> okCommentIds = Sets.difference(botReplyMap.keySet(), badCommentIds);
         for (String okCommentId : okCommentIds) {
             String botReplyBody = InvalidRunFormatter.getAllGoodMessage();
-            createOrUpdateReply(okCommentId, botReplyBody, authorMap);
+            latestReplyMap.put(okCommentId, createOrUpdateReply(okCommentId, botReplyBody, authorMap));
         }
+
+        return latestReplyMap;
     }
 
-    private void createOrUpdateReply(String userCommentId, String botReplyBody, Map<String, String> authorMap) {
+    /**
+     * @return reply that was written, updated, or already existing for the user comment
+     */
+    private BotOutput createOrUpdateReply(String userCommentId, String botReplyBody, Map<String, String> authorMap) {
         String submissionUrl = submission.getUrl();
+        long replyHash = BotOutput.hashContent(botReplyBody);
 
-        BotComment existing = botReplyMap.get(userCommentId);
+        BotOutput existing = botReplyMap.get(userCommentId);
         if (existing == null) {
             // no bot comment exists yet
 
             if (LOG.isDebugEnabled()) {
                 LOG.debug("no reply for " + userCommentId + " yet in " + submissionUrl + ", creating new reply");
             }
-            redditClient.comment(userCommentId).reply(botReplyBody);
-        } else if (!contentEquals(existing.getContent(), botReplyBody)) {
+            Comment reply = redditWriter.reply(userCommentId, botReplyBody);
+            return new BotOutput(reply.getId(), replyHash);
+        } else if (isMarkerAdded(existing, botReplyBody)) {
+            // written before replies had markers, the user has already seen everything else in it
+
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("reply for " + userCommentId + " missing marker in " + submissionUrl +
+                                  ", updating comment " + existing.getCommentId() + " without notifying");
+            }
+            redditWriter.edit(existing.getCommentId(), botReplyBody);
+            return new BotOutput(existing.getCommentId(), replyHash);
+        } else if (existing.getContentHash() != replyHash) {
             // we've already written a reply for these runs but it's outdated
 
             if (LOG.isDebugEnabled()) {
                 LOG.debug("reply for " + userCommentId + " outdated in " + submissionUrl +
                                   ", updating comment " + existing.getCommentId());
             }
-            redditClient.comment(existing.getCommentId()).edit(botReplyBody);
-
             String username = authorMap.get(userCommentId);
-            InboxReference inbox = redditClient.me().inbox();
-            String pmBody = InvalidRunFormatter.getPrivateMessageContent(submissionUrl, userCommentId, botReplyBody);
-            inbox.compose(username, "status update", pmBody);
+            redditWriter.editAndNotify(existing.getCommentId(), botReplyBody, username, submissionUrl, userCommentId);
+            return new BotOutput(existing.getCommentId(), replyHash);
         } else {
             // no need to write anything, existing bot comment already has correct content
             if (LOG.isDebugEnabled()) {
                 LOG.debug("reply for " + userCommentId + " already up to date in " + submissionUrl);
             }
+            return existing;
         }
     }
 
+    /**
+     * @return true if the existing reply has the same content as botReplyBody except for the reply marker
+     */
+    private static boolean isMarkerAdded(BotOutput existing, String botReplyBody) {
+        return botReplyBody.contains(CommentMarker.REPLY)
+                && existing.hasContent(botReplyBody.replace(CommentMarker.REPLY, ""));
+    }
+
     private static final Pattern EB_STAGE_PATTERN = Pattern.compile("^" + RunFormatter.EB_STAGE_HEADER_PREFIX + "(.+)\n");
 
     // main / expert / special stage pattern
     private static final Pattern MES_STAGE_PATTERN = Pattern.compile("^" + RunFormatter.MES_STAGE_HEADER_PREFIX + "(.+)\n");
 
+    /**
+     * Only needed for comments written before markers were added, see CommentMarker.
+     */
     static TablePartId getTablePartId(String comment) {
         // assumes the we've already checked that the configured bot user is the commenter
 
@@ -401,11 +590,13 @@ public class BotCommentHandler {
         return 0;
     }
 
+    /**
+     * Only needed for comments written before markers were added, see CommentMarker.
+     */
     @VisibleForTesting
     static boolean isSummaryComment(String comment) {
         // assumes the we've already checked that the configured bot user is the commenter
-        // need to remove trailing whitespace from header because either reddit or jraw is trimming the comment
-        if (comment.startsWith(SummaryFormatter.SUMMARY_HEADER.trim())) {
+        if (comment.startsWith(SummaryFormatter.SUMMARY_TITLE)) {
             return true;
         }
         return false;
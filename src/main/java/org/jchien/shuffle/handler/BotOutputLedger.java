@@ -0,0 +1,277 @@
+package org.jchien.shuffle.handler;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.jchien.shuffle.model.BotOutput;
+import org.jchien.shuffle.model.Stage;
+import org.jchien.shuffle.model.StageType;
+import org.jchien.shuffle.model.SubmissionOutput;
+import org.jchien.shuffle.model.TablePartId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers every comment the bot has written in each submission, so BotCommentHandler doesn't have to find and
+ * parse its own comments on every poll. The ledger is updated with every write, and edits are decided by comparing
+ * content hashes against it.
+ * <p>
+ * Comments can still change behind our back, e.g. a mod deletes a table or a write fails, so a submission's entry
+ * is only trusted for reconcileMillis. After that the bot comments are read back from reddit and the entry is
+ * rebuilt from what's actually there.
+ * <p>
+ * The ledger file is tab separated with one line per comment: an S line per submission with its summary comment,
+ * then T lines for table parts and R lines for replies to user comments.
+ *
+ * @author jchien
+ */
+public class BotOutputLedger {
+    private static final Logger LOG = LoggerFactory.getLogger(BotOutputLedger.class);
+
+    private static final String DELIM = "\t";
+
+    private static final String NULL_VALUE = "-";
+
+    private static final String SUBMISSION_TYPE = "S";
+
+    private static final String TABLE_TYPE = "T";
+
+    private static final String REPLY_TYPE = "R";
+
+    private final Map<String, SubmissionOutput> outputs = new ConcurrentHashMap<>();
+
+    private final Path ledgerFile;
+
+    private final long reconcileMillis;
+
+    /**
+     * @param ledgerFile        file to persist the ledger to, or null to only keep it in memory
+     * @param reconcileMillis   how long to trust an entry before reading the bot's comments back from reddit
+     */
+    public BotOutputLedger(@Nullable Path ledgerFile, long reconcileMillis) {
+        this.ledgerFile = ledgerFile;
+        this.reconcileMillis = reconcileMillis;
+
+        load();
+    }
+
+    /**
+     * @param submissionId  submission id
+     * @param now           current time
+     * @return              what the bot has written in the submission, or null if it's unknown or due to be
+     *                      reconciled
+     */
+    @Nullable
+    public SubmissionOutput getTrusted(String submissionId, Instant now) {
+        SubmissionOutput output = outputs.get(submissionId);
+        if (output == null) {
+            return null;
+        }
+
+        Instant reconcileDate = output.getReconciledDate().plusMillis(reconcileMillis);
+        return now.isBefore(reconcileDate) ? output : null;
+    }
+
+    public void put(SubmissionOutput output) {
+        outputs.put(output.getSubmissionId(), output);
+    }
+
+    /**
+     * Forget a submission so its bot comments are read back from reddit next time, e.g. after a write failed.
+     */
+    public void remove(String submissionId) {
+        outputs.remove(submissionId);
+    }
+
+    public int size() {
+        return outputs.size();
+    }
+
+    /**
+     * Drop entries for submissions we're no longer polling so the ledger file doesn't grow forever.
+     *
+     * @param oldestDate    remove entries that were last reconciled before this
+     */
+    public void evictBefore(Instant oldestDate) {
+        outputs.values().removeIf(output -> output.getReconciledDate().isBefore(oldestDate));
+    }
+
+    private void load() {
+        if (ledgerFile == null || !Files.exists(ledgerFile)) {
+            return;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(ledgerFile, StandardCharsets.UTF_8)) {
+            List<String> lines = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+            outputs.putAll(parseLines(lines));
+            LOG.info("loaded bot output for " + outputs.size() + " submissions from " + ledgerFile);
+        } catch (IOException e) {
+            // worst case we read every submission's bot comments back from reddit, same as if there was no ledger
+            LOG.warn("unable to read bot output ledger " + ledgerFile, e);
+        }
+    }
+
+    public void save() {
+        if (ledgerFile == null) {
+            return;
+        }
+
+        try {
+            Path parent = ledgerFile.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+
+            // write to a temp file first so a crash mid-write doesn't clobber the existing ledger
+            Path tmpFile = Files.createTempFile(parent, ledgerFile.getFileName().toString(), ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(tmpFile, StandardCharsets.UTF_8)) {
+                for (SubmissionOutput output : outputs.values()) {
+                    for (String line : formatLines(output)) {
+                        writer.write(line);
+                        writer.newLine();
+                    }
+                }
+            }
+            Files.move(tmpFile, ledgerFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOG.error("unable to write bot output ledger " + ledgerFile, e);
+        }
+    }
+
+    @VisibleForTesting
+    static List<String> formatLines(SubmissionOutput output) {
+        String submissionId = output.getSubmissionId();
+        BotOutput summary = output.getSummary();
+
+        List<String> lines = new ArrayList<>(1 + output.getTables().size() + output.getReplies().size());
+        lines.add(SUBMISSION_TYPE + DELIM +
+                          submissionId + DELIM +
+                          output.getReconciledDate().toEpochMilli() + DELIM +
+                          (summary != null ? summary.getCommentId() : NULL_VALUE) + DELIM +
+                          (summary != null ? Long.toHexString(summary.getContentHash()) : NULL_VALUE));
+
+        for (Map.Entry<TablePartId, BotOutput> entry : output.getTables().entrySet()) {
+            TablePartId partId = entry.getKey();
+            BotOutput table = entry.getValue();
+            String stageId = partId.getStage().getStageId();
+            Set<String> runCommentIds = table.getRunCommentIds();
+            lines.add(TABLE_TYPE + DELIM +
+                              submissionId + DELIM +
+                              partId.getStage().getStageType() + DELIM +
+                              (stageId != null ? stageId : NULL_VALUE) + DELIM +
+                              partId.getPart() + DELIM +
+                              table.getCommentId() + DELIM +
+                              Long.toHexString(table.getContentHash()) + DELIM +
+                              (runCommentIds.isEmpty() ? NULL_VALUE : String.join(",", runCommentIds)));
+        }
+
+        for (Map.Entry<String, BotOutput> entry : output.getReplies().entrySet()) {
+            BotOutput reply = entry.getValue();
+            lines.add(REPLY_TYPE + DELIM +
+                              submissionId + DELIM +
+                              entry.getKey() + DELIM +
+                              reply.getCommentId() + DELIM +
+                              Long.toHexString(reply.getContentHash()));
+        }
+
+        return lines;
+    }
+
+    @VisibleForTesting
+    static Map<String, SubmissionOutput> parseLines(List<String> lines) {
+        Map<String, Instant> reconciledDates = new HashMap<>();
+        Map<String, BotOutput> summaries = new HashMap<>();
+        Map<String, Map<TablePartId, BotOutput>> tables = new HashMap<>();
+        Map<String, Map<String, BotOutput>> replies = new HashMap<>();
+
+        // a submission missing some of its comments would get duplicate tables, so drop it entirely instead
+        Set<String> badSubmissionIds = new HashSet<>();
+
+        for (String line : lines) {
+            String[] fields = line.split(DELIM);
+            try {
+                switch (fields[0]) {
+                    case SUBMISSION_TYPE:
+                        checkFields(fields, 5);
+                        reconciledDates.put(fields[1], Instant.ofEpochMilli(Long.parseLong(fields[2])));
+                        if (!NULL_VALUE.equals(fields[3])) {
+                            summaries.put(fields[1], new BotOutput(fields[3], parseHash(fields[4])));
+                        }
+                        break;
+                    case TABLE_TYPE:
+                        checkFields(fields, 8);
+                        Stage stage = new Stage(StageType.valueOf(fields[2]),
+                                                NULL_VALUE.equals(fields[3]) ? null : fields[3]);
+                        TablePartId partId = new TablePartId(stage, Integer.parseInt(fields[4]));
+                        tables.computeIfAbsent(fields[1], k -> new HashMap<>())
+                                .put(partId, new BotOutput(fields[5], parseHash(fields[6]), parseIds(fields[7])));
+                        break;
+                    case REPLY_TYPE:
+                        checkFields(fields, 5);
+                        replies.computeIfAbsent(fields[1], k -> new HashMap<>())
+                                .put(fields[2], new BotOutput(fields[3], parseHash(fields[4])));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unknown line type " + fields[0]);
+                }
+            } catch (RuntimeException e) {
+                LOG.warn("skipping bad bot output ledger line: \"" + line + "\"", e);
+                if (fields.length > 1) {
+                    badSubmissionIds.add(fields[1]);
+                }
+            }
+        }
+
+        Map<String, SubmissionOutput> ret = new HashMap<>();
+        for (Map.Entry<String, Instant> entry : reconciledDates.entrySet()) {
+            String submissionId = entry.getKey();
+            if (badSubmissionIds.contains(submissionId)) {
+                continue;
+            }
+
+            ret.put(submissionId, new SubmissionOutput(submissionId,
+                                                       summaries.get(submissionId),
+                                                       tables.getOrDefault(submissionId, Collections.emptyMap()),
+                                                       replies.getOrDefault(submissionId, Collections.emptyMap()),
+                                                       entry.getValue()));
+        }
+        return ret;
+    }
+
+    private static void checkFields(String[] fields, int expected) {
+        if (fields.length != expected) {
+            throw new IllegalArgumentException("expected " + expected + " fields but found " + fields.length);
+        }
+    }
+
+    private static long parseHash(String s) {
+        return Long.parseUnsignedLong(s, 16);
+    }
+
+    private static Set<String> parseIds(String s) {
+        if (NULL_VALUE.equals(s)) {
+            return Collections.emptySet();
+        }
+        return new LinkedHashSet<>(Arrays.asList(s.split(",")));
+    }
+}
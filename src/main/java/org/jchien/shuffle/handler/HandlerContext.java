@@ -0,0 +1,134 @@
+package org.jchien.shuffle.handler;
+
+import com.google.common.util.concurrent.RateLimiter;
+import net.dean.jraw.RedditClient;
+import org.jchien.shuffle.formatter.RowCache;
+import org.jchien.shuffle.metrics.ScoreBotMetrics;
+
+import javax.annotation.Nullable;
+
+/**
+ * Everything the handlers need that outlives a single submission. One instance is shared by all submissions,
+ * so everything in here needs to be safe to use from multiple threads.
+ *
+ * @author jchien
+ */
+public class HandlerContext {
+    private final RedditClient redditClient;
+
+    private final ParsedCommentCache parsedCommentCache;
+
+    private final RateLimiter writeLimiter;
+
+    private final boolean streamComments;
+
+    private final boolean stableTableParts;
+
+    private final int tablePartSlack;
+
+    private final boolean fastRunParser;
+
+    private final RunRankingCache runRankingCache;
+
+    private final RowCache rowCache;
+
+    private final BotOutputLedger outputLedger;
+
+    private final MessageOutbox messageOutbox;
+
+    private final ScoreBotMetrics metrics;
+
+    public HandlerContext(RedditClient redditClient,
+                          ParsedCommentCache parsedCommentCache,
+                          @Nullable RateLimiter writeLimiter,
+                          boolean streamComments,
+                          boolean stableTableParts,
+                          int tablePartSlack,
+                          boolean fastRunParser,
+                          @Nullable RunRankingCache runRankingCache,
+                          @Nullable RowCache rowCache,
+                          @Nullable BotOutputLedger outputLedger,
+                          @Nullable MessageOutbox messageOutbox,
+                          ScoreBotMetrics metrics) {
+        this.redditClient = redditClient;
+        this.parsedCommentCache = parsedCommentCache;
+        this.writeLimiter = writeLimiter;
+        this.streamComments = streamComments;
+        this.stableTableParts = stableTableParts;
+        this.tablePartSlack = tablePartSlack;
+        this.fastRunParser = fastRunParser;
+        this.runRankingCache = runRankingCache;
+        this.rowCache = rowCache;
+        this.outputLedger = outputLedger;
+        this.messageOutbox = messageOutbox;
+        this.metrics = metrics;
+    }
+
+    public RedditClient getRedditClient() {
+        return redditClient;
+    }
+
+    public ParsedCommentCache getParsedCommentCache() {
+        return parsedCommentCache;
+    }
+
+    /**
+     * @return limiter shared by all bot writes, null if writes are unlimited
+     */
+    @Nullable
+    public RateLimiter getWriteLimiter() {
+        return writeLimiter;
+    }
+
+    public boolean isStreamComments() {
+        return streamComments;
+    }
+
+    public boolean isStableTableParts() {
+        return stableTableParts;
+    }
+
+    public int getTablePartSlack() {
+        return tablePartSlack;
+    }
+
+    public boolean isFastRunParser() {
+        return fastRunParser;
+    }
+
+    /**
+     * @return table orderings kept between polls, null if tables are sorted from scratch
+     */
+    @Nullable
+    public RunRankingCache getRunRankingCache() {
+        return runRankingCache;
+    }
+
+    /**
+     * @return table rows rendered by earlier polls, null if every row is rendered every time
+     */
+    @Nullable
+    public RowCache getRowCache() {
+        return rowCache;
+    }
+
+    /**
+     * @return record of the bot's own comments, null if they're read back from reddit on every poll
+     */
+    @Nullable
+    public BotOutputLedger getOutputLedger() {
+        return outputLedger;
+    }
+
+    /**
+     * @return outbox for coalescing notifications, null if they're sent along with the submission's other writes
+     */
+    @Nullable
+    public MessageOutbox getMessageOutbox() {
+        return messageOutbox;
+    }
+
+    public ScoreBotMetrics getMetrics() {
+        return metrics;
+    }
+}
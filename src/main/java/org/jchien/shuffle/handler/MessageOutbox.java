@@ -0,0 +1,300 @@
+package org.jchien.shuffle.handler;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.dean.jraw.RedditClient;
+import org.jchien.shuffle.formatter.InvalidRunFormatter;
+import org.jchien.shuffle.metrics.ScoreBotMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends the private messages telling people their bot reply changed, off the submission threads.
+ * <p>
+ * The first notification for a user opens a window of coalesceMillis. Everything else for that user during the
+ * window is added to the same digest, and if the same comment changes again only its latest reply is kept. When the
+ * window closes the digest goes out from a background thread, and failed sends are retried with backoff up to
+ * maxAttempts times. A digest that would be longer than reddit allows is split across as many messages as it takes.
+ * <p>
+ * Sends wait on the same rate limiter as every other write, they just don't hold up table updates while they wait.
+ * On shutdown, whatever is still waiting for its window or a retry gets one more attempt, but only as many as the
+ * rate limiter allows within SHUTDOWN_FLUSH_MILLIS. The rest are logged as dropped.
+ *
+ * @author jchien
+ */
+public class MessageOutbox {
+    private static final Logger LOG = LoggerFactory.getLogger(MessageOutbox.class);
+
+    public static final String SUBJECT = "status update";
+
+    private static final String DIGEST_DELIM = "\n\n*****\n\n";
+
+    // reddit rejects messages over 10000 characters, leave some room like RunFormatter does for comments
+    @VisibleForTesting
+    static final int MAX_MESSAGE_LENGTH = 9900;
+
+    private static final String TRUNCATED = "\n\n...";
+
+    // doubled after each failed attempt
+    private static final long RETRY_DELAY_MILLIS = 30000;
+
+    // longest shutdown() waits on the rate limiter in total, so it can't hold up shutting down for minutes
+    private static final long SHUTDOWN_FLUSH_MILLIS = 10000;
+
+    private final RedditClient redditClient;
+
+    private final RateLimiter rateLimiter;
+
+    private final ScoreBotMetrics metrics;
+
+    private final long coalesceMillis;
+
+    private final int maxAttempts;
+
+    private final ScheduledExecutorService executor;
+
+    // username -> user comment id -> notification, for users whose window is still open
+    private final Map<String, Map<String, Notification>> pending = new HashMap<>();
+
+    // messages that failed and are waiting for their next attempt
+    private final Set<UnsentMessage> retries = new LinkedHashSet<>();
+
+    /**
+     * @param redditClient      reddit client
+     * @param rateLimiter       limiter shared by all writes, or null to send as fast as possible
+     * @param coalesceMillis    how long to collect notifications for a user before sending them
+     * @param maxAttempts       max times to try sending a message
+     * @param metrics           metrics
+     */
+    public MessageOutbox(RedditClient redditClient,
+                         @Nullable RateLimiter rateLimiter,
+                         long coalesceMillis,
+                         int maxAttempts,
+                         ScoreBotMetrics metrics) {
+        this.redditClient = redditClient;
+        this.rateLimiter = rateLimiter;
+        this.coalesceMillis = coalesceMillis;
+        this.maxAttempts = maxAttempts;
+        this.metrics = metrics;
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("message-outbox-%d")
+                .setDaemon(true)
+                .build());
+    }
+
+    /**
+     * Queue a notification that the bot's reply to a user comment changed.
+     *
+     * @param username      user to message
+     * @param submissionUrl url of the submission the comment is in
+     * @param userCommentId id of the user's comment
+     * @param replyBody     latest content of the bot's reply
+     */
+    public synchronized void add(String username, String submissionUrl, String userCommentId, String replyBody) {
+        Map<String, Notification> userPending = pending.get(username);
+        if (userPending == null) {
+            userPending = new LinkedHashMap<>();
+            pending.put(username, userPending);
+            executor.schedule(() -> deliver(username), coalesceMillis, TimeUnit.MILLISECONDS);
+        }
+        userPending.put(userCommentId, new Notification(submissionUrl, userCommentId, replyBody));
+    }
+
+    /**
+     * @return number of users with messages waiting to be sent
+     */
+    public synchronized int getPendingUsers() {
+        return pending.size();
+    }
+
+    /**
+     * Stop the background thread and make one last attempt at anything that hasn't been sent yet, including
+     * messages waiting to be retried. Gives up on whatever the rate limiter won't allow within
+     * SHUTDOWN_FLUSH_MILLIS.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+
+        List<UnsentMessage> unsent = new ArrayList<>();
+        synchronized (this) {
+            for (Map.Entry<String, Map<String, Notification>> entry : pending.entrySet()) {
+                for (String digest : formatDigests(entry.getValue().values())) {
+                    unsent.add(new UnsentMessage(entry.getKey(), digest));
+                }
+            }
+            pending.clear();
+
+            unsent.addAll(retries);
+            retries.clear();
+        }
+
+        long deadline = System.currentTimeMillis() + SHUTDOWN_FLUSH_MILLIS;
+        int sent = 0;
+        int dropped = 0;
+        for (UnsentMessage message : unsent) {
+            if (rateLimiter != null) {
+                long remaining = Math.max(deadline - System.currentTimeMillis(), 0);
+                if (!rateLimiter.tryAcquire(remaining, TimeUnit.MILLISECONDS)) {
+                    LOG.warn("dropping message to " + message.username + ", out of time to send it before shutdown");
+                    dropped++;
+                    continue;
+                }
+            }
+            if (compose(message.username, message.body)) {
+                sent++;
+            }
+        }
+
+        if (!unsent.isEmpty()) {
+            LOG.info("sent " + sent + " of " + unsent.size() + " unsent messages on shutdown, dropped: " + dropped);
+        }
+    }
+
+    /**
+     * @return number of messages waiting to be retried
+     */
+    @VisibleForTesting
+    synchronized int getPendingRetries() {
+        return retries.size();
+    }
+
+    @VisibleForTesting
+    void deliver(String username) {
+        Collection<Notification> notifications = takePending(username);
+        if (notifications != null) {
+            // each part is retried on its own so one failure doesn't resend the parts that made it
+            for (String digest : formatDigests(notifications)) {
+                sendWithRetry(username, digest, 1);
+            }
+        }
+    }
+
+    private synchronized Collection<Notification> takePending(String username) {
+        Map<String, Notification> userPending = pending.remove(username);
+        return userPending != null ? userPending.values() : null;
+    }
+
+    private void sendWithRetry(String username, String body, int attempt) {
+        if (send(username, body)) {
+            return;
+        }
+
+        if (attempt >= maxAttempts) {
+            LOG.error("giving up on message to " + username + " after " + attempt + " attempts");
+            return;
+        }
+
+        UnsentMessage retry = new UnsentMessage(username, body);
+        synchronized (this) {
+            if (executor.isShutdown()) {
+                // too late to schedule it, and shutdown() has already taken the other retries
+                LOG.error("giving up on message to " + username + " after " + attempt + " attempts, shutting down");
+                return;
+            }
+            retries.add(retry);
+        }
+
+        long delayMillis = RETRY_DELAY_MILLIS << (attempt - 1);
+        executor.schedule(() -> {
+            if (removeRetry(retry)) {
+                sendWithRetry(username, body, attempt + 1);
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // returns false if shutdown() already took the retry
+    private synchronized boolean removeRetry(UnsentMessage retry) {
+        return retries.remove(retry);
+    }
+
+    // returns true if the message was sent
+    private boolean send(String username, String body) {
+        if (rateLimiter != null) {
+            rateLimiter.acquire();
+        }
+        return compose(username, body);
+    }
+
+    // returns true if the message was sent
+    private boolean compose(String username, String body) {
+        metrics.increment(ScoreBotMetrics.REDDIT_COMPOSE);
+        try {
+            redditClient.me().inbox().compose(username, SUBJECT, body);
+            return true;
+        } catch (Exception e) {
+            metrics.increment(ScoreBotMetrics.WRITE_ERROR);
+            LOG.warn("failed to message " + username, e);
+            return false;
+        }
+    }
+
+    /**
+     * @return  messages to send, each no longer than MAX_MESSAGE_LENGTH
+     */
+    @VisibleForTesting
+    static List<String> formatDigests(Collection<Notification> notifications) {
+        List<String> digests = new ArrayList<>();
+        StringBuilder sb = new StringBuilder();
+        for (Notification n : notifications) {
+            String content = InvalidRunFormatter.getPrivateMessageContent(n.submissionUrl, n.userCommentId, n.replyBody);
+            if (content.length() > MAX_MESSAGE_LENGTH) {
+                // replies have their own length limit so this is unlikely, but it would fail every retry
+                content = content.substring(0, MAX_MESSAGE_LENGTH - TRUNCATED.length()) + TRUNCATED;
+            }
+
+            if (sb.length() > 0 && sb.length() + DIGEST_DELIM.length() + content.length() > MAX_MESSAGE_LENGTH) {
+                digests.add(sb.toString());
+                sb.setLength(0);
+            }
+            if (sb.length() > 0) {
+                sb.append(DIGEST_DELIM);
+            }
+            sb.append(content);
+        }
+        if (sb.length() > 0) {
+            digests.add(sb.toString());
+        }
+        return digests;
+    }
+
+    // compared by identity, the same message can legitimately be waiting twice
+    private static class UnsentMessage {
+        private final String username;
+
+        private final String body;
+
+        private UnsentMessage(String username, String body) {
+            this.username = username;
+            this.body = body;
+        }
+    }
+
+    @VisibleForTesting
+    static class Notification {
+        private final String submissionUrl;
+
+        private final String userCommentId;
+
+        private final String replyBody;
+
+        Notification(String submissionUrl, String userCommentId, String replyBody) {
+            this.submissionUrl = submissionUrl;
+            this.userCommentId = userCommentId;
+            this.replyBody = replyBody;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package org.jchien.shuffle.handler;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.jchien.shuffle.model.ParsedComment;
+
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * Remembers parse results between polls so comments that haven't changed don't need to be parsed again.
+ * Safe to share between SubmissionHandlers on different threads.
+ *
+ * @author jchien
+ */
+public class ParsedCommentCache {
+    private final Cache<String, Entry> cache;
+
+    public ParsedCommentCache(long maxSize) {
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .build();
+    }
+
+    /**
+     * @param commentId     comment id
+     * @param lastModDate   created or last edited time of the comment
+     * @param author        comment author
+     * @param commentBody   comment body
+     * @return              cached parse result, or null if the comment wasn't cached or changed since it was cached
+     */
+    public ParsedComment get(String commentId, Instant lastModDate, String author, String commentBody) {
+        Entry entry = cache.getIfPresent(commentId);
+        if (entry == null) {
+            return null;
+        }
+
+        // deleting a comment replaces the author and body without updating the edit time,
+        // so check those too rather than trusting lastModDate alone
+        if (!Objects.equals(entry.lastModDate, lastModDate)
+                || !Objects.equals(entry.author, author)
+                || entry.bodyLength != commentBody.length()
+                || entry.bodyHash != commentBody.hashCode()) {
+            return null;
+        }
+
+        return entry.parsedComment;
+    }
+
+    public void put(String commentId,
+                    Instant lastModDate,
+                    String author,
+                    String commentBody,
+                    ParsedComment parsedComment) {
+        cache.put(commentId, new Entry(lastModDate, author, commentBody, parsedComment));
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    private static class Entry {
+        private final Instant lastModDate;
+
+        private final String author;
+
+        private final int bodyLength;
+
+        private final int bodyHash;
+
+        private final ParsedComment parsedComment;
+
+        private Entry(Instant lastModDate, String author, String commentBody, ParsedComment parsedComment) {
+            this.lastModDate = lastModDate;
+            this.author = author;
+            this.bodyLength = commentBody.length();
+            this.bodyHash = commentBody.hashCode();
+            this.parsedComment = parsedComment;
+        }
+    }
+}
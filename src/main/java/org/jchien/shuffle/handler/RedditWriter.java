@@ -0,0 +1,277 @@
+package org.jchien.shuffle.handler;
+
+import com.google.common.util.concurrent.RateLimiter;
+import net.dean.jraw.RedditClient;
+import net.dean.jraw.models.Comment;
+import org.jchien.shuffle.formatter.InvalidRunFormatter;
+import org.jchien.shuffle.metrics.ScoreBotMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Funnels all of the bot's reddit mutations for a single submission through one place.
+ * <p>
+ * Replies are sent immediately because we need the new comment id to reply to it later (e.g. the next part of a
+ * table). Edits, deletes, and private messages don't return anything we need, so they're queued up and sent by
+ * flush(). Queuing lets us drop redundant writes, like editing a comment we're about to delete.
+ * <p>
+ * Every write waits on a rate limiter that's shared across submissions so we don't burst into reddit's limits.
+ * <p>
+ * Notifications about a changed reply wait for the reply's edit, and are dropped if the edit fails so we never tell
+ * someone about a change that didn't happen. If there's a MessageOutbox, they go to it instead of being sent by
+ * flush() so they can be coalesced and sent in the background.
+ *
+ * @author jchien
+ */
+public class RedditWriter {
+    private static final Logger LOG = LoggerFactory.getLogger(RedditWriter.class);
+
+    private final RedditClient redditClient;
+
+    private final RateLimiter rateLimiter;
+
+    private final ScoreBotMetrics metrics;
+
+    // null if notifications are sent by flush() like other writes
+    private final MessageOutbox messageOutbox;
+
+    // comment id -> latest body, insertion order keeps earlier table parts ahead of later ones
+    private final Map<String, String> pendingEdits = new LinkedHashMap<>();
+
+    private final Set<String> pendingDeletes = new LinkedHashSet<>();
+
+    private final Set<PrivateMessage> pendingMessages = new LinkedHashSet<>();
+
+    // edited comment id -> notification to send once the edit succeeds
+    private final Map<String, Notification> pendingNotifications = new LinkedHashMap<>();
+
+    // most writes queued at once since the last flush
+    private int maxQueueDepth = 0;
+
+    /**
+     * @param redditClient  reddit client
+     * @param rateLimiter   limiter shared by all writers, or null to write as fast as possible
+     * @param metrics       metrics
+     */
+    public RedditWriter(RedditClient redditClient, @Nullable RateLimiter rateLimiter, ScoreBotMetrics metrics) {
+        this(redditClient, rateLimiter, null, metrics);
+    }
+
+    /**
+     * @param redditClient  reddit client
+     * @param rateLimiter   limiter shared by all writers, or null to write as fast as possible
+     * @param messageOutbox outbox shared by all writers, or null to send notifications in flush()
+     * @param metrics       metrics
+     */
+    public RedditWriter(RedditClient redditClient,
+                        @Nullable RateLimiter rateLimiter,
+                        @Nullable MessageOutbox messageOutbox,
+                        ScoreBotMetrics metrics) {
+        this.redditClient = redditClient;
+        this.rateLimiter = rateLimiter;
+        this.messageOutbox = messageOutbox;
+        this.metrics = metrics;
+    }
+
+    public Comment replyToSubmission(String submissionId, String body) {
+        acquire();
+        metrics.increment(ScoreBotMetrics.REDDIT_REPLY);
+        return redditClient.submission(submissionId).reply(body);
+    }
+
+    public Comment reply(String parentId, String body) {
+        acquire();
+        metrics.increment(ScoreBotMetrics.REDDIT_REPLY);
+        return redditClient.comment(parentId).reply(body);
+    }
+
+    public void edit(String commentId, String body) {
+        if (pendingDeletes.contains(commentId)) {
+            return;
+        }
+        pendingEdits.put(commentId, body);
+        updateQueueDepth();
+    }
+
+    public void delete(String commentId) {
+        pendingEdits.remove(commentId);
+        pendingNotifications.remove(commentId);
+        pendingDeletes.add(commentId);
+        updateQueueDepth();
+    }
+
+    public void compose(String username, String subject, String body) {
+        pendingMessages.add(new PrivateMessage(username, subject, body));
+        updateQueueDepth();
+    }
+
+    /**
+     * Edit the bot's reply to a user comment, and let the user know it changed once the edit succeeds.
+     *
+     * @param replyCommentId    id of the bot's reply
+     * @param replyBody         latest content of the bot's reply
+     * @param username          user to message
+     * @param submissionUrl     url of the submission the comment is in
+     * @param userCommentId     id of the user's comment
+     */
+    public void editAndNotify(String replyCommentId,
+                              String replyBody,
+                              String username,
+                              String submissionUrl,
+                              String userCommentId) {
+        if (pendingDeletes.contains(replyCommentId)) {
+            return;
+        }
+        pendingEdits.put(replyCommentId, replyBody);
+        pendingNotifications.put(replyCommentId, new Notification(username, submissionUrl, userCommentId, replyBody));
+        updateQueueDepth();
+    }
+
+    public int getQueueDepth() {
+        return pendingEdits.size() + pendingDeletes.size() + pendingMessages.size();
+    }
+
+    /**
+     * Send all queued writes. A failed write is logged and doesn't stop the rest from being sent.
+     *
+     * @return number of writes that failed
+     */
+    public int flush() {
+        int queueDepth = getQueueDepth();
+        if (queueDepth == 0) {
+            return 0;
+        }
+
+        long start = System.currentTimeMillis();
+        int failed = 0;
+
+        for (Map.Entry<String, String> entry : pendingEdits.entrySet()) {
+            String commentId = entry.getKey();
+            String body = entry.getValue();
+            int editFailed = send(ScoreBotMetrics.REDDIT_EDIT, "edit " + commentId, () -> redditClient.comment(commentId).edit(body));
+
+            Notification notification = pendingNotifications.get(commentId);
+            if (notification != null && editFailed == 0) {
+                queueNotification(notification);
+            }
+            failed += editFailed;
+        }
+        pendingEdits.clear();
+        pendingNotifications.clear();
+
+        for (String commentId : pendingDeletes) {
+            failed += send(ScoreBotMetrics.REDDIT_DELETE, "delete " + commentId, () -> redditClient.comment(commentId).delete());
+        }
+        pendingDeletes.clear();
+
+        for (PrivateMessage pm : pendingMessages) {
+            failed += send(ScoreBotMetrics.REDDIT_COMPOSE,
+                           "message " + pm.username,
+                           () -> redditClient.me().inbox().compose(pm.username, pm.subject, pm.body));
+        }
+        pendingMessages.clear();
+
+        long elapsed = System.currentTimeMillis() - start;
+        metrics.recordMillis(ScoreBotMetrics.WRITE_DRAIN, elapsed);
+        metrics.recordGauge(ScoreBotMetrics.WRITE_QUEUE_DEPTH, maxQueueDepth);
+        LOG.debug("drained " + queueDepth + " writes in " + elapsed + " ms" +
+                          ", failed: " + failed +
+                          ", max queue depth: " + maxQueueDepth);
+
+        maxQueueDepth = 0;
+        return failed;
+    }
+
+    private void queueNotification(Notification n) {
+        if (messageOutbox != null) {
+            messageOutbox.add(n.username, n.submissionUrl, n.userCommentId, n.replyBody);
+            return;
+        }
+
+        String pmBody = InvalidRunFormatter.getPrivateMessageContent(n.submissionUrl, n.userCommentId, n.replyBody);
+        pendingMessages.add(new PrivateMessage(n.username, MessageOutbox.SUBJECT, pmBody));
+    }
+
+    // returns 1 if the write failed, 0 otherwise
+    private int send(String counter, String description, Runnable write) {
+        acquire();
+        metrics.increment(counter);
+        try {
+            write.run();
+            return 0;
+        } catch (Exception e) {
+            metrics.increment(ScoreBotMetrics.WRITE_ERROR);
+            LOG.error("failed to " + description, e);
+            return 1;
+        }
+    }
+
+    private void acquire() {
+        if (rateLimiter == null) {
+            return;
+        }
+
+        double waitSecs = rateLimiter.acquire();
+        if (waitSecs > 0 && LOG.isDebugEnabled()) {
+            LOG.debug("waited " + waitSecs + " seconds for write rate limiter");
+        }
+    }
+
+    private void updateQueueDepth() {
+        maxQueueDepth = Math.max(maxQueueDepth, getQueueDepth());
+    }
+
+    private static class PrivateMessage {
+        private final String username;
+
+        private final String subject;
+
+        private final String body;
+
+        private PrivateMessage(String username, String subject, String body) {
+            this.username = username;
+            this.subject = subject;
+            this.body = body;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            PrivateMessage that = (PrivateMessage) o;
+            return Objects.equals(username, that.username) &&
+                    Objects.equals(subject, that.subject) &&
+                    Objects.equals(body, that.body);
+        }
+
+        @Override
+        public int hashCode() {
+
+            return Objects.hash(username, subject, body);
+        }
+    }
+
+    private static class Notification {
+        private final String username;
+
+        private final String submissionUrl;
+
+        private final String userCommentId;
+
+        private final String replyBody;
+
+        private Notification(String username, String submissionUrl, String userCommentId, String replyBody) {
+            this.username = username;
+            this.submissionUrl = submissionUrl;
+            this.userCommentId = userCommentId;
+            this.replyBody = replyBody;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package org.jchien.shuffle.handler;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.jchien.shuffle.formatter.RunRanking;
+import org.jchien.shuffle.model.Stage;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Keeps each stage's RunRanking between polls, so stages that only gained or lost a few runs don't get sorted from
+ * scratch every time. Safe to share between SubmissionHandlers on different threads.
+ *
+ * @author jchien
+ */
+public class RunRankingCache {
+    // submission id -> stage -> ranking
+    private final Cache<String, Map<Stage, RunRanking>> cache;
+
+    /**
+     * @param maxSubmissions    max number of submissions to keep rankings for
+     */
+    public RunRankingCache(long maxSubmissions) {
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maxSubmissions)
+                .build();
+    }
+
+    /**
+     * @return ranking for the stage, a new empty one if there wasn't one cached
+     */
+    public RunRanking get(String submissionId, Stage stage) {
+        try {
+            Map<Stage, RunRanking> stages = cache.get(submissionId, ConcurrentHashMap::new);
+            return stages.computeIfAbsent(stage, s -> new RunRanking(s.getStageType()));
+        } catch (ExecutionException e) {
+            // creating an empty map can't fail
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public long size() {
+        return cache.size();
+    }
+}
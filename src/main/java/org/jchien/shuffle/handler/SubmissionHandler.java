@@ -1,11 +1,14 @@
 package org.jchien.shuffle.handler;
 
+import com.google.common.annotations.VisibleForTesting;
 import net.dean.jraw.RedditClient;
 import net.dean.jraw.models.PublicContribution;
 import net.dean.jraw.models.Submission;
 import net.dean.jraw.tree.CommentNode;
+import net.dean.jraw.tree.ReplyCommentNode;
 import net.dean.jraw.tree.RootCommentNode;
 import org.jchien.shuffle.formatter.FormatterUtils;
+import org.jchien.shuffle.metrics.ScoreBotMetrics;
 import org.jchien.shuffle.model.InvalidRuns;
 import org.jchien.shuffle.model.ParsedComment;
 import org.jchien.shuffle.model.RunDetails;
@@ -15,13 +18,17 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.Instant;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.Deque;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.TreeMap;
 
 import static java.util.Comparator.*;
@@ -52,36 +59,64 @@ public class SubmissionHandler {
 
     private BotCommentHandler botCommentHandler;
 
-    public SubmissionHandler(RedditClient redditClient, Submission submission) {
-        this.redditClient = redditClient;
+    private final ParsedCommentCache parsedCommentCache;
+
+    private final boolean streamComments;
+
+    private final boolean fastRunParser;
+
+    private final ScoreBotMetrics metrics;
+
+    // newest created or edited time of any user comment
+    private Instant latestModifiedDate = null;
+
+    public SubmissionHandler(HandlerContext context, Submission submission) {
+        this.redditClient = context.getRedditClient();
         this.submission = submission;
-        this.botCommentHandler = new BotCommentHandler(redditClient, submission);
+        this.parsedCommentCache = context.getParsedCommentCache();
+        this.streamComments = context.isStreamComments();
+        this.fastRunParser = context.isFastRunParser();
+        this.metrics = context.getMetrics();
+        this.botCommentHandler = new BotCommentHandler(context, submission);
     }
 
     public void handleSubmission() {
+        long start = System.nanoTime();
+
         processComments(redditClient, submission);
 
         botCommentHandler.createOrUpdateBotComments(stageMap, authorMap, invalidRunMap);
+
+        metrics.recordSince(ScoreBotMetrics.SUBMISSION, start);
+    }
+
+    /**
+     * @return newest created or edited time of any user comment, null if there were none
+     */
+    public Instant getLatestModifiedDate() {
+        return latestModifiedDate;
+    }
+
+    /**
+     * @return hash of the aggregate tables as of the end of handleSubmission()
+     */
+    public long getTableHash() {
+        return botCommentHandler.getTableHash();
     }
 
     private void processComments(RedditClient redditClient, Submission submission) {
         final String botUser = redditClient.me().getUsername();
 
         if (submission.getCommentCount() > 0) {
+            long fetchStart = System.nanoTime();
             RootCommentNode root = redditClient.submission(submission.getId()).comments();
-            root.loadFully(redditClient);
-
-            int cnt = 0;
-            Iterator<CommentNode<PublicContribution<?>>> it = root.walkTree().iterator();
-            while (it.hasNext()) {
-                CommentNode<PublicContribution<?>> node = it.next();
-                try {
-                    processComment(node, botUser);
-                } catch (Throwable t) {
-                    String commentUrl = FormatterUtils.getCommentPermalink(submission.getUrl(), node.getSubject().getId());
-                    LOG.error("unable to process comment " + commentUrl, t);
-                }
-                cnt++;
+            long fetchNanos = System.nanoTime() - fetchStart;
+
+            final int cnt;
+            if (streamComments) {
+                cnt = processCommentsStreaming(root, botUser, fetchNanos);
+            } else {
+                cnt = processCommentsFully(root, botUser, fetchNanos);
             }
 
             LOG.debug(cnt + " comments, " + submission.getCommentCount() + " comments according to submission");
@@ -89,7 +124,103 @@ public class SubmissionHandler {
         }
     }
 
-    private void processComment(CommentNode<PublicContribution<?>> commentNode, String botUser) {
+    /**
+     * Load every comment before processing any of them.
+     *
+     * @param fetchNanos    time already spent fetching the submission's comments
+     */
+    private int processCommentsFully(RootCommentNode root, String botUser, long fetchNanos) {
+        long fetchStart = System.nanoTime();
+        root.loadFully(redditClient);
+        recordFetch(fetchNanos + System.nanoTime() - fetchStart);
+
+        int cnt = 0;
+        Iterator<CommentNode<PublicContribution<?>>> it = root.walkTree().iterator();
+        while (it.hasNext()) {
+            CommentNode<PublicContribution<?>> node = it.next();
+            processCommentSafely(node, botUser);
+            cnt++;
+        }
+        return cnt;
+    }
+
+    /**
+     * Process comments as they're loaded instead of waiting for the whole tree. Nodes are visited breadth first and
+     * "load more comments" stubs are expanded one batch at a time after the comments before them are processed.
+     * Once a node's replies are queued we unlink them from the node, so visited comments can be garbage collected
+     * and we only hold onto comments that have been loaded but not visited yet.
+     * <p>
+     * A loaded batch can include comments nested under other comments in the same batch, which are also reachable
+     * from their parent's replies, so comments are only processed the first time they're reached.
+     *
+     * @param fetchNanos    time already spent fetching the submission's comments
+     * @return              number of comments processed
+     */
+    @VisibleForTesting
+    int processCommentsStreaming(RootCommentNode root, String botUser, long fetchNanos) {
+        int cnt = 0;
+
+        Deque<CommentNode<?>> pending = new ArrayDeque<>();
+        pending.add(root);
+
+        // ids of comments that have been processed
+        Set<String> visited = new HashSet<>();
+
+        while (!pending.isEmpty()) {
+            CommentNode<?> node = pending.poll();
+            if (!visited.add(node.getSubject().getId())) {
+                continue;
+            }
+
+            processCommentSafely(node, botUser);
+            cnt++;
+
+            pending.addAll(node.getReplies());
+
+            while (node.hasMoreChildren()) {
+                long fetchStart = System.nanoTime();
+                List<ReplyCommentNode> loaded = node.replaceMore(redditClient);
+                fetchNanos += System.nanoTime() - fetchStart;
+
+                if (loaded.isEmpty()) {
+                    // reddit didn't give us anything new, don't spin on this node
+                    break;
+                }
+                pending.addAll(loaded);
+            }
+
+            releaseReplies(node);
+        }
+
+        // fetches are interleaved with processing, so only the time spent waiting on reddit is counted
+        recordFetch(fetchNanos);
+        return cnt;
+    }
+
+    // one sample per submission, covering every request made for its comments
+    private void recordFetch(long fetchNanos) {
+        metrics.recordMillis(ScoreBotMetrics.COMMENT_FETCH, fetchNanos / 1e6);
+    }
+
+    private static void releaseReplies(CommentNode<?> node) {
+        try {
+            node.getReplies().clear();
+        } catch (UnsupportedOperationException e) {
+            // not the end of the world, we just won't free up memory until we're done with the submission
+        }
+    }
+
+    private void processCommentSafely(CommentNode<?> node, String botUser) {
+        try {
+            processComment(node, botUser);
+        } catch (Throwable t) {
+            metrics.increment(ScoreBotMetrics.COMMENT_ERROR);
+            String commentUrl = FormatterUtils.getCommentPermalink(submission.getUrl(), node.getSubject().getId());
+            LOG.error("unable to process comment " + commentUrl, t);
+        }
+    }
+
+    private void processComment(CommentNode<?> commentNode, String botUser) {
         PublicContribution<?> comment = commentNode.getSubject();
 
         if (Objects.equals(comment.getId(), submission.getId())) {
@@ -121,10 +252,13 @@ public class SubmissionHandler {
     }
 
     private void processUserComment(PublicContribution<?> comment, String commentBody) {
-        UserCommentHandler userCommentHandler = new UserCommentHandler(comment, commentBody);
-        ParsedComment parsedComment = userCommentHandler.parseRuns();
-
         Instant lastModDate = getLastModifiedDate(comment.getCreated(), comment.getEdited());
+        ParsedComment parsedComment = parseRuns(comment, commentBody, lastModDate);
+
+        if (latestModifiedDate == null || lastModDate.isAfter(latestModifiedDate)) {
+            latestModifiedDate = lastModDate;
+        }
+
         for (UserRunDetails urd : parsedComment.getValidRuns()) {
             addStageRun(urd);
         }
@@ -143,6 +277,22 @@ public class SubmissionHandler {
         }
     }
 
+    private ParsedComment parseRuns(PublicContribution<?> comment, String commentBody, Instant lastModDate) {
+        String commentId = comment.getId();
+        String author = comment.getAuthor();
+
+        ParsedComment parsedComment = parsedCommentCache.get(commentId, lastModDate, author, commentBody);
+        if (parsedComment != null) {
+            return parsedComment;
+        }
+
+        UserCommentHandler userCommentHandler = new UserCommentHandler(comment, commentBody, fastRunParser, metrics);
+        parsedComment = userCommentHandler.parseRuns();
+
+        parsedCommentCache.put(commentId, lastModDate, author, commentBody, parsedComment);
+        return parsedComment;
+    }
+
     private Instant getLastModifiedDate(Date createTime, Date editTime) {
         if (editTime != null) {
             return editTime.toInstant();
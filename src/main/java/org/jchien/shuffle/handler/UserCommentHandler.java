@@ -1,7 +1,9 @@
 package org.jchien.shuffle.handler;
 
-import com.google.common.annotations.VisibleForTesting;
 import net.dean.jraw.models.PublicContribution;
+import org.jchien.shuffle.handler.BlockScanner.Block;
+import org.jchien.shuffle.handler.BlockScanner.BlockType;
+import org.jchien.shuffle.metrics.ScoreBotMetrics;
 import org.jchien.shuffle.parser.exception.FormatException;
 import org.jchien.shuffle.model.ParsedComment;
 import org.jchien.shuffle.model.Pokemon;
@@ -10,23 +12,22 @@ import org.jchien.shuffle.model.RunDetailsBuilder;
 import org.jchien.shuffle.model.StageType;
 import org.jchien.shuffle.model.UserRunDetails;
 import org.jchien.shuffle.parser.Canonicalizer;
+import org.jchien.shuffle.parser.FastRunParser;
 import org.jchien.shuffle.parser.ParseException;
 import org.jchien.shuffle.parser.ParseExceptionUtils;
 import org.jchien.shuffle.parser.RawRunDetails;
 import org.jchien.shuffle.parser.RunParser;
+import org.jchien.shuffle.parser.RunParserPool;
 import org.jchien.shuffle.parser.TokenMgrError;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Supplier;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 /**
@@ -39,13 +40,48 @@ public class UserCommentHandler {
 
     private Canonicalizer canonicalizer = new Canonicalizer();
 
-    private final PublicContribution<?> comment;
+    private final String author;
+
+    private final String commentId;
 
     private final String commentBody;
 
+    private final boolean fastRunParser;
+
+    private final ScoreBotMetrics metrics;
+
     public UserCommentHandler(PublicContribution<?> comment, String commentBody) {
-        this.comment = comment;
+        this(comment, commentBody, ScoreBotMetrics.NOOP);
+    }
+
+    public UserCommentHandler(PublicContribution<?> comment, String commentBody, ScoreBotMetrics metrics) {
+        this(comment, commentBody, false, metrics);
+    }
+
+    public UserCommentHandler(PublicContribution<?> comment,
+                              String commentBody,
+                              boolean fastRunParser,
+                              ScoreBotMetrics metrics) {
+        this(comment.getAuthor(), comment.getId(), commentBody, fastRunParser, metrics);
+    }
+
+    public UserCommentHandler(String author, String commentId, String commentBody, ScoreBotMetrics metrics) {
+        this(author, commentId, commentBody, false, metrics);
+    }
+
+    /**
+     * @param fastRunParser try FastRunParser on each run block before falling back to RunParser
+     */
+    public UserCommentHandler(String author,
+                              String commentId,
+                              String commentBody,
+                              boolean fastRunParser,
+                              ScoreBotMetrics metrics) {
+        this.author = author;
+        this.commentId = commentId;
         this.commentBody = commentBody;
+        this.fastRunParser = fastRunParser;
+        this.metrics = metrics;
     }
 
     private interface BlockConsumer {
@@ -53,20 +89,22 @@ public class UserCommentHandler {
     }
 
     public ParsedComment parseRuns() {
+        List<Block> blocks = BlockScanner.scan(commentBody);
+
         Throwable rosterThrowable = null;
         Map<String, Pokemon> roster;
         try {
-            roster = getRoster(commentBody);
+            roster = getRoster(blocks);
         } catch (Throwable t) {
             roster = new LinkedHashMap<>();
             rosterThrowable = t;
         }
 
-        List<RunDetails> runs = getRunDetails(commentBody, roster);
+        List<RunDetails> runs = getRunDetails(blocks, roster);
 
-        List<UserRunDetails> validRuns = getValidRuns(runs, comment.getAuthor(), comment.getId());
+        List<UserRunDetails> validRuns = getValidRuns(runs, author, commentId);
 
-        List<UserRunDetails> invalidRuns = getInvalidRuns(runs, comment.getAuthor(), comment.getId(), rosterThrowable);
+        List<UserRunDetails> invalidRuns = getInvalidRuns(runs, author, commentId, rosterThrowable);
 
         return new ParsedComment(validRuns, invalidRuns);
     }
@@ -104,22 +142,24 @@ public class UserCommentHandler {
         return ret;
     }
 
-    // todo If processBlock throws an exception, it will silently treat the run or roster as being valid.
+    // todo If processBlocks throws an exception, it will silently treat the run or roster as being valid.
     // So a comment initially breaks this, the round up thread won't include the run and the user will not be notified.
     // If a comment that was already replied to by shufflescorebot is updated in a way that breaks this,
     // shufflescorebot will erroneously report that everything is good now.
     // It's a mess to update because the BlockConsumer wants to catch any exceptions,
-    // but if code outside the BlockConsumer throws an exception (e.g. the regex matching or offset calculations)
+    // but if code outside the BlockConsumer throws an exception (e.g. the block scanning)
     // then it would need to propogate that an exception occurred to the BlockConsumer which it doesn't right now.
     // Generally there aren't any logic errors that trigger this right now afaik, so I'm leaving it for later.
-    public void processBlock(String comment,
-                             Pattern pattern,
-                             BlockConsumer consumer,
-                             Supplier<FormatException> multiBlockExceptionSupplier) throws FormatException {
-        Matcher m = pattern.matcher(comment);
-
+    private void processBlocks(List<Block> blocks,
+                               BlockType type,
+                               BlockConsumer consumer,
+                               Supplier<FormatException> multiBlockExceptionSupplier) throws FormatException {
         boolean first = true;
-        while (m.find()) {
+        for (Block block : blocks) {
+            if (block.getType() != type) {
+                continue;
+            }
+
             if (multiBlockExceptionSupplier != null && !first) {
                 // throw an exception if you've defined multiple rosters
                 throw multiBlockExceptionSupplier.get();
@@ -127,105 +167,57 @@ public class UserCommentHandler {
                 first = false;
             }
 
-            int start = m.start();
-            int end = m.end();
             if (LOG.isDebugEnabled()) {
-                LOG.debug("found match at (" + start + ", " + end + ") for pattern " + pattern);
+                LOG.debug("found " + type + " block at line " + block.getLineOffset() +
+                                  ", column " + block.getColOffset());
             }
 
-            // hack to remove matched new lines from block to make getLineOffset work correctly
-            // I don't remember the reasoning, but I think I needed to include whitespace in regex patterns
-            start = getAdjustedStart(comment, start);
-
-            String block = comment.substring(start, end).trim();
-            int lineOffset = getLineOffset(comment, start);
-            int colOffset = getColumnOffset(comment, start);
-
-            consumer.accept(block, lineOffset, colOffset);
+            consumer.accept(block.getContent(), block.getLineOffset(), block.getColOffset());
         }
     }
 
-    private static int getAdjustedStart(String comment, int start) {
-        int codePoint = comment.codePointAt(start);
-
-        while (Character.isWhitespace(codePoint)) {
-            start += Character.charCount(codePoint);
-
-            if (start > comment.length()) {
-                throw new IllegalStateException("regex matched only whitespace");
-            }
-
-            codePoint = comment.codePointAt(start);
-        }
-        return start;
-    }
-
-    /**
-     * @param comment   full comment
-     * @param start     start of run details block
-     * @return          number of new lines before start
-     */
-    @VisibleForTesting
-    static int getLineOffset(String comment, int start) {
-        if (start == 0) {
-            return 0;
-        }
-
-        int cnt = 0;
-        int pos = comment.lastIndexOf('\n', start - 1);
-        while (pos >= 0) {
-            cnt++;
-            pos = comment.lastIndexOf('\n', pos - 1);
-        }
-        return cnt;
-    }
-
-    /**
-     * @param comment   full comment
-     * @param start     start of run details block
-     * @return          number of characters between start and the preceding new line
-     */
-    @VisibleForTesting
-    static int getColumnOffset(String comment, int start) {
-        if (start == 0) {
-            return 0;
-        }
-
-        int newLinePos = comment.lastIndexOf('\n', start - 1);
-        // lastIndexOf will return -1 if no new line is found, which is actually what we want,
-        // that is to treat beginning of the string as having followed a new line
-        return start - newLinePos - 1;
+    public List<RunDetails> getRunDetails(String comment, Map<String, Pokemon> roster) {
+        return getRunDetails(BlockScanner.scan(comment), roster);
     }
 
-    // word boundary matcher doesn't seem to trigger in front of an exclamation mark
-    static final Pattern PATTERN = Pattern.compile("(?:^|\\s)(?:!comp|!eb|!run)\\b.*?!end\\b",
-            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
-
-    public List<RunDetails> getRunDetails(String comment, Map<String, Pokemon> roster) {
+    private List<RunDetails> getRunDetails(List<Block> blocks, Map<String, Pokemon> roster) {
         final List<RunDetails> runs = new ArrayList<>();
 
         BlockConsumer runConsumer = (block, lineOffset, colOffset) -> {
-            RunParser p = new RunParser(new StringReader(block));
+            long start = System.nanoTime();
             Throwable throwable = null;
-            try {
-                p.start();
-            } catch (ParseException e) {
-                throwable = ParseExceptionUtils.getFormatException(block, lineOffset, colOffset, e);
-            } catch (FormatException e) {
-                throwable = e;
-            } catch (TokenMgrError e) {
-                // grammar definition should prevent this from happening, but catch it just in case
-                throwable = e;
+
+            RawRunDetails rawDetails = null;
+            if (fastRunParser) {
+                rawDetails = FastRunParser.parse(block);
+                if (rawDetails == null) {
+                    metrics.increment(ScoreBotMetrics.FAST_PARSE_FALLBACK);
+                }
+            }
+
+            if (rawDetails == null) {
+                RunParser p = RunParserPool.acquire(block);
+                try {
+                    p.start();
+                } catch (ParseException e) {
+                    throwable = ParseExceptionUtils.getFormatException(block, lineOffset, colOffset, e);
+                } catch (FormatException e) {
+                    throwable = e;
+                } catch (TokenMgrError e) {
+                    // grammar definition should prevent this from happening, but catch it just in case
+                    throwable = e;
+                }
+                rawDetails = p.getDetails();
             }
 
-            RawRunDetails rawDetails = p.getDetails();
             LOG.debug(rawDetails.toString());
             RunDetails details = canonicalizer.canonicalize(rawDetails, roster, throwable);
             runs.add(details);
+            metrics.recordSince(ScoreBotMetrics.PARSE_BLOCK, start);
         };
 
         try {
-            processBlock(comment, PATTERN, runConsumer, null);
+            processBlocks(blocks, BlockType.RUN, runConsumer, null);
         } catch (FormatException e) {
             // we handle exceptions rather than bubble them up
             throw new IllegalStateException("no exceptions should have been thrown");
@@ -234,12 +226,15 @@ public class UserCommentHandler {
         return runs;
     }
 
-    static final Pattern ROSTER_PATTERN = Pattern.compile("(?:^|\\s)(?:!roster)\\b.*?!end\\b", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
     public Map<String, Pokemon> getRoster(String comment) throws FormatException {
+        return getRoster(BlockScanner.scan(comment));
+    }
+
+    private Map<String, Pokemon> getRoster(List<Block> blocks) throws FormatException {
         final Map<String, Pokemon> roster = new LinkedHashMap<>();
 
         BlockConsumer rosterConsumer = (block, lineOffset, colOffset) -> {
-            RunParser p = new RunParser(new StringReader(block));
+            RunParser p = RunParserPool.acquire(block);
             try {
                 p.roster();
             } catch (ParseException e) {
@@ -264,7 +259,7 @@ public class UserCommentHandler {
         Supplier<FormatException> multiBlockExceptionSupplier = () ->
                 new FormatException("You can only define one `!roster` block per comment.");
 
-        processBlock(comment, ROSTER_PATTERN, rosterConsumer, multiBlockExceptionSupplier);
+        processBlocks(blocks, BlockType.ROSTER, rosterConsumer, multiBlockExceptionSupplier);
 
         return roster;
     }
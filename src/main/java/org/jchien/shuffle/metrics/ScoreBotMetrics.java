@@ -0,0 +1,99 @@
+package org.jchien.shuffle.metrics;
+
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.boot.actuate.metrics.GaugeService;
+
+import javax.annotation.Nullable;
+
+/**
+ * Thin wrapper around the actuator metric services so we keep all the metric names in one place.
+ * Timers are exported as "timer.shufflescorebot.*" gauges in milliseconds,
+ * counters as "counter.shufflescorebot.*", and other gauges as "gauge.shufflescorebot.*".
+ *
+ * @author jchien
+ */
+public class ScoreBotMetrics {
+    // for tests and anything else that doesn't care about metrics
+    public static final ScoreBotMetrics NOOP = new ScoreBotMetrics(null, null);
+
+    private static final String TIMER_PREFIX = "timer.shufflescorebot.";
+
+    private static final String COUNTER_PREFIX = "counter.shufflescorebot.";
+
+    private static final String GAUGE_PREFIX = "gauge.shufflescorebot.";
+
+    // timers
+    public static final String POLL = "poll.";
+    public static final String NEW_COMMENTS_POLL = "poll.newcomments.";
+    public static final String SUBMISSION = "submission";
+    public static final String COMMENT_FETCH = "comments.fetch";
+    public static final String PARSE_BLOCK = "parse.block";
+    public static final String FORMAT = "format";
+    public static final String WRITE_DRAIN = "writes.drain";
+
+    // counters
+    public static final String REDDIT_REPLY = "reddit.reply";
+    public static final String REDDIT_EDIT = "reddit.edit";
+    public static final String REDDIT_DELETE = "reddit.delete";
+    public static final String REDDIT_COMPOSE = "reddit.compose";
+    public static final String SUBMISSION_ERROR = "errors.submission";
+    public static final String COMMENT_ERROR = "errors.comment";
+    public static final String WRITE_ERROR = "errors.write";
+    public static final String FAST_PARSE_FALLBACK = "parse.fastfallback";
+
+    // gauges
+    public static final String ROW_CACHE_HIT_RATE = "format.rowcache.hitrate";
+    public static final String POLL_LAG = "poll.lag.";
+    public static final String WRITE_QUEUE_DEPTH = "writes.queue.depth";
+
+    private final CounterService counterService;
+
+    private final GaugeService gaugeService;
+
+    public ScoreBotMetrics(@Nullable CounterService counterService, @Nullable GaugeService gaugeService) {
+        this.counterService = counterService;
+        this.gaugeService = gaugeService;
+    }
+
+    public void increment(String counter) {
+        if (counterService != null) {
+            counterService.increment(COUNTER_PREFIX + counter);
+        }
+    }
+
+    public void recordGauge(String gauge, double value) {
+        if (gaugeService != null) {
+            gaugeService.submit(GAUGE_PREFIX + gauge, value);
+        }
+    }
+
+    public void recordMillis(String timer, double millis) {
+        if (gaugeService != null) {
+            gaugeService.submit(TIMER_PREFIX + timer, millis);
+        }
+    }
+
+    /**
+     * @param timer     timer name
+     * @param startNanos start time from System.nanoTime()
+     */
+    public void recordSince(String timer, long startNanos) {
+        recordMillis(timer, (System.nanoTime() - startNanos) / 1e6);
+    }
+
+    public void recordPoll(String subreddit, long millis) {
+        recordMillis(POLL + subreddit.toLowerCase(), millis);
+    }
+
+    public void recordNewCommentsPoll(String subreddit, long millis) {
+        recordMillis(NEW_COMMENTS_POLL + subreddit.toLowerCase(), millis);
+    }
+
+    /**
+     * @param millis    time between the starts of the subreddit's last two full polls beyond the configured poll
+     *                  delay, i.e. how much longer than intended its tables went without a refresh
+     */
+    public void recordPollLag(String subreddit, long millis) {
+        recordGauge(POLL_LAG + subreddit.toLowerCase(), millis);
+    }
+}
@@ -0,0 +1,63 @@
+package org.jchien.shuffle.model;
+
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * A comment the bot wrote, remembered by its id and a hash of its content instead of the content itself.
+ *
+ * @author jchien
+ */
+public class BotOutput {
+    private final String commentId;
+
+    private final long contentHash;
+
+    // comment ids of the runs in a table part, empty for other comments or if they aren't needed
+    private final Set<String> runCommentIds;
+
+    public BotOutput(String commentId, long contentHash) {
+        this(commentId, contentHash, Collections.emptySet());
+    }
+
+    public BotOutput(String commentId, long contentHash, Set<String> runCommentIds) {
+        this.commentId = commentId;
+        this.contentHash = contentHash;
+        this.runCommentIds = runCommentIds;
+    }
+
+    /**
+     * @param content   comment content
+     * @return          hash of the trimmed content, since reddit or jraw trims comments
+     */
+    public static long hashContent(String content) {
+        return Hashing.murmur3_128().hashString(content.trim(), StandardCharsets.UTF_8).asLong();
+    }
+
+    public String getCommentId() {
+        return commentId;
+    }
+
+    public long getContentHash() {
+        return contentHash;
+    }
+
+    public Set<String> getRunCommentIds() {
+        return runCommentIds;
+    }
+
+    public boolean hasContent(String content) {
+        return contentHash == hashContent(content);
+    }
+
+    @Override
+    public String toString() {
+        return "BotOutput{" +
+                "commentId='" + commentId + '\'' +
+                ", contentHash=" + Long.toHexString(contentHash) +
+                '}';
+    }
+}
@@ -3,8 +3,7 @@ package org.jchien.shuffle.model;
 import org.jchien.shuffle.parser.exception.ItemException;
 
 import java.util.EnumSet;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -36,14 +35,12 @@ public enum Item {
             ATTACK_POWER_UP,
             COMPLEXITY_MINUS_1);
 
-    private static final Map<String, Item> ALIAS_MAP = new HashMap<>();
-    static {
-        for (Item item : Item.values()) {
-            for (String alias : item.aliases) {
-                ALIAS_MAP.put(removeSpaces(alias.toLowerCase()), item);
-            }
-        }
-    }
+    private static final ItemAliasTrie ALIASES = new ItemAliasTrie(Item.values());
+
+    // suggest aliases within this many edits of an unknown item, fewer for short items so "+6" doesn't suggest "+5"
+    private static final int MAX_SUGGESTION_DISTANCE = 2;
+
+    private static final int MAX_SUGGESTIONS = 3;
 
     private final int cost;
 
@@ -66,18 +63,35 @@ public enum Item {
         return aliases[0];
     }
 
+    String[] getAliases() {
+        return aliases;
+    }
+
     public static Item get(String alias) throws ItemException {
         if (alias == null) {
             throw new ItemException("No null item. If you're reading this then there is a bug in Shuffle Score Bot.");
         }
-        Item ret = ALIAS_MAP.get(removeSpaces(alias.toLowerCase()));
+        Item ret = ALIASES.get(alias);
         if (ret == null) {
-            throw new ItemException("No such item: \"" + alias + "\".");
+            throw new ItemException("No such item: \"" + alias + "\"." + getSuggestionMessage(alias));
         }
         return ret;
     }
 
-    private static String removeSpaces(String s) {
-        return s.replaceAll("\\s+", "");
+    private static String getSuggestionMessage(String alias) {
+        int maxDistance = Math.min(MAX_SUGGESTION_DISTANCE, alias.trim().length() / 3);
+        List<String> suggestions = ALIASES.suggest(alias, maxDistance, MAX_SUGGESTIONS);
+        if (suggestions.isEmpty()) {
+            return "";
+        }
+
+        StringBuilder sb = new StringBuilder(" Did you mean ");
+        for (int i=0; i < suggestions.size(); i++) {
+            if (i > 0) {
+                sb.append(" or ");
+            }
+            sb.append('"').append(suggestions.get(i)).append('"');
+        }
+        return sb.append('?').toString();
     }
 }
@@ -0,0 +1,168 @@
+package org.jchien.shuffle.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Case and whitespace insensitive lookup from item aliases to items. Lookups walk the trie one character at a time,
+ * so resolving an alias doesn't need a lowercased, despaced copy of it.
+ * <p>
+ * Whitespace is the same set as \s in java regex, and case is folded one character at a time.
+ *
+ * @author jchien
+ */
+class ItemAliasTrie {
+    private final Node root = new Node();
+
+    ItemAliasTrie(Item[] items) {
+        for (Item item : items) {
+            for (String alias : item.getAliases()) {
+                add(alias, item);
+            }
+        }
+    }
+
+    private void add(String alias, Item item) {
+        Node node = root;
+        for (int i=0; i < alias.length(); i++) {
+            char c = alias.charAt(i);
+            if (!isSpace(c)) {
+                node = node.getOrAddChild(Character.toLowerCase(c));
+            }
+        }
+
+        if (node.item != null && node.item != item) {
+            throw new IllegalArgumentException("\"" + alias + "\" is an alias for both " + node.item + " and " + item);
+        }
+        node.item = item;
+        node.alias = alias;
+    }
+
+    /**
+     * @return item for the alias, null if there isn't one
+     */
+    Item get(String alias) {
+        Node node = root;
+        for (int i=0; i < alias.length() && node != null; i++) {
+            char c = alias.charAt(i);
+            if (!isSpace(c)) {
+                node = node.getChild(Character.toLowerCase(c));
+            }
+        }
+        return node != null ? node.item : null;
+    }
+
+    /**
+     * Finds the aliases closest to a string that isn't one, by edit distance after ignoring case and whitespace.
+     *
+     * @param alias         string that didn't match any alias
+     * @param maxDistance   max edit distance to suggest
+     * @param maxSuggestions max number of aliases to return
+     * @return              aliases as originally written, closest first
+     */
+    List<String> suggest(String alias, int maxDistance, int maxSuggestions) {
+        StringBuilder sb = new StringBuilder(alias.length());
+        for (int i=0; i < alias.length(); i++) {
+            char c = alias.charAt(i);
+            if (!isSpace(c)) {
+                sb.append(Character.toLowerCase(c));
+            }
+        }
+        String query = sb.toString();
+
+        // edit distance from the empty prefix to each prefix of the query
+        int[] firstRow = new int[query.length() + 1];
+        for (int i=0; i < firstRow.length; i++) {
+            firstRow[i] = i;
+        }
+
+        List<List<String>> byDistance = new ArrayList<>();
+        for (int d=0; d <= maxDistance; d++) {
+            byDistance.add(new ArrayList<>());
+        }
+        for (int i=0; i < root.labels.length; i++) {
+            collect(root.children[i], root.labels[i], query, firstRow, maxDistance, byDistance);
+        }
+
+        List<String> ret = new ArrayList<>();
+        for (List<String> aliases : byDistance) {
+            for (String s : aliases) {
+                if (ret.size() >= maxSuggestions) {
+                    return ret;
+                }
+                ret.add(s);
+            }
+        }
+        return ret;
+    }
+
+    // one row of the levenshtein table per trie node, shared by every alias under it
+    private static void collect(Node node,
+                                char label,
+                                String query,
+                                int[] prevRow,
+                                int maxDistance,
+                                List<List<String>> byDistance) {
+        int[] row = new int[prevRow.length];
+        row[0] = prevRow[0] + 1;
+        int rowMin = row[0];
+        for (int i=1; i < row.length; i++) {
+            int substitution = prevRow[i - 1] + (query.charAt(i - 1) == label ? 0 : 1);
+            row[i] = Math.min(substitution, Math.min(prevRow[i] + 1, row[i - 1] + 1));
+            rowMin = Math.min(rowMin, row[i]);
+        }
+
+        int distance = row[row.length - 1];
+        if (node.item != null && distance <= maxDistance) {
+            byDistance.get(distance).add(node.alias);
+        }
+
+        // every alias under this node is at least this far away
+        if (rowMin > maxDistance) {
+            return;
+        }
+
+        for (int i=0; i < node.labels.length; i++) {
+            collect(node.children[i], node.labels[i], query, row, maxDistance, byDistance);
+        }
+    }
+
+    // \s
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private static class Node {
+        // only a handful of children per node, so a linear scan beats hashing
+        private char[] labels = new char[0];
+
+        private Node[] children = new Node[0];
+
+        private Item item = null;
+
+        // alias as written in Item, for suggestions
+        private String alias = null;
+
+        private Node getChild(char label) {
+            for (int i=0; i < labels.length; i++) {
+                if (labels[i] == label) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        private Node getOrAddChild(char label) {
+            Node child = getChild(label);
+            if (child == null) {
+                child = new Node();
+                labels = Arrays.copyOf(labels, labels.length + 1);
+                labels[labels.length - 1] = label;
+                children = Arrays.copyOf(children, children.length + 1);
+                children[children.length - 1] = child;
+            }
+            return child;
+        }
+    }
+}
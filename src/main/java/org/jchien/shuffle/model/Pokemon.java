@@ -1,5 +1,7 @@
 package org.jchien.shuffle.model;
 
+import java.util.Objects;
+
 /**
  * @author jchien
  */
@@ -68,4 +70,23 @@ public class Pokemon {
                 ", perfect=" + perfect +
                 '}';
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Pokemon pokemon = (Pokemon) o;
+        return perfect == pokemon.perfect &&
+                Objects.equals(name, pokemon.name) &&
+                Objects.equals(level, pokemon.level) &&
+                Objects.equals(skillLevel, pokemon.skillLevel) &&
+                Objects.equals(skillName, pokemon.skillName) &&
+                Objects.equals(msus, pokemon.msus) &&
+                Objects.equals(maxMsus, pokemon.maxMsus);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, level, skillLevel, skillName, msus, maxMsus, perfect);
+    }
 }
@@ -19,6 +19,9 @@ public class RunDetails {
 
     private final List<Throwable> throwables;
 
+    // cached like String.hashCode(), nothing changes a RunDetails after it's built
+    private int hash;
+
     RunDetails(List<Pokemon> team,
                List<Item> items,
                String stage,
@@ -140,7 +143,11 @@ public class RunDetails {
 
     @Override
     public int hashCode() {
-
-        return Objects.hash(team, items, stage, score, movesLeft, timeLeft, stageType, moveType, notes, throwables);
+        int h = hash;
+        if (h == 0) {
+            h = Objects.hash(team, items, stage, score, movesLeft, timeLeft, stageType, moveType, notes, throwables);
+            hash = h;
+        }
+        return h;
     }
 }
@@ -0,0 +1,64 @@
+package org.jchien.shuffle.model;
+
+import java.time.Instant;
+
+/**
+ * What a submission looked like the last time we finished processing it.
+ *
+ * @author jchien
+ */
+public class SubmissionFingerprint {
+    private final String submissionId;
+
+    private final int commentCount;
+
+    // newest created or edited time of any user comment, null if there weren't any
+    private final Instant latestModifiedDate;
+
+    private final long tableHash;
+
+    private final Instant processedDate;
+
+    public SubmissionFingerprint(String submissionId,
+                                 int commentCount,
+                                 Instant latestModifiedDate,
+                                 long tableHash,
+                                 Instant processedDate) {
+        this.submissionId = submissionId;
+        this.commentCount = commentCount;
+        this.latestModifiedDate = latestModifiedDate;
+        this.tableHash = tableHash;
+        this.processedDate = processedDate;
+    }
+
+    public String getSubmissionId() {
+        return submissionId;
+    }
+
+    public int getCommentCount() {
+        return commentCount;
+    }
+
+    public Instant getLatestModifiedDate() {
+        return latestModifiedDate;
+    }
+
+    public long getTableHash() {
+        return tableHash;
+    }
+
+    public Instant getProcessedDate() {
+        return processedDate;
+    }
+
+    @Override
+    public String toString() {
+        return "SubmissionFingerprint{" +
+                "submissionId='" + submissionId + '\'' +
+                ", commentCount=" + commentCount +
+                ", latestModifiedDate=" + latestModifiedDate +
+                ", tableHash=" + tableHash +
+                ", processedDate=" + processedDate +
+                '}';
+    }
+}
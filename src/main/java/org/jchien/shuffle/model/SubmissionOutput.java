@@ -0,0 +1,60 @@
+package org.jchien.shuffle.model;
+
+import javax.annotation.Nullable;
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Everything the bot has written in a submission as of the end of the last time we processed it.
+ *
+ * @author jchien
+ */
+public class SubmissionOutput {
+    private final String submissionId;
+
+    private final BotOutput summary;
+
+    private final Map<TablePartId, BotOutput> tables;
+
+    // user comment id -> bot reply
+    private final Map<String, BotOutput> replies;
+
+    // last time the bot's comments were read back from reddit instead of taken from the ledger
+    private final Instant reconciledDate;
+
+    public SubmissionOutput(String submissionId,
+                            @Nullable BotOutput summary,
+                            Map<TablePartId, BotOutput> tables,
+                            Map<String, BotOutput> replies,
+                            Instant reconciledDate) {
+        this.submissionId = submissionId;
+        this.summary = summary;
+        this.tables = tables;
+        this.replies = replies;
+        this.reconciledDate = reconciledDate;
+    }
+
+    public String getSubmissionId() {
+        return submissionId;
+    }
+
+    /**
+     * @return summary comment, null if there isn't one yet
+     */
+    @Nullable
+    public BotOutput getSummary() {
+        return summary;
+    }
+
+    public Map<TablePartId, BotOutput> getTables() {
+        return tables;
+    }
+
+    public Map<String, BotOutput> getReplies() {
+        return replies;
+    }
+
+    public Instant getReconciledDate() {
+        return reconciledDate;
+    }
+}
@@ -16,8 +16,6 @@ import java.util.Comparator;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * Further parses and validates output coming from RunParser, but I didn't want to call it a parser to avoid confusion.
@@ -25,8 +23,22 @@ import java.util.regex.Pattern;
  * @author jchien
  */
 public class Canonicalizer {
-    private interface DetailConsumer {
-        void consume() throws FormatException;
+    // highest level any pokemon can reach, with every raise max level applied
+    static final int MAX_LEVEL = 30;
+
+    static final int MAX_SKILL_LEVEL = 5;
+
+    private final NameIndex pokemonNames;
+
+    private final NameIndex skillNames;
+
+    public Canonicalizer() {
+        this(ShuffleDex.getPokemonNames(), ShuffleDex.getSkillNames());
+    }
+
+    public Canonicalizer(NameIndex pokemonNames, NameIndex skillNames) {
+        this.pokemonNames = pokemonNames;
+        this.skillNames = skillNames;
     }
 
     public RunDetails canonicalize(RawRunDetails raw, Map<String, Pokemon> roster, Throwable preexistingThrowable) {
@@ -35,73 +47,135 @@ public class Canonicalizer {
             throwables.add(preexistingThrowable);
         }
 
-        final RunDetailsBuilder rdb = new RunDetailsBuilder();
+        RunDetailsBuilder rdb = new RunDetailsBuilder();
 
-        addDetail(throwables, () -> rdb.setTeam(getTeam(raw.getTeam(), roster)));
+        // each section is checked separately so one bad section doesn't hide problems in the others
+        try {
+            rdb.setTeam(getTeam(raw.getTeam(), roster));
+        } catch (Throwable t) {
+            throwables.add(t);
+        }
 
-        addDetail(throwables, () -> rdb.setItems(getItems(raw.getItems())));
+        try {
+            rdb.setItems(getItems(raw.getItems()));
+        } catch (Throwable t) {
+            throwables.add(t);
+        }
 
-        addDetail(throwables, () -> rdb.setStageType(raw.getStageType()));
+        rdb.setStageType(raw.getStageType());
 
         // set the stage with the raw value so if we raise an exception the error message still contains the stage name
         rdb.setStage(raw.getStage());
-        addDetail(throwables, () -> rdb.setStage(getStage(raw.getStage(), raw.getStageType())));
+        try {
+            rdb.setStage(getStage(raw.getStage(), raw.getStageType()));
+        } catch (Throwable t) {
+            throwables.add(t);
+        }
 
-        addDetail(throwables, () -> rdb.setScore(getScore(raw.getScore())));
+        try {
+            rdb.setScore(getScore(raw.getScore()));
+        } catch (Throwable t) {
+            throwables.add(t);
+        }
 
-        addDetail(throwables, () -> rdb.setMovesLeft(getMovesLeft(raw.getMovesLeft())));
+        try {
+            rdb.setMovesLeft(getMovesLeft(raw.getMovesLeft()));
+        } catch (Throwable t) {
+            throwables.add(t);
+        }
 
-        addDetail(throwables, () -> rdb.setTimeLeft(getTimeLeft(raw.getTimeLeft())));
+        try {
+            rdb.setTimeLeft(getTimeLeft(raw.getTimeLeft()));
+        } catch (Throwable t) {
+            throwables.add(t);
+        }
 
-        addDetail(throwables, () -> rdb.setMoveType(raw.getMoveType()));
+        rdb.setMoveType(raw.getMoveType());
 
-        addDetail(throwables, () -> rdb.setNotes(getNotes(raw.getNotes())));
+        rdb.setNotes(getNotes(raw.getNotes()));
 
         rdb.setThrowables(throwables);
 
         return rdb.build();
     }
 
-    private void addDetail(List<Throwable> throwables,
-                           DetailConsumer consumer) {
-        try {
-            consumer.consume();
-        } catch(Throwable t) {
-            throwables.add(t);
-        }
-    }
-
     private List<Pokemon> getTeam(List<RawPokemon> raw, Map<String, Pokemon> roster) throws FormatException {
         List<Pokemon> team = new ArrayList<>();
         for (RawPokemon rawPokemon : raw) {
-            String rosterKey = rawPokemon.getName().toLowerCase();
+            // rosters are keyed by canonical name, so "M-Ttar" in a run finds "Mega Tyranitar" in the roster
+            String name = getName(rawPokemon.getName());
+            String rosterKey = name.toLowerCase();
             if (roster != null && roster.containsKey(rosterKey)) {
                 team.add(roster.get(rosterKey));
             } else {
-                team.add(getPokemon(rawPokemon));
+                team.add(getPokemon(rawPokemon, name));
             }
         }
         return team;
     }
 
-    private Pokemon getPokemon(RawPokemon raw) throws FormatException {
-        return new Pokemon(
-                getName(raw.getName()),
+    private Pokemon getPokemon(RawPokemon raw, String name) throws FormatException {
+        Pokemon pokemon = new Pokemon(
+                name,
                 getLevel(raw.getLevel()),
                 getSkillLevel(raw.getSkill()),
-                getSkillName(raw.getSkill()),
+                getCanonicalSkillName(getSkillName(raw.getSkill())),
                 getMsuCount(raw.getMsus()),
                 getMaxMsus(raw.getMsus()),
                 raw.isPerfect());
+        validate(pokemon);
+        return pokemon;
     }
 
-    private String getName(String raw) {
-        // todo reference shuffledex data
-        return raw;
+    /**
+     * Checks the pokemon against limits that apply to every species. Per species limits like max level and max msus
+     * aren't checked since we don't have that data.
+     */
+    @VisibleForTesting
+    void validate(Pokemon pokemon) throws FormatException {
+        Integer level = pokemon.getLevel();
+        if (level != null && level > MAX_LEVEL) {
+            throw new FormatException("Level " + level + " is above the max level of " + MAX_LEVEL
+                    + " for " + pokemon.getName() + ".");
+        }
+
+        Integer msus = pokemon.getMsus();
+        Integer maxMsus = pokemon.getMaxMsus();
+        if (msus != null && maxMsus != null && msus > maxMsus) {
+            throw new FormatException(
+                    "More msus than max msus for " + pokemon.getName() + ": " + msus + "/" + maxMsus + ".");
+        }
     }
 
-    private static final Pattern LEVEL_PATTERN = Pattern.compile("(?:lvl?\\s*)?(\\d+)", Pattern.CASE_INSENSITIVE);
+    /**
+     * @return  canonical name if it's a known pokemon, otherwise the name as written
+     */
+    @VisibleForTesting
+    String getName(String raw) {
+        String name = pokemonNames.canonicalize(raw);
+        return name != null ? name : raw;
+    }
 
+    /**
+     * @return  canonical name if it's a known skill, otherwise the skill name as written
+     */
+    @VisibleForTesting
+    String getCanonicalSkillName(String skillName) {
+        if (skillName == null) {
+            return null;
+        }
+
+        String name = skillNames.canonicalize(skillName);
+        return name != null ? name : skillName;
+    }
+
+    // The field parsers below scan characters instead of using regexes, the regexes they replaced are kept in
+    // CanonicalizerRegexTest as the reference definition. Matching is ascii case insensitive and whitespace is the
+    // same set as \s, like the regexes.
+
+    /**
+     * Same as matching the whole string against (?:lvl?\s*)?(\d+).
+     */
     @VisibleForTesting
     Integer getLevel(String raw) throws FormatException {
         if (raw == null) {
@@ -109,87 +183,133 @@ public class Canonicalizer {
             return null;
         }
 
-        Matcher m = LEVEL_PATTERN.matcher(raw);
+        int len = raw.length();
+        int pos = 0;
+        if (matchesIgnoreCase(raw, 0, "lv")) {
+            pos = 2;
+            if (pos < len && (raw.charAt(pos) == 'l' || raw.charAt(pos) == 'L')) {
+                pos++;
+            }
+            pos = skipSpaces(raw, pos, len);
+        }
 
         // whole string must match
-        if (!m.matches()) {
+        if (pos == len || skipDigits(raw, pos, len) != len) {
             throw new FormatException("Unable to parse level: \"" + raw + "\".");
         }
 
-        // todo validate level, this is harder because it's on a per pokemon basis
-        return Integer.parseInt(m.group(1), 10);
+        // checked against MAX_LEVEL in validate()
+        return parseDigits(raw, pos, len);
     }
 
-    private static final Pattern SKILL_LEVEL_PATTERN = Pattern.compile("\\s*\\bsl\\s*(\\d+)\\b\\s*", Pattern.CASE_INSENSITIVE);
-
+    /**
+     * Finds skill levels like the regex \s*\bsl\s*(\d+)\b\s* would.
+     */
     @VisibleForTesting
     Integer getSkillLevel(String raw) throws FormatException {
         if (raw == null) {
             return null;
         }
 
-        Matcher m = SKILL_LEVEL_PATTERN.matcher(raw);
-
-        if (!m.find()) {
+        int len = raw.length();
+        int slStart = findSkillLevel(raw, 0);
+        if (slStart < 0) {
             // it might just be the skill name, so we'll just treat it as unspecified
             return null;
         }
 
-        String levelStr = m.group(1);
-        int start = m.start();
-        int end = m.end();
+        int digitStart = skipSpaces(raw, slStart + 2, len);
+        int digitEnd = skipDigits(raw, digitStart, len);
 
-        if (start != 0 && end != raw.length()) {
-            String matchedText = m.group(0).trim();
+        // the match includes the whitespace around it
+        int start = slStart;
+        while (start > 0 && isSpace(raw.charAt(start - 1))) {
+            start--;
+        }
+        int end = skipSpaces(raw, digitEnd, len);
+
+        if (start != 0 && end != len) {
+            String matchedText = raw.substring(slStart, digitEnd);
             throw new SkillException(
                     String.format("Skill level \"%s\" must be at the start or end of the skill section \"%s\".",
                             matchedText,
                             raw));
         }
 
-        if (m.find()) {
+        if (findSkillLevel(raw, end) >= 0) {
             throw new SkillException("Multiple skill levels defined: \"" + raw + "\".");
         }
 
-        int skillLevel = Integer.parseInt(levelStr, 10);
-        if (skillLevel < 1 || skillLevel > 5) {
+        int skillLevel = parseDigits(raw, digitStart, digitEnd);
+        if (skillLevel < 1 || skillLevel > MAX_SKILL_LEVEL) {
             throw new SkillException("Invalid skill level " + skillLevel + ": \"" + raw + "\".");
         }
         return skillLevel;
     }
 
-    private static final Pattern SKILL_NAME_PATTERN = Pattern.compile("(?:\\bsl\\s*\\d+\\b)?(.*?)(?:\\bsl\\s*\\d+\\b)?",
-            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    /**
+     * @return  start of the first "sl" at or after from that starts a word and is followed by optional whitespace
+     *          and a number that ends a word, -1 if there isn't one
+     */
+    private static int findSkillLevel(String raw, int from) {
+        int len = raw.length();
+        for (int i=from; i + 2 < len; i++) {
+            if (getSkillLevelEnd(raw, i, len) >= 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return end of the skill level starting at pos, -1 if there isn't one there
+     */
+    private static int getSkillLevelEnd(String raw, int pos, int len) {
+        if (!matchesIgnoreCase(raw, pos, "sl") || isWordBefore(raw, pos)) {
+            return -1;
+        }
 
+        int digitStart = skipSpaces(raw, pos + 2, len);
+        int digitEnd = skipDigits(raw, digitStart, len);
+        if (digitStart == digitEnd || isWordAt(raw, digitEnd)) {
+            return -1;
+        }
+        return digitEnd;
+    }
+
+    /**
+     * Same as the first group of (?:\bsl\s*\d+\b)?(.*?)(?:\bsl\s*\d+\b)? with whitespace normalized.
+     */
     @VisibleForTesting
     String getSkillName(String raw) {
         if (raw == null) {
             return null;
         }
 
-        Matcher m = SKILL_NAME_PATTERN.matcher(raw);
-        if (!m.matches()) {
-            // this is literally impossible with our regex, right?
-            return null;
-        }
+        int len = raw.length();
 
-        StringBuilder sb = new StringBuilder();
+        // skill level at the start
+        int nameStart = Math.max(getSkillLevelEnd(raw, 0, len), 0);
 
-        for (int i=1; i <= m.groupCount(); i++) {
-            if (m.group(i).length() == 0) {
-                continue;
+        // skill level at the end, it has to run all the way to the end
+        int nameEnd = len;
+        int digitStart = len;
+        while (digitStart > nameStart && isDigit(raw.charAt(digitStart - 1))) {
+            digitStart--;
+        }
+        if (digitStart < len) {
+            int slEnd = digitStart;
+            while (slEnd > nameStart && isSpace(raw.charAt(slEnd - 1))) {
+                slEnd--;
             }
-
-            if (sb.length() > 0) {
-                sb.append(' ');
+            int slStart = slEnd - 2;
+            if (slStart >= nameStart && getSkillLevelEnd(raw, slStart, len) == len) {
+                nameEnd = slStart;
             }
-            sb.append(m.group(i));
         }
 
-        // todo validate skill name
-        String ret = sb.toString()
-                .replaceAll("\\s+", " ")
-                .trim();
+        // see getCanonicalSkillName() for the spelling
+        String ret = normalizeWhitespace(raw, nameStart, nameEnd);
 
         if (ret.length() == 0) {
             return null;
@@ -198,7 +318,19 @@ public class Canonicalizer {
         return ret;
     }
 
-    private static final Pattern MSU_PATTERN = Pattern.compile("\\s*(\\d+)\\s*/\\s*(\\d+)\\s*");
+    /**
+     * Same as matching the whole string against two numbers separated by a slash, with optional whitespace around
+     * either number.
+     *
+     * @return  index of the slash, -1 if the whole string doesn't match
+     */
+    private static int findMsuSlash(String raw) {
+        int slash = raw.indexOf('/');
+        if (slash < 0 || !isSpacedNumber(raw, 0, slash) || !isSpacedNumber(raw, slash + 1, raw.length())) {
+            return -1;
+        }
+        return slash;
+    }
 
     @VisibleForTesting
     Integer getMsuCount(String raw) throws FormatException {
@@ -206,14 +338,14 @@ public class Canonicalizer {
             return null;
         }
 
-        Matcher m = MSU_PATTERN.matcher(raw);
-
-        if (!m.matches()) {
+        int slash = findMsuSlash(raw);
+        if (slash < 0) {
             throw new FormatException("Unable to parse msu count: \n" + raw +"\n");
         }
 
-        // todo validate
-        return Integer.parseInt(m.group(1));
+        // checked against the msu count in validate()
+        int start = skipSpaces(raw, 0, slash);
+        return parseDigits(raw, start, skipDigits(raw, start, slash));
     }
 
     @VisibleForTesting
@@ -222,14 +354,14 @@ public class Canonicalizer {
             return null;
         }
 
-        Matcher m = MSU_PATTERN.matcher(raw);
-
-        if (!m.matches()) {
+        int slash = findMsuSlash(raw);
+        if (slash < 0) {
             throw new FormatException("Unable to parse max msus: \n" + raw +"\n");
         }
 
-        // todo validate
-        return Integer.parseInt(m.group(2));
+        // checked against the msu count in validate()
+        int start = skipSpaces(raw, slash + 1, raw.length());
+        return parseDigits(raw, start, skipDigits(raw, start, raw.length()));
     }
 
     @VisibleForTesting
@@ -314,9 +446,141 @@ public class Canonicalizer {
             return null;
         }
 
-        // todo replace these calls with something more efficient
-        return raw.replaceAll("[\\t\\n\\r]", " ")
-                .replaceAll("\\s+", " ")
-                .trim();
+        return normalizeWhitespace(raw, 0, raw.length());
+    }
+
+    /**
+     * Same as raw.substring(start, end).replaceAll("\\s+", " ").trim(), but only builds a new string if something
+     * actually changes.
+     */
+    private static String normalizeWhitespace(String raw, int start, int end) {
+        // trim() drops everything up to and including a space, not just whitespace
+        while (start < end && raw.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && raw.charAt(end - 1) <= ' ') {
+            end--;
+        }
+
+        boolean normalized = true;
+        for (int i=start; i < end && normalized; i++) {
+            char c = raw.charAt(i);
+            if (isSpace(c) && (c != ' ' || isSpace(raw.charAt(i + 1)))) {
+                normalized = false;
+            }
+        }
+        if (normalized) {
+            return raw.substring(start, end);
+        }
+
+        StringBuilder sb = new StringBuilder(end - start);
+        for (int i=start; i < end; i++) {
+            char c = raw.charAt(i);
+            if (!isSpace(c)) {
+                sb.append(c);
+            } else if (!isSpace(raw.charAt(i - 1))) {
+                sb.append(' ');
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean matchesIgnoreCase(String s, int pos, String lowerCaseAscii) {
+        if (pos + lowerCaseAscii.length() > s.length()) {
+            return false;
+        }
+
+        for (int i=0; i < lowerCaseAscii.length(); i++) {
+            char c = s.charAt(pos + i);
+            char expected = lowerCaseAscii.charAt(i);
+            if (c != expected && c != expected - 'a' + 'A') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if start to end is a number with optional whitespace around it
+     */
+    private static boolean isSpacedNumber(String s, int start, int end) {
+        int digitStart = skipSpaces(s, start, end);
+        int digitEnd = skipDigits(s, digitStart, end);
+        return digitStart < digitEnd && skipSpaces(s, digitEnd, end) == end;
+    }
+
+    private static int skipSpaces(String s, int pos, int end) {
+        while (pos < end && isSpace(s.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static int skipDigits(String s, int pos, int end) {
+        while (pos < end && isDigit(s.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static int parseDigits(String s, int start, int end) {
+        if (end - start > 9) {
+            // might not fit in an int, let parseInt decide and throw the same exception it always has
+            return Integer.parseInt(s.substring(start, end), 10);
+        }
+
+        int value = 0;
+        for (int i=start; i < end; i++) {
+            value = value * 10 + (s.charAt(i) - '0');
+        }
+        return value;
+    }
+
+    // \d
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    // \s
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    // the word characters \b looks for, a non spacing mark counts if it follows a letter or digit
+    private static boolean isWordAt(String s, int pos) {
+        if (pos >= s.length()) {
+            return false;
+        }
+
+        int codePoint = s.codePointAt(pos);
+        if (codePoint == '_' || Character.isLetterOrDigit(codePoint)) {
+            return true;
+        }
+        return Character.getType(codePoint) == Character.NON_SPACING_MARK && hasBaseCharacter(s, pos);
+    }
+
+    private static boolean isWordBefore(String s, int pos) {
+        if (pos == 0) {
+            return false;
+        }
+
+        int codePoint = s.codePointBefore(pos);
+        if (codePoint == '_' || Character.isLetterOrDigit(codePoint)) {
+            return true;
+        }
+        return Character.getType(codePoint) == Character.NON_SPACING_MARK && hasBaseCharacter(s, pos - 1);
+    }
+
+    private static boolean hasBaseCharacter(String s, int pos) {
+        for (int i=pos; i >= 0; i--) {
+            int codePoint = s.codePointAt(i);
+            if (Character.isLetterOrDigit(codePoint)) {
+                return true;
+            }
+            if (Character.getType(codePoint) != Character.NON_SPACING_MARK) {
+                return false;
+            }
+        }
+        return false;
     }
 }
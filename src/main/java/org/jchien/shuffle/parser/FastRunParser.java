@@ -0,0 +1,484 @@
+package org.jchien.shuffle.parser;
+
+import org.jchien.shuffle.model.MoveType;
+import org.jchien.shuffle.model.StageType;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.jchien.shuffle.parser.RunParserConstants.*;
+
+/**
+ * Hand written parser for run blocks that gives the same RawRunDetails as RunParser.start(), without the generated
+ * token manager and char stream.
+ * <p>
+ * It follows the grammar in shufflerun.jj, but it only takes input it can be sure RunParser would accept: anything
+ * outside of ascii, anything that doesn't parse, and anything RunParser would throw a FormatException for returns
+ * null so the caller can fall back to RunParser and get the usual error messages.
+ * <p>
+ * Tokens are matched the same way as the generated token manager: longest match first, and keywords win ties with
+ * WORD. Characters that aren't part of any token are skipped, but notes keep them.
+ *
+ * @author jchien
+ */
+public class FastRunParser {
+    private static final String END = "!end";
+    private static final String COMP = "!comp";
+    private static final String RUN = "!run";
+    private static final String EB = "!eb";
+    private static final String ROSTER = "!roster";
+    private static final String TEAM = "team:";
+    private static final String SCORE = "score:";
+    private static final String ITEMS = "items:";
+    private static final String NOTES = "notes:";
+    private static final String MOVES = "moves";
+    private static final String TIME = "time";
+    private static final String LEFT = "left:";
+    private static final String PERFECT_KEYWORD = "perfect";
+
+    private final String input;
+
+    private final int length;
+
+    // current token
+    private int kind;
+    private int tokenStart;
+    private int tokenEnd;
+
+    private List<RawPokemon> team = new ArrayList<>();
+    private boolean teamSet = false;
+    private List<String> items = null;
+    private String score = null;
+    private String stage = null;
+    private String movesLeft = null;
+    private String timeLeft = null;
+    private StageType stageType = null;
+    private MoveType moveType = null;
+    private String notes = null;
+
+    private FastRunParser(String input) {
+        this.input = input;
+        this.length = input.length();
+    }
+
+    /**
+     * @param block run block from !comp, !eb, or !run through !end
+     * @return      details for the run, or null if RunParser needs to handle this block
+     */
+    @Nullable
+    public static RawRunDetails parse(String block) {
+        for (int i=0; i < block.length(); i++) {
+            if (block.charAt(i) >= 0x80) {
+                return null;
+            }
+        }
+
+        return new FastRunParser(block).run();
+    }
+
+    @Nullable
+    private RawRunDetails run() {
+        lex(0);
+
+        switch (kind) {
+            case RUN_HEADER:
+                next();
+                stage = multiWord();
+                stageType = StageType.NORMAL;
+                break;
+            case EB_HEADER:
+                next();
+                stage = multiWord();
+                stageType = StageType.ESCALATION_BATTLE;
+                break;
+            case COMP_HEADER:
+                next();
+                stageType = StageType.COMPETITION;
+                moveType = MoveType.MOVES;
+                break;
+            default:
+                return null;
+        }
+
+        if (stageType != StageType.COMPETITION && stage == null) {
+            return null;
+        }
+
+        int numSections = 0;
+        while (kind != END_HEADER) {
+            if (!section()) {
+                return null;
+            }
+            numSections++;
+        }
+
+        if (numSections == 0) {
+            return null;
+        }
+
+        next();
+        if (kind != EOF) {
+            return null;
+        }
+
+        return new RawRunDetails(team, items, score, stage, movesLeft, timeLeft, stageType, moveType, notes);
+    }
+
+    private boolean section() {
+        switch (kind) {
+            case TEAM_HEADER:
+                return team();
+            case SCORE_HEADER:
+                return score();
+            case ITEMS_HEADER:
+                return items();
+            case MOVES_LEFT_HEADER:
+                return movesLeft();
+            case TIME_LEFT_HEADER:
+                return timeLeft();
+            case NOTES_HEADER:
+                notes();
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    @Nullable
+    private String multiWord() {
+        if (kind != WORD) {
+            return null;
+        }
+
+        int firstStart = tokenStart;
+        int firstEnd = tokenEnd;
+        next();
+        if (kind != WORD) {
+            return input.substring(firstStart, firstEnd);
+        }
+
+        StringBuilder sb = new StringBuilder(tokenEnd - firstStart);
+        sb.append(input, firstStart, firstEnd);
+        while (kind == WORD) {
+            sb.append(' ').append(input, tokenStart, tokenEnd);
+            next();
+        }
+        return sb.toString();
+    }
+
+    private boolean team() {
+        if (teamSet) {
+            return false;
+        }
+        teamSet = true;
+
+        next();
+        if (!support()) {
+            return false;
+        }
+        while (kind == COMMA) {
+            next();
+            if (!support()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean support() {
+        String name = multiWord();
+        if (name == null) {
+            return false;
+        }
+
+        RawPokemonBuilder pkmnBuilder = new RawPokemonBuilder().setName(name);
+
+        if (kind == LPAREN) {
+            next();
+            if (kind == PERFECT) {
+                pkmnBuilder.setPerfect(true);
+                next();
+            } else {
+                if (!supportSection(pkmnBuilder)) {
+                    return false;
+                }
+                while (kind == COMMA) {
+                    next();
+                    if (!supportSection(pkmnBuilder)) {
+                        return false;
+                    }
+                }
+            }
+
+            if (kind != RPAREN) {
+                return false;
+            }
+            next();
+        }
+
+        team.add(pkmnBuilder.build());
+        return true;
+    }
+
+    private boolean supportSection(RawPokemonBuilder pkmnBuilder) {
+        if (kind == WORD && peek() == SLASH) {
+            // msus
+            String msuCount = image();
+            next();
+            next();
+            if (kind != WORD) {
+                return false;
+            }
+            pkmnBuilder.setMsus(msuCount + "/" + image());
+            next();
+            return true;
+        }
+
+        String s = multiWord();
+        if (s == null) {
+            return false;
+        }
+
+        if (RunParser.isLevel(s)) {
+            pkmnBuilder.setLevel(s);
+        } else {
+            pkmnBuilder.setSkill(s);
+        }
+        return true;
+    }
+
+    private boolean score() {
+        if (score != null) {
+            return false;
+        }
+
+        next();
+        if (kind != WORD) {
+            return false;
+        }
+
+        String s = image();
+        next();
+        if (kind == COMMA) {
+            StringBuilder sb = new StringBuilder(s);
+            while (kind == COMMA) {
+                next();
+                if (kind != WORD) {
+                    return false;
+                }
+                sb.append(input, tokenStart, tokenEnd);
+                next();
+            }
+            s = sb.toString();
+        }
+
+        score = s;
+        return true;
+    }
+
+    private boolean items() {
+        if (items != null) {
+            return false;
+        }
+        items = new ArrayList<>();
+
+        next();
+        String s = multiWord();
+        if (s == null) {
+            return false;
+        }
+        items.add(s);
+
+        while (kind == COMMA) {
+            next();
+            s = multiWord();
+            if (s == null) {
+                return false;
+            }
+            items.add(s);
+        }
+        return true;
+    }
+
+    private boolean movesLeft() {
+        if (movesLeft != null || timeLeft != null) {
+            return false;
+        }
+
+        next();
+        if (kind != WORD) {
+            return false;
+        }
+        movesLeft = image();
+        moveType = MoveType.MOVES;
+        next();
+        return true;
+    }
+
+    private boolean timeLeft() {
+        if (timeLeft != null || movesLeft != null) {
+            return false;
+        }
+
+        next();
+        if (kind != WORD) {
+            return false;
+        }
+        timeLeft = image();
+        moveType = MoveType.TIME;
+        next();
+        return true;
+    }
+
+    private void notes() {
+        // RunParser keeps everything skipped between tokens, so notes are just the raw text from the header through
+        // the last token that belongs to them
+        int notesStart = tokenEnd;
+        int notesEnd = notesStart;
+
+        next();
+        while (kind == WORD || kind == SLASH || kind == LPAREN || kind == RPAREN || kind == COMMA || kind == PERFECT) {
+            notesEnd = tokenEnd;
+            next();
+        }
+
+        notes = input.substring(notesStart, notesEnd);
+    }
+
+    private String image() {
+        return input.substring(tokenStart, tokenEnd);
+    }
+
+    private void next() {
+        lex(tokenEnd);
+    }
+
+    /**
+     * @return kind of the token after the current one
+     */
+    private int peek() {
+        int curKind = kind;
+        int curStart = tokenStart;
+        int curEnd = tokenEnd;
+
+        lex(tokenEnd);
+        int peekKind = kind;
+
+        kind = curKind;
+        tokenStart = curStart;
+        tokenEnd = curEnd;
+        return peekKind;
+    }
+
+    private void lex(int pos) {
+        while (pos < length && isSkipped(input.charAt(pos))) {
+            pos++;
+        }
+
+        tokenStart = pos;
+        if (pos >= length) {
+            kind = EOF;
+            tokenEnd = pos;
+            return;
+        }
+
+        char c = input.charAt(pos);
+        switch (c) {
+            case '/':
+                setToken(SLASH, pos + 1);
+                return;
+            case '(':
+                setToken(LPAREN, pos + 1);
+                return;
+            case ')':
+                setToken(RPAREN, pos + 1);
+                return;
+            case ',':
+                setToken(COMMA, pos + 1);
+                return;
+        }
+
+        int wordEnd = pos + 1;
+        while (wordEnd < length && isWordChar(input.charAt(wordEnd))) {
+            wordEnd++;
+        }
+        int wordLength = wordEnd - pos;
+
+        if (c == '!') {
+            // same length as WORD, so these only win when the word is exactly the keyword
+            if (isKeyword(pos, wordLength, END)) {
+                setToken(END_HEADER, wordEnd);
+            } else if (isKeyword(pos, wordLength, COMP)) {
+                setToken(COMP_HEADER, wordEnd);
+            } else if (isKeyword(pos, wordLength, RUN)) {
+                setToken(RUN_HEADER, wordEnd);
+            } else if (isKeyword(pos, wordLength, EB)) {
+                setToken(EB_HEADER, wordEnd);
+            } else if (isKeyword(pos, wordLength, ROSTER)) {
+                setToken(ROSTER_HEADER, wordEnd);
+            } else {
+                setToken(WORD, wordEnd);
+            }
+            return;
+        }
+
+        // section headers end with a colon, which isn't a word character, so they're always longer than WORD
+        if (matches(pos, TEAM)) {
+            setToken(TEAM_HEADER, pos + TEAM.length());
+        } else if (matches(pos, SCORE)) {
+            setToken(SCORE_HEADER, pos + SCORE.length());
+        } else if (matches(pos, ITEMS)) {
+            setToken(ITEMS_HEADER, pos + ITEMS.length());
+        } else if (matches(pos, NOTES)) {
+            setToken(NOTES_HEADER, pos + NOTES.length());
+        } else if (wordLength == MOVES.length() && isLeftHeader(pos, MOVES)) {
+            setToken(MOVES_LEFT_HEADER, pos + MOVES.length() + 1 + LEFT.length());
+        } else if (wordLength == TIME.length() && isLeftHeader(pos, TIME)) {
+            setToken(TIME_LEFT_HEADER, pos + TIME.length() + 1 + LEFT.length());
+        } else if (isKeyword(pos, wordLength, PERFECT_KEYWORD)) {
+            setToken(PERFECT, wordEnd);
+        } else {
+            setToken(WORD, wordEnd);
+        }
+    }
+
+    private void setToken(int kind, int end) {
+        this.kind = kind;
+        this.tokenEnd = end;
+    }
+
+    private boolean isKeyword(int pos, int wordLength, String keyword) {
+        return wordLength == keyword.length() && matches(pos, keyword);
+    }
+
+    private boolean isLeftHeader(int pos, String prefix) {
+        int wsPos = pos + prefix.length();
+        return matches(pos, prefix)
+                && wsPos < length
+                && isBasicWhitespace(input.charAt(wsPos))
+                && matches(wsPos + 1, LEFT);
+    }
+
+    private boolean matches(int pos, String keyword) {
+        return input.regionMatches(true, pos, keyword, 0, keyword.length());
+    }
+
+    // <WORD> in shufflerun.jj
+    private static boolean isWordChar(char c) {
+        return (c >= '0' && c <= '9')
+                || (c >= 'a' && c <= 'z')
+                || (c >= 'A' && c <= 'Z')
+                || c == '+' || c == '-' || c == '?' || c == '!' || c == '.';
+    }
+
+    // the ascii part of <WHITESPACE> in shufflerun.jj
+    private static boolean isBasicWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+
+    // special tokens, everything that doesn't start a regular token
+    private static boolean isSkipped(char c) {
+        return !isWordChar(c) && c != '/' && c != '(' && c != ')' && c != ',';
+    }
+}
@@ -0,0 +1,261 @@
+package org.jchien.shuffle.parser;
+
+import com.google.common.collect.ImmutableMap;
+
+import javax.annotation.Nullable;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable lookup from however people write a name to its canonical spelling.
+ * <p>
+ * Names are normalized by lowercasing and dropping whitespace, hyphens, and periods, so exact hits are a single hash
+ * lookup. If fuzzy matching is on, anything else goes through a trigram index to find a handful of candidates, and
+ * a candidate is only used if it's within a small edit distance and no other name is just as close. Everything else
+ * is left alone, so names missing from the data still show up the way they were written.
+ * <p>
+ * Fuzzy matching should only be used with complete data. Otherwise a real name that's missing from the data can be
+ * "corrected" to a listed name that's one edit away.
+ * <p>
+ * Data files have one name per line: the canonical name followed by its aliases, separated by tabs. Blank lines and
+ * lines starting with # are ignored.
+ *
+ * @author jchien
+ */
+public class NameIndex {
+    // shorter names are too easy to confuse with each other to guess at
+    private static final int MIN_FUZZY_LENGTH = 4;
+
+    // allow one more edit once names get this long
+    private static final int LONG_NAME_LENGTH = 10;
+
+    private static final char BOUNDARY = '\0';
+
+    // normalized alias -> canonical name
+    private final ImmutableMap<String, String> exact;
+
+    // the rest are only built if fuzzy matching is on, null otherwise
+
+    // by alias id
+    private final String[] normalizedAliases;
+    private final String[] canonicalNames;
+
+    // sorted trigrams and the ids of the aliases that contain each one
+    private final long[] trigrams;
+    private final int[][] postings;
+
+    private final boolean fuzzy;
+
+    private NameIndex(Map<String, String> aliases, boolean fuzzy) {
+        this.exact = ImmutableMap.copyOf(aliases);
+        this.fuzzy = fuzzy;
+
+        if (!fuzzy) {
+            normalizedAliases = null;
+            canonicalNames = null;
+            trigrams = null;
+            postings = null;
+            return;
+        }
+
+        int numAliases = aliases.size();
+        normalizedAliases = new String[numAliases];
+        canonicalNames = new String[numAliases];
+
+        Map<Long, List<Integer>> gramMap = new HashMap<>();
+        int id = 0;
+        for (Map.Entry<String, String> entry : exact.entrySet()) {
+            normalizedAliases[id] = entry.getKey();
+            canonicalNames[id] = entry.getValue();
+            for (long gram : getTrigrams(entry.getKey())) {
+                List<Integer> ids = gramMap.computeIfAbsent(gram, k -> new ArrayList<>());
+                // an alias can repeat a trigram, only count it once
+                if (ids.isEmpty() || ids.get(ids.size() - 1) != id) {
+                    ids.add(id);
+                }
+            }
+            id++;
+        }
+
+        trigrams = new long[gramMap.size()];
+        int i = 0;
+        for (long gram : gramMap.keySet()) {
+            trigrams[i++] = gram;
+        }
+        Arrays.sort(trigrams);
+
+        postings = new int[trigrams.length][];
+        for (i=0; i < trigrams.length; i++) {
+            postings[i] = gramMap.get(trigrams[i]).stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+    /**
+     * @param resource  classpath resource with the names
+     * @param fuzzy     true to correct names that are close to a known name, only safe if the data is complete
+     */
+    public static NameIndex fromResource(String resource, boolean fuzzy) {
+        InputStream in = NameIndex.class.getResourceAsStream(resource);
+        if (in == null) {
+            throw new IllegalStateException("missing name data: " + resource);
+        }
+
+        try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            return load(reader, fuzzy);
+        } catch (IOException e) {
+            throw new UncheckedIOException("unable to read name data: " + resource, e);
+        }
+    }
+
+    public static NameIndex load(Reader reader, boolean fuzzy) throws IOException {
+        Map<String, String> aliases = new HashMap<>();
+
+        BufferedReader br = new BufferedReader(reader);
+        String line;
+        while ((line = br.readLine()) != null) {
+            if (line.trim().isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            String[] names = line.split("\t");
+            String canonicalName = names[0].trim();
+            for (String alias : names) {
+                String key = normalize(alias);
+                if (key.isEmpty()) {
+                    continue;
+                }
+
+                String prev = aliases.put(key, canonicalName);
+                if (prev != null && !prev.equals(canonicalName)) {
+                    throw new IllegalArgumentException(
+                            "\"" + alias + "\" is used for both \"" + prev + "\" and \"" + canonicalName + "\"");
+                }
+            }
+        }
+
+        return new NameIndex(aliases, fuzzy);
+    }
+
+    /**
+     * @return  canonical spelling of the name, or null if it doesn't match a known name closely enough
+     */
+    @Nullable
+    public String canonicalize(String name) {
+        String key = normalize(name);
+
+        String ret = exact.get(key);
+        if (ret != null || !fuzzy || key.length() < MIN_FUZZY_LENGTH) {
+            return ret;
+        }
+
+        return findClosest(key);
+    }
+
+    @Nullable
+    private String findClosest(String key) {
+        int maxDistance = key.length() >= LONG_NAME_LENGTH ? 2 : 1;
+
+        // each edit changes at most 3 trigrams, so anything within maxDistance shares at least this many
+        long[] grams = getTrigrams(key);
+        int minShared = grams.length - 3 * maxDistance;
+
+        int[] shared = new int[normalizedAliases.length];
+        for (long gram : grams) {
+            int idx = Arrays.binarySearch(trigrams, gram);
+            if (idx >= 0) {
+                for (int id : postings[idx]) {
+                    shared[id]++;
+                }
+            }
+        }
+
+        String best = null;
+        int bestDistance = maxDistance + 1;
+        boolean ambiguous = false;
+        for (int id=0; id < shared.length; id++) {
+            if (shared[id] < minShared) {
+                continue;
+            }
+
+            int distance = getEditDistance(key, normalizedAliases[id], maxDistance);
+            if (distance < bestDistance) {
+                best = canonicalNames[id];
+                bestDistance = distance;
+                ambiguous = false;
+            } else if (distance == bestDistance && !canonicalNames[id].equals(best)) {
+                ambiguous = true;
+            }
+        }
+
+        return ambiguous ? null : best;
+    }
+
+    /**
+     * @return  edit distance between a and b, or maxDistance + 1 if it's more than maxDistance
+     */
+    private static int getEditDistance(String a, String b, int maxDistance) {
+        if (Math.abs(a.length() - b.length()) > maxDistance) {
+            return maxDistance + 1;
+        }
+
+        int[] prev = new int[b.length() + 1];
+        int[] cur = new int[b.length() + 1];
+        for (int j=0; j <= b.length(); j++) {
+            prev[j] = j;
+        }
+
+        for (int i=1; i <= a.length(); i++) {
+            cur[0] = i;
+            int rowMin = cur[0];
+            for (int j=1; j <= b.length(); j++) {
+                int substitution = prev[j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1);
+                cur[j] = Math.min(substitution, Math.min(prev[j] + 1, cur[j - 1] + 1));
+                rowMin = Math.min(rowMin, cur[j]);
+            }
+
+            if (rowMin > maxDistance) {
+                return maxDistance + 1;
+            }
+
+            int[] tmp = prev;
+            prev = cur;
+            cur = tmp;
+        }
+
+        return Math.min(prev[b.length()], maxDistance + 1);
+    }
+
+    // trigrams of the key padded with a boundary on each side, three chars packed into a long
+    private static long[] getTrigrams(String key) {
+        int len = key.length();
+        long[] ret = new long[len];
+        for (int i=0; i < len; i++) {
+            char a = i > 0 ? key.charAt(i - 1) : BOUNDARY;
+            char b = key.charAt(i);
+            char c = i + 1 < len ? key.charAt(i + 1) : BOUNDARY;
+            ret[i] = ((long) a << 32) | ((long) b << 16) | c;
+        }
+        return ret;
+    }
+
+    static String normalize(String name) {
+        StringBuilder sb = new StringBuilder(name.length());
+        for (int i=0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (!Character.isWhitespace(c) && c != '-' && c != '.') {
+                sb.append(Character.toLowerCase(c));
+            }
+        }
+        return sb.toString();
+    }
+}
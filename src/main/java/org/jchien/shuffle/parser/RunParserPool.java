@@ -0,0 +1,33 @@
+package org.jchien.shuffle.parser;
+
+import java.io.StringReader;
+
+/**
+ * Hands out one RunParser per thread, reset for each new input. Creating a RunParser allocates a token manager,
+ * char stream buffers, and lookahead arrays, which adds up when a comment has lots of runs.
+ * <p>
+ * A parser from acquire() is only valid until the next call to acquire() on the same thread, so finish with it
+ * (including getDetails()) before parsing anything else.
+ *
+ * @author jchien
+ */
+public class RunParserPool {
+    private static final ThreadLocal<RunParser> PARSERS = new ThreadLocal<>();
+
+    /**
+     * @param input text to parse
+     * @return      this thread's parser, ready to parse input
+     */
+    public static RunParser acquire(String input) {
+        StringReader reader = new StringReader(input);
+
+        RunParser parser = PARSERS.get();
+        if (parser == null) {
+            parser = new RunParser(reader);
+            PARSERS.set(parser);
+        } else {
+            parser.reset(reader);
+        }
+        return parser;
+    }
+}
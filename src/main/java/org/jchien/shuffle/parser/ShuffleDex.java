@@ -0,0 +1,33 @@
+package org.jchien.shuffle.parser;
+
+/**
+ * Pokemon and skill names bundled with the bot, loaded once and shared by every Canonicalizer.
+ *
+ * @author jchien
+ */
+public class ShuffleDex {
+    static final String POKEMON_RESOURCE = "/shuffledex/pokemon.tsv";
+
+    static final String SKILLS_RESOURCE = "/shuffledex/skills.tsv";
+
+    // the name lists only cover part of the dex so far, and fuzzy matching against them would rewrite real names
+    // that aren't listed yet. Turn this on once they're complete, until then the trigram index isn't even built.
+    static final boolean FUZZY_NAMES = false;
+
+    // loaded when first used rather than when ShuffleDex is
+    private static class PokemonHolder {
+        private static final NameIndex INDEX = NameIndex.fromResource(POKEMON_RESOURCE, FUZZY_NAMES);
+    }
+
+    private static class SkillsHolder {
+        private static final NameIndex INDEX = NameIndex.fromResource(SKILLS_RESOURCE, FUZZY_NAMES);
+    }
+
+    public static NameIndex getPokemonNames() {
+        return PokemonHolder.INDEX;
+    }
+
+    public static NameIndex getSkillNames() {
+        return SkillsHolder.INDEX;
+    }
+}
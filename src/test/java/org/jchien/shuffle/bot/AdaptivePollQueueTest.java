@@ -0,0 +1,98 @@
+package org.jchien.shuffle.bot;
+
+import net.dean.jraw.models.Submission;
+import org.jchien.shuffle.model.SubmissionFingerprint;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+/**
+ * @author jchien
+ */
+public class AdaptivePollQueueTest {
+    private static final long HOUR = 3600000;
+
+    private static final long MINUTE = 60000;
+
+    @Test
+    public void testGetInterval() {
+        assertEquals(0, AdaptivePollQueue.getInterval(HOUR - 1, HOUR, MINUTE, 6 * HOUR));
+        assertEquals(MINUTE, AdaptivePollQueue.getInterval(HOUR, HOUR, MINUTE, 6 * HOUR));
+        assertEquals(MINUTE, AdaptivePollQueue.getInterval(2 * HOUR - 1, HOUR, MINUTE, 6 * HOUR));
+        assertEquals(2 * MINUTE, AdaptivePollQueue.getInterval(2 * HOUR, HOUR, MINUTE, 6 * HOUR));
+        assertEquals(8 * MINUTE, AdaptivePollQueue.getInterval(10 * HOUR, HOUR, MINUTE, 6 * HOUR));
+
+        // capped
+        assertEquals(6 * HOUR, AdaptivePollQueue.getInterval(10000 * HOUR, HOUR, MINUTE, 6 * HOUR));
+        assertEquals(6 * HOUR, AdaptivePollQueue.getInterval(Long.MAX_VALUE, 1, MINUTE, 6 * HOUR));
+    }
+
+    @Test
+    public void testOffer() {
+        Instant now = Instant.ofEpochMilli(100 * HOUR);
+        AdaptivePollQueue queue = new AdaptivePollQueue(HOUR, MINUTE, 6 * HOUR, now);
+
+        // never processed
+        Submission fresh = mockSubmission("a", 3, now.minusMillis(10 * HOUR));
+        assertTrue(queue.offer(fresh, null));
+
+        // new comment
+        Submission commented = mockSubmission("b", 4, now.minusMillis(10 * HOUR));
+        assertTrue(queue.offer(commented, fingerprint("b", 3, null, now.minusMillis(1))));
+
+        // comment edited recently
+        Submission edited = mockSubmission("c", 3, now.minusMillis(10 * HOUR));
+        assertTrue(queue.offer(edited, fingerprint("c", 3, now.minusMillis(HOUR - 1), now.minusMillis(1))));
+
+        // quiet for 10 hours so it's processed every 8 minutes
+        Submission quiet = mockSubmission("d", 3, now.minusMillis(10 * HOUR));
+        assertFalse(queue.offer(quiet, fingerprint("d", 3, null, now.minusMillis(8 * MINUTE - 1))));
+        assertTrue(queue.offer(quiet, fingerprint("d", 3, null, now.minusMillis(8 * MINUTE))));
+
+        assertEquals(5, queue.size());
+    }
+
+    @Test
+    public void testPoll_MostOverdueFirst() {
+        Instant now = Instant.ofEpochMilli(100 * HOUR);
+        AdaptivePollQueue queue = new AdaptivePollQueue(HOUR, MINUTE, 6 * HOUR, now);
+
+        // both processed every 8 minutes
+        Submission slightlyOverdue = mockSubmission("a", 3, now.minusMillis(10 * HOUR));
+        Submission veryOverdue = mockSubmission("b", 3, now.minusMillis(10 * HOUR));
+        Submission hot = mockSubmission("c", 3, now.minusMillis(10 * HOUR));
+
+        queue.offer(slightlyOverdue, fingerprint("a", 3, null, now.minusMillis(9 * MINUTE)));
+        queue.offer(veryOverdue, fingerprint("b", 3, null, now.minusMillis(30 * MINUTE)));
+        queue.offer(hot, null);
+
+        assertSame(hot, queue.poll());
+        assertSame(veryOverdue, queue.poll());
+        assertSame(slightlyOverdue, queue.poll());
+        assertNull(queue.poll());
+    }
+
+    private static Submission mockSubmission(String id, int commentCount, Instant created) {
+        Submission submission = mock(Submission.class);
+        doReturn(id).when(submission).getId();
+        doReturn(commentCount).when(submission).getCommentCount();
+        doReturn(Date.from(created)).when(submission).getCreated();
+        return submission;
+    }
+
+    private static SubmissionFingerprint fingerprint(String id,
+                                                     int commentCount,
+                                                     Instant latestModifiedDate,
+                                                     Instant processedDate) {
+        return new SubmissionFingerprint(id, commentCount, latestModifiedDate, 0, processedDate);
+    }
+}
@@ -0,0 +1,92 @@
+package org.jchien.shuffle.bot;
+
+import net.dean.jraw.models.Comment;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+/**
+ * @author jchien
+ */
+public class NewCommentTrackerTest {
+    private static final String BOT_USER = "shufflescorebot";
+
+    private static final String SUBREDDIT = "PokemonShuffle";
+
+    @Test
+    public void testFirstCheckOnlyRecordsWatermark() {
+        NewCommentTracker tracker = new NewCommentTracker(5);
+
+        Set<String> ids = tracker.findUpdatedSubmissions(SUBREDDIT, pages(comment("c2", "u", "s1", 2000)), BOT_USER);
+        assertTrue(ids.isEmpty());
+    }
+
+    @Test
+    public void testNewCommentsSinceLastCheck() {
+        NewCommentTracker tracker = new NewCommentTracker(5);
+        Comment first = comment("c1", "u1", "s1", 1000);
+        tracker.findUpdatedSubmissions(SUBREDDIT, pages(first), BOT_USER);
+
+        Set<String> ids = tracker.findUpdatedSubmissions(
+                SUBREDDIT,
+                pages(comment("c4", "u2", "s2", 4000),
+                      comment("c3", BOT_USER, "s3", 3000),
+                      comment("c2", "u3", "s1", 2000),
+                      first,
+                      comment("c0", "u4", "s4", 500)),
+                BOT_USER);
+        assertEquals(Arrays.asList("s2", "s1"), Arrays.asList(ids.toArray()));
+
+        // nothing new since the last check
+        ids = tracker.findUpdatedSubmissions(SUBREDDIT, pages(comment("c4", "u2", "s2", 4000)), BOT_USER);
+        assertTrue(ids.isEmpty());
+    }
+
+    @Test
+    public void testWatermarkCommentDeleted() {
+        NewCommentTracker tracker = new NewCommentTracker(5);
+        tracker.findUpdatedSubmissions(SUBREDDIT, pages(comment("c2", "u1", "s1", 2000)), BOT_USER);
+
+        // c2 is gone, stop at the first comment written before it
+        Set<String> ids = tracker.findUpdatedSubmissions(
+                SUBREDDIT,
+                pages(comment("c3", "u2", "s2", 3000), comment("c1", "u3", "s3", 1000)),
+                BOT_USER);
+        assertEquals(Collections.singleton("s2"), ids);
+    }
+
+    @Test
+    public void testMaxPages() {
+        NewCommentTracker tracker = new NewCommentTracker(1);
+        tracker.findUpdatedSubmissions(SUBREDDIT, pages(comment("c1", "u1", "s1", 1000)), BOT_USER);
+
+        List<List<Comment>> listing = Arrays.asList(
+                Collections.singletonList(comment("c3", "u2", "s2", 3000)),
+                Collections.singletonList(comment("c2", "u3", "s3", 2000)));
+        Set<String> ids = tracker.findUpdatedSubmissions(SUBREDDIT, listing.iterator(), BOT_USER);
+        assertEquals(Collections.singleton("s2"), ids);
+    }
+
+    private static Iterator<List<Comment>> pages(Comment... comments) {
+        return Collections.singletonList(Arrays.asList(comments)).iterator();
+    }
+
+    private static Comment comment(String id, String author, String submissionId, long created) {
+        Comment comment = mock(Comment.class);
+        doReturn(id).when(comment).getId();
+        doReturn(author).when(comment).getAuthor();
+        doReturn("t3_" + submissionId).when(comment).getSubmissionFullName();
+        doReturn(new Date(created)).when(comment).getCreated();
+        return comment;
+    }
+}
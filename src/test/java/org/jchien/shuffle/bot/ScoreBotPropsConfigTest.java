@@ -0,0 +1,44 @@
+package org.jchien.shuffle.bot;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * @author jchien
+ */
+public class ScoreBotPropsConfigTest {
+    private static ScoreBotPropsConfig createConfig() {
+        ScoreBotPropsConfig config = new ScoreBotPropsConfig();
+        config.setPollDelayMillis(10000);
+        config.setPollDays(15);
+        config.setPollThreads(1);
+        return config;
+    }
+
+    @Test
+    public void testGetSubredditProps_Defaults() {
+        ScoreBotPropsConfig.SubredditProps props = createConfig().getSubredditProps("PokemonShuffle");
+
+        assertEquals(10000, (long) props.getPollDelayMillis());
+        assertEquals(15, (int) props.getPollDays());
+        assertEquals(1, (int) props.getPollThreads());
+    }
+
+    @Test
+    public void testGetSubredditProps_Overrides() {
+        ScoreBotPropsConfig config = createConfig();
+        ScoreBotPropsConfig.SubredditProps overrides = new ScoreBotPropsConfig.SubredditProps();
+        overrides.setPollThreads(4);
+        overrides.setPollDelayMillis(2000L);
+        config.getSubredditSettings().put("pokemonshuffle", overrides);
+
+        // subreddit names aren't case sensitive
+        ScoreBotPropsConfig.SubredditProps props = config.getSubredditProps("PokemonShuffle");
+        assertEquals(2000, (long) props.getPollDelayMillis());
+        assertEquals(15, (int) props.getPollDays());
+        assertEquals(4, (int) props.getPollThreads());
+
+        assertEquals(1, (int) config.getSubredditProps("other").getPollThreads());
+    }
+}
@@ -0,0 +1,93 @@
+package org.jchien.shuffle.bot;
+
+import net.dean.jraw.models.Submission;
+import org.jchien.shuffle.model.SubmissionFingerprint;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+/**
+ * @author jchien
+ */
+public class SubmissionCacheTest {
+    @Test
+    public void testFormatAndParseLine() {
+        SubmissionFingerprint expected = new SubmissionFingerprint("abc",
+                                                                   12,
+                                                                   Instant.ofEpochMilli(1000),
+                                                                   -5L,
+                                                                   Instant.ofEpochMilli(2000));
+        SubmissionFingerprint actual = SubmissionCache.parseLine(SubmissionCache.formatLine(expected));
+
+        assertEquals(expected.getSubmissionId(), actual.getSubmissionId());
+        assertEquals(expected.getCommentCount(), actual.getCommentCount());
+        assertEquals(expected.getLatestModifiedDate(), actual.getLatestModifiedDate());
+        assertEquals(expected.getTableHash(), actual.getTableHash());
+        assertEquals(expected.getProcessedDate(), actual.getProcessedDate());
+    }
+
+    @Test
+    public void testFormatAndParseLine_NoComments() {
+        SubmissionFingerprint expected = new SubmissionFingerprint("abc", 0, null, 0, Instant.ofEpochMilli(2000));
+        SubmissionFingerprint actual = SubmissionCache.parseLine(SubmissionCache.formatLine(expected));
+
+        assertNull(actual.getLatestModifiedDate());
+    }
+
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        Path dir = Files.createTempDirectory("submission-cache");
+        Path file = dir.resolve("cache.tsv");
+
+        SubmissionCache cache = new SubmissionCache(file, 1000);
+        cache.put(new SubmissionFingerprint("abc", 3, null, 7, Instant.ofEpochMilli(2000)));
+        cache.save();
+
+        SubmissionCache loaded = new SubmissionCache(file, 1000);
+        assertEquals(3, loaded.get("abc").getCommentCount());
+        assertEquals(7, loaded.get("abc").getTableHash());
+    }
+
+    @Test
+    public void testIsUnchanged() {
+        Submission submission = mock(Submission.class);
+        doReturn("abc").when(submission).getId();
+        doReturn(3).when(submission).getCommentCount();
+
+        Instant processed = Instant.ofEpochMilli(10000);
+        SubmissionCache cache = new SubmissionCache(null, 1000);
+        assertFalse(cache.isUnchanged(submission, processed));
+
+        cache.put(new SubmissionFingerprint("abc", 3, null, 0, processed));
+        assertTrue(cache.isUnchanged(submission, processed.plusMillis(999)));
+
+        // due for a full refresh to pick up edits
+        assertFalse(cache.isUnchanged(submission, processed.plusMillis(1000)));
+
+        // new comment
+        doReturn(4).when(submission).getCommentCount();
+        assertFalse(cache.isUnchanged(submission, processed.plusMillis(1)));
+    }
+
+    @Test
+    public void testIsUnchanged_Disabled() {
+        Submission submission = mock(Submission.class);
+        doReturn("abc").when(submission).getId();
+        doReturn(3).when(submission).getCommentCount();
+
+        Instant processed = Instant.ofEpochMilli(10000);
+        SubmissionCache cache = new SubmissionCache(null, 0);
+        cache.put(new SubmissionFingerprint("abc", 3, null, 0, processed));
+        assertFalse(cache.isUnchanged(submission, processed));
+    }
+}
@@ -0,0 +1,29 @@
+package org.jchien.shuffle.bot;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * @author jchien
+ */
+public class SubredditScheduleTest {
+    @Test
+    public void testMarkPollStart() {
+        ScoreBotPropsConfig.SubredditProps props = new ScoreBotPropsConfig.SubredditProps();
+        props.setPollDelayMillis(10000L);
+        props.setPollDays(15);
+        props.setPollThreads(1);
+        SubredditSchedule schedule = new SubredditSchedule("PokemonShuffle", props);
+
+        assertEquals(-1, schedule.markPollStart(100000));
+
+        // previous poll took 3 seconds, then waited the configured 10
+        assertEquals(3000, schedule.markPollStart(113000));
+
+        // never negative, e.g. if the clock was adjusted between polls
+        assertEquals(0, schedule.markPollStart(118000));
+
+        schedule.shutdown();
+    }
+}
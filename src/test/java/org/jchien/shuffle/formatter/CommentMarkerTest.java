@@ -0,0 +1,67 @@
+package org.jchien.shuffle.formatter;
+
+import org.jchien.shuffle.model.Stage;
+import org.jchien.shuffle.model.StageType;
+import org.jchien.shuffle.model.TablePartId;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * @author jchien
+ */
+public class CommentMarkerTest {
+    private static CommentMarker findTable(StageType stageType, String stageId, int part) {
+        StringBuilder sb = new StringBuilder("###Header");
+        CommentMarker.appendTable(sb, stageType, stageId, part);
+        sb.append("\nrest of the table");
+        return CommentMarker.find(sb.toString());
+    }
+
+    @Test
+    public void testFind_Table() {
+        assertEquals(new TablePartId(new Stage(StageType.COMPETITION, null), 0),
+                     findTable(StageType.COMPETITION, null, 0).getTablePartId());
+        assertEquals(new TablePartId(new Stage(StageType.ESCALATION_BATTLE, "50"), 12),
+                     findTable(StageType.ESCALATION_BATTLE, "50", 12).getTablePartId());
+        assertEquals(CommentMarker.Kind.TABLE, findTable(StageType.NORMAL, "ex12", 1).getKind());
+    }
+
+    @Test
+    public void testFind_StageIdEscaped() {
+        // a stage id that could close the link or look like another field
+        String stageId = "a)b.c[](#ssb1s)";
+        assertEquals(new TablePartId(new Stage(StageType.NORMAL, stageId), 2),
+                     findTable(StageType.NORMAL, stageId, 2).getTablePartId());
+    }
+
+    @Test
+    public void testFind_SummaryAndReply() {
+        String summary = SummaryFormatter.SUMMARY_HEADER + "links";
+        assertEquals(CommentMarker.Kind.SUMMARY, CommentMarker.find(summary).getKind());
+        // reddit or jraw trims comments
+        assertEquals(CommentMarker.Kind.SUMMARY, CommentMarker.find(SummaryFormatter.SUMMARY_HEADER.trim()).getKind());
+
+        String reply = InvalidRunFormatter.formatInvalidRuns(Instant.ofEpochMilli(0), Collections.emptyList());
+        assertEquals(CommentMarker.Kind.REPLY, CommentMarker.find(reply).getKind());
+        assertEquals(CommentMarker.Kind.REPLY, CommentMarker.find(InvalidRunFormatter.getAllGoodMessage()).getKind());
+    }
+
+    @Test
+    public void testFind_Legacy() {
+        assertNull(CommentMarker.find("###Competition Runs\n###Part 2\n"));
+        assertNull(CommentMarker.find(SummaryFormatter.SUMMARY_TITLE + "\n\n"));
+        assertNull(CommentMarker.find("Everything is good now."));
+        assertNull(CommentMarker.find(""));
+    }
+
+    @Test
+    public void testFind_UnknownVersion() {
+        assertNull(CommentMarker.find("###Competition Runs[](#ssb9tc0)\n"));
+        assertNull(CommentMarker.find("###Competition Runs[](#ssb1tx0)\n"));
+    }
+}
@@ -1,11 +1,22 @@
 package org.jchien.shuffle.formatter;
 
+import org.jchien.shuffle.metrics.ScoreBotMetrics;
+import org.jchien.shuffle.model.Pokemon;
+import org.jchien.shuffle.model.RunDetails;
+import org.jchien.shuffle.model.RunDetailsBuilder;
 import org.jchien.shuffle.model.Stage;
 import org.jchien.shuffle.model.StageType;
 import org.jchien.shuffle.model.UserRunDetails;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import static org.jchien.shuffle.model.UserRunDetailsTestUtils.generateUserRunDetails;
 import static org.junit.jupiter.api.Assertions.*;
@@ -109,4 +120,154 @@ public class RunFormatterTest {
         // This is expected to be extremely unlikely to happen so we won't try to handle it nicely.
         assertTrue(comments.get(0).endsWith(RunFormatter.STAGE_TABLE_HEADER));
     }
+
+    private static final String SUBMISSION_URL = "https://www.reddit.com/r/PokemonShuffle/comments/abc/title/";
+
+    private static final Stage COMP_STAGE = new Stage(StageType.COMPETITION, null);
+
+    @Test
+    public void testStableParts_NewTopRunEditsOnePart() {
+        RunFormatter f = new RunFormatter(true, 1000);
+        List<UserRunDetails> runs = generateScoredRuns(300);
+        List<String> before = f.formatRuns(new ArrayList<>(runs), COMP_STAGE, SUBMISSION_URL);
+        assertTrue(before.size() > 2);
+
+        runs.add(scoredRun("new", 1000000));
+        List<String> after = f.formatRuns(new ArrayList<>(runs), COMP_STAGE, SUBMISSION_URL, getCommentIds(before));
+
+        assertEquals(before.size(), after.size());
+        assertNotEquals(before.get(0), after.get(0));
+        for (int i=1; i < before.size(); i++) {
+            assertEquals(before.get(i), after.get(i));
+        }
+    }
+
+    @Test
+    public void testStableParts_Overflow() {
+        // no slack, so any new run overflows its part
+        RunFormatter f = new RunFormatter(true, 0);
+        List<UserRunDetails> runs = generateScoredRuns(300);
+        List<String> before = f.formatRuns(new ArrayList<>(runs), COMP_STAGE, SUBMISSION_URL);
+
+        for (int i=0; i < 20; i++) {
+            runs.add(scoredRun("new" + i, 1000000 + i));
+        }
+        List<String> after = f.formatRuns(new ArrayList<>(runs), COMP_STAGE, SUBMISSION_URL, getCommentIds(before));
+
+        int numRuns = 0;
+        for (String part : after) {
+            assertTrue(part.length() <= RunFormatter.MAX_COMMENT_LENGTH);
+            numRuns += getCommentIds(part).size();
+        }
+        assertEquals(runs.size(), numRuns);
+    }
+
+    @Test
+    public void testStableParts_EmptyPartDropped() {
+        RunFormatter f = new RunFormatter(true, 1000);
+        List<UserRunDetails> runs = generateScoredRuns(300);
+        List<String> before = f.formatRuns(new ArrayList<>(runs), COMP_STAGE, SUBMISSION_URL);
+        List<Set<String>> previousParts = getCommentIds(before);
+
+        Set<String> removed = previousParts.get(1);
+        runs.removeIf(urd -> removed.contains(urd.getCommentId()));
+        List<String> after = f.formatRuns(new ArrayList<>(runs), COMP_STAGE, SUBMISSION_URL, previousParts);
+
+        assertEquals(before.size() - 1, after.size());
+        assertEquals(before.get(0), after.get(0));
+    }
+
+    @Test
+    public void testFormatCompetitionRun_Row() {
+        RunFormatter f = new RunFormatter();
+        Pokemon ttar = new Pokemon("mega tyranitar", 10, null, null, 12, 15, false);
+        Pokemon flygon = new Pokemon("flygon", 15, 5, "shot out", null, null, false);
+        Pokemon silvally = new Pokemon("silvally", null, null, null, null, null, false);
+        Pokemon mewtwo = new Pokemon("mewtwo", null, null, null, null, null, true);
+        RunDetails run = new RunDetailsBuilder()
+                .setTeam(Arrays.asList(ttar, flygon, silvally, mewtwo))
+                .setItems(Collections.emptyList())
+                .setStageType(StageType.COMPETITION)
+                .setScore(999)
+                .build();
+
+        // same pokemon again, formatted from the cached cells this time
+        RunDetails run2 = new RunDetailsBuilder()
+                .setTeam(Arrays.asList(new Pokemon("mega tyranitar", 10, null, null, 12, 15, false), flygon))
+                .setStageType(StageType.COMPETITION)
+                .build();
+
+        List<UserRunDetails> runs = new ArrayList<>(Arrays.asList(new UserRunDetails("a", "c1", run),
+                                                                  new UserRunDetails("b", "c2", run2)));
+        List<String> comments = f.formatRuns(runs, COMP_STAGE, SUBMISSION_URL);
+        assertEquals(1, comments.size());
+
+        String expected = RunFormatter.COMP_TABLE_HEADER +
+                "/u/a | **Mega Tyranitar** (Lv10, 12/15) | **Flygon** (Lv15, SL5 Shot Out) | **Silvally** | " +
+                "**Mewtwo** (Perfect) | Itemless | [999](" + SUBMISSION_URL + "c1) | \n" +
+                "/u/b | **Mega Tyranitar** (Lv10, 12/15) | **Flygon** (Lv15, SL5 Shot Out) | *blank* | *blank* | " +
+                "Unknown | [Unknown](" + SUBMISSION_URL + "c2) | \n";
+        assertTrue(comments.get(0).endsWith(expected), comments.get(0));
+    }
+
+    @Test
+    public void testRowCache() {
+        RowCache rowCache = new RowCache(1000);
+        RunFormatter f = new RunFormatter(false, 0, rowCache, ScoreBotMetrics.NOOP);
+        List<UserRunDetails> runs = generateScoredRuns(300);
+        List<String> expected = new RunFormatter().formatRuns(new ArrayList<>(runs), COMP_STAGE, SUBMISSION_URL);
+
+        assertEquals(expected, f.formatRuns(new ArrayList<>(runs), COMP_STAGE, SUBMISSION_URL));
+        assertEquals(0, rowCache.stats().hitCount());
+
+        assertEquals(expected, f.formatRuns(new ArrayList<>(runs), COMP_STAGE, SUBMISSION_URL));
+        assertEquals(runs.size(), rowCache.stats().hitCount());
+
+        // an edited run gets rendered again, even though its comment id is the same
+        UserRunDetails edited = scoredRun(runs.get(0).getCommentId(), 1000000);
+        runs.set(0, edited);
+        List<String> after = f.formatRuns(new ArrayList<>(runs), COMP_STAGE, SUBMISSION_URL);
+        assertEquals(2 * runs.size() - 1, rowCache.stats().hitCount());
+        assertEquals(new RunFormatter().formatRuns(new ArrayList<>(runs), COMP_STAGE, SUBMISSION_URL), after);
+
+        // same run in another submission
+        f.formatRuns(new ArrayList<>(runs), COMP_STAGE, SUBMISSION_URL + "other/");
+        assertEquals(2 * runs.size() - 1, rowCache.stats().hitCount());
+    }
+
+    private static List<UserRunDetails> generateScoredRuns(int numRuns) {
+        List<UserRunDetails> runs = new ArrayList<>(numRuns);
+        for (int i=0; i < numRuns; i++) {
+            runs.add(scoredRun(Integer.toString(i, 36), i * 100));
+        }
+        return runs;
+    }
+
+    private static UserRunDetails scoredRun(String commentId, int score) {
+        Pokemon pokemon = new Pokemon("Mewtwo", 15, 5, null, null, null, false);
+        RunDetails run = new RunDetailsBuilder()
+                .setTeam(Arrays.asList(pokemon, pokemon, pokemon, pokemon))
+                .setItems(Collections.emptyList())
+                .setStageType(StageType.COMPETITION)
+                .setScore(score)
+                .build();
+        return new UserRunDetails("user-" + commentId, commentId, run);
+    }
+
+    private static List<Set<String>> getCommentIds(List<String> parts) {
+        List<Set<String>> ret = new ArrayList<>();
+        for (String part : parts) {
+            ret.add(getCommentIds(part));
+        }
+        return ret;
+    }
+
+    private static Set<String> getCommentIds(String part) {
+        Set<String> ret = new HashSet<>();
+        Matcher m = Pattern.compile(Pattern.quote(SUBMISSION_URL) + "(\\w+)\\)").matcher(part);
+        while (m.find()) {
+            ret.add(m.group(1));
+        }
+        return ret;
+    }
 }
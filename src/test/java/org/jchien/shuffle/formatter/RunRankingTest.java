@@ -0,0 +1,148 @@
+package org.jchien.shuffle.formatter;
+
+import org.jchien.shuffle.model.Item;
+import org.jchien.shuffle.model.MoveType;
+import org.jchien.shuffle.model.RunDetails;
+import org.jchien.shuffle.model.RunDetailsBuilder;
+import org.jchien.shuffle.model.StageType;
+import org.jchien.shuffle.model.UserRunDetails;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+
+import static java.util.Comparator.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author jchien
+ */
+public class RunRankingTest {
+    private static final String[] USERS = { "alice", "Bob", "bob", "carol", "Dave" };
+
+    private static final Item[] ITEMS = Item.values();
+
+    @Test
+    public void testSort_Competition() {
+        Random random = new Random(0);
+        for (int i=0; i < 200; i++) {
+            List<UserRunDetails> runs = generateRuns(random, random.nextInt(50), StageType.COMPETITION);
+            List<UserRunDetails> expected = sortWithComparator(runs, StageType.COMPETITION);
+            RunRanking.sort(runs, StageType.COMPETITION);
+            assertSame(expected, runs);
+        }
+    }
+
+    @Test
+    public void testSort_NonCompetition() {
+        Random random = new Random(0);
+        for (int i=0; i < 200; i++) {
+            List<UserRunDetails> runs = generateRuns(random, random.nextInt(50), StageType.ESCALATION_BATTLE);
+            List<UserRunDetails> expected = sortWithComparator(runs, StageType.ESCALATION_BATTLE);
+            RunRanking.sort(runs, StageType.ESCALATION_BATTLE);
+            assertSame(expected, runs);
+        }
+    }
+
+    @Test
+    public void testUpdate() {
+        Random random = new Random(0);
+        for (StageType stageType : Arrays.asList(StageType.COMPETITION, StageType.NORMAL)) {
+            RunRanking ranking = new RunRanking(stageType);
+            List<UserRunDetails> previous = new ArrayList<>();
+            for (int poll=0; poll < 100; poll++) {
+                // keep most runs as they were, drop a few, and add a few new ones at the end
+                List<UserRunDetails> runs = new ArrayList<>();
+                for (UserRunDetails urd : previous) {
+                    if (random.nextInt(10) > 0) {
+                        runs.add(urd);
+                    }
+                }
+                runs.addAll(generateRuns(random, random.nextInt(10), stageType));
+
+                List<UserRunDetails> expected = sortWithComparator(runs, stageType);
+                ranking.update(runs);
+                assertSame(expected, runs);
+                assertEquals(runs.size(), ranking.size());
+
+                previous = runs;
+            }
+        }
+    }
+
+    private static void assertSame(List<UserRunDetails> expected, List<UserRunDetails> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i=0; i < expected.size(); i++) {
+            assertTrue(expected.get(i) == actual.get(i), "mismatch at " + i);
+        }
+    }
+
+    private static List<UserRunDetails> generateRuns(Random random, int numRuns, StageType stageType) {
+        List<UserRunDetails> ret = new ArrayList<>(numRuns);
+        for (int i=0; i < numRuns; i++) {
+            RunDetailsBuilder builder = new RunDetailsBuilder()
+                    .setTeam(Collections.emptyList())
+                    .setStageType(stageType);
+
+            if (random.nextInt(5) > 0) {
+                List<Item> items = new ArrayList<>();
+                int numItems = random.nextInt(3);
+                for (int j=0; j < numItems; j++) {
+                    items.add(ITEMS[random.nextInt(ITEMS.length)]);
+                }
+                builder.setItems(items);
+            }
+
+            if (random.nextInt(5) > 0) {
+                builder.setScore(random.nextInt(5) * 10000);
+            }
+
+            int moveType = random.nextInt(3);
+            if (moveType == 0) {
+                builder.setMoveType(MoveType.MOVES).setMovesLeft(random.nextInt(5) > 0 ? random.nextInt(4) : null);
+            } else if (moveType == 1) {
+                builder.setMoveType(MoveType.TIME).setTimeLeft(random.nextInt(5) > 0 ? random.nextInt(4) : null);
+            }
+
+            ret.add(new UserRunDetails(USERS[random.nextInt(USERS.length)], "c" + i, builder.build()));
+        }
+        return ret;
+    }
+
+    /**
+     * How RunFormatter sorted runs before RunRanking.
+     */
+    private static List<UserRunDetails> sortWithComparator(List<UserRunDetails> runs, StageType stageType) {
+        Comparator<UserRunDetails> comparator;
+        if (stageType == StageType.COMPETITION) {
+            Function<UserRunDetails, Integer> score = (r) -> r.getRunDetails().getScore();
+            comparator = comparing(score, nullsLast(reverseOrder()))
+                    .thenComparing(UserRunDetails::getUser, String.CASE_INSENSITIVE_ORDER);
+        } else {
+            Function<UserRunDetails, Integer> itemsCost = r -> r.getRunDetails().getItemsCost();
+            Function<UserRunDetails, Integer> unitsLeft = urd -> {
+                RunDetails r = urd.getRunDetails();
+                if (r.getMoveType() == null) {
+                    return null;
+                }
+                switch (r.getMoveType()) {
+                    case MOVES: return r.getMovesLeft();
+                    case TIME: return r.getTimeLeft();
+                    default: return null;
+                }
+            };
+            comparator = comparing(itemsCost, nullsLast(naturalOrder()))
+                    .thenComparing(unitsLeft, nullsLast(reverseOrder()))
+                    .thenComparing(UserRunDetails::getUser, String.CASE_INSENSITIVE_ORDER);
+        }
+
+        List<UserRunDetails> ret = new ArrayList<>(runs);
+        Collections.sort(ret, comparator);
+        return ret;
+    }
+}
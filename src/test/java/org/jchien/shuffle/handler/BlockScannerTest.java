@@ -0,0 +1,318 @@
+package org.jchien.shuffle.handler;
+
+import org.jchien.shuffle.handler.BlockScanner.Block;
+import org.jchien.shuffle.handler.BlockScanner.BlockType;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks BlockScanner against the regexes UserCommentHandler used to find blocks before it.
+ *
+ * @author jchien
+ */
+public class BlockScannerTest {
+    // reference definition of a run block
+    // word boundary matcher doesn't seem to trigger in front of an exclamation mark
+    private static final Pattern PATTERN = Pattern.compile("(?:^|\\s)(?:!comp|!eb|!run)\\b.*?!end\\b",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    // reference definition of a roster block
+    private static final Pattern ROSTER_PATTERN = Pattern.compile("(?:^|\\s)(?:!roster)\\b.*?!end\\b",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    private static final String[] INPUTS = {
+            "",
+            "!comp team: a !end",
+            "!COMP team: a !END",
+            "  !eb 50\nteam: a\n!end",
+            "text before !run meowth\nteam: a\n!end text after",
+            "!compx team: a !end",
+            "!comp5 team: a !end",
+            "a!comp team: a !end",
+            "!comp team: a !ending !end",
+            "!comp team: a",
+            "!comp!end",
+            "!comp team: a !end\n\n!eb 100 team: b !end\n!run x team: c !end",
+            "!comp a !run b !end !end",
+            "!roster a (lv10) !end\n!comp team: a !end",
+            "!roster a !comp team: a !end",
+            "!roster a !end !roster b !end",
+            "line 1\r\nline 2\n\t!comp team: a !end",
+            "!comp team: a !end_ !end",
+            "!comp\u0301 team: a !end",
+            "!comp team: a !end\u0301 !end",
+            "\u00A0!comp team: a !end",
+            "!comp team: \uD83D\uDE00 !end",
+            "!\u017Foster a !end",
+    };
+
+    private static final String[] FUZZ_TOKENS = {
+            "!comp", "!eb", "!run", "!roster", "!end", "!COMP", "!End", "!ending", "!e", "!",
+            " ", "\n", "\t", "\r\n", "a", "team:", "50", "_", "\u0301",
+    };
+
+    @Test
+    public void testMatchesRegex() {
+        for (String input : INPUTS) {
+            assertEquals(scanWithRegex(input).toString(), BlockScanner.scan(input).toString(), input);
+        }
+    }
+
+    @Test
+    public void testMatchesRegex_Fuzz() {
+        Random random = new Random(0);
+        StringBuilder sb = new StringBuilder();
+        for (int i=0; i < 10000; i++) {
+            sb.setLength(0);
+            int numTokens = random.nextInt(30);
+            for (int t=0; t < numTokens; t++) {
+                sb.append(FUZZ_TOKENS[random.nextInt(FUZZ_TOKENS.length)]);
+            }
+            String input = sb.toString();
+            assertEquals(scanWithRegex(input).toString(), BlockScanner.scan(input).toString(), input);
+        }
+    }
+
+    @Test
+    public void testOffsets() {
+        String comment = "first line\n" +
+                "second line\n" +
+                "   !comp team: a !end\n" +
+                "!eb 50 team: b !end";
+        List<Block> blocks = BlockScanner.scan(comment);
+        assertEquals(2, blocks.size());
+
+        assertEquals(BlockType.RUN, blocks.get(0).getType());
+        assertEquals("!comp team: a !end", blocks.get(0).getContent());
+        assertEquals(2, blocks.get(0).getLineOffset());
+        assertEquals(3, blocks.get(0).getColOffset());
+
+        assertEquals("!eb 50 team: b !end", blocks.get(1).getContent());
+        assertEquals(3, blocks.get(1).getLineOffset());
+        assertEquals(0, blocks.get(1).getColOffset());
+    }
+
+    private static final String[] RUN_PATTERN_INPUTS = {
+            "!comp !end",
+            "!comp team: a !end",
+            "!run meowth !end",
+            "!run meowth team: a !end",
+            "!eb 50 !end",
+            "!eb 50 team: a !end",
+    };
+
+    private static final String[] RUN_PATTERN_LINE_BREAK_INPUTS = {
+            "!comp\nteam: a\n!end",
+            "\n!comp\nteam: a\n!end\n",
+            "\n!run meowth team: a !end\n",
+            "\n!run meowth\nteam: a\n!end\n",
+            "\n!run\nmeowth\nteam: a\n!end\n",
+            "\n!eb 50 team: a !end\n",
+            "\n!eb 50\nteam: a\n!end\n",
+            "\n!eb\n50\nteam: a\n!end\n",
+    };
+
+    private static Stream<String> runInputs() {
+        return Stream.concat(Arrays.stream(RUN_PATTERN_INPUTS), Arrays.stream(RUN_PATTERN_LINE_BREAK_INPUTS));
+    }
+
+    @Test
+    public void testScan_Basic() {
+        runInputs().forEach(input -> {
+            List<Block> blocks = BlockScanner.scan(input);
+            assertEquals(1, blocks.size(), input);
+            assertEquals(BlockType.RUN, blocks.get(0).getType());
+            assertEquals(input.trim(), blocks.get(0).getContent());
+            assertEquals(input.startsWith("\n") ? 1 : 0, blocks.get(0).getLineOffset(), input);
+            assertEquals(0, blocks.get(0).getColOffset(), input);
+        });
+    }
+
+    @Test
+    public void testScan_MidComment() {
+        runInputs().forEach(runDetails -> {
+            String input = "foo " + runDetails + " bar";
+            List<Block> blocks = BlockScanner.scan(input);
+            assertEquals(1, blocks.size(), input);
+            assertEquals(runDetails.trim(), blocks.get(0).getContent());
+
+            // on the first line the block starts after "foo ", otherwise at the start of its line
+            int expectedCol = runDetails.startsWith("\n") ? 0 : 4;
+            assertEquals(expectedCol, blocks.get(0).getColOffset(), input);
+        });
+    }
+
+    @Test
+    public void testScan_Multiple() {
+        runInputs().forEach(runDetails -> {
+            String input = "foo " + runDetails + " bar " + runDetails + " baz";
+            List<Block> blocks = BlockScanner.scan(input);
+            assertEquals(2, blocks.size(), input);
+            assertEquals(runDetails.trim(), blocks.get(0).getContent());
+            assertEquals(runDetails.trim(), blocks.get(1).getContent());
+        });
+    }
+
+    @Test
+    public void testScan_NoMatch() {
+        for (String runDetails : RUN_PATTERN_INPUTS) {
+            String input = "foo" + runDetails + "bar";
+            assertTrue(BlockScanner.scan(input).isEmpty(), input);
+        }
+    }
+
+    @Test
+    public void testScan_NoMatchMarkdownCodeWithoutSpace() {
+        // maybe this should match, but I'd like inlined code (e.g. `!comp`) to not trigger the bot
+        for (String runDetails : RUN_PATTERN_INPUTS) {
+            String input = "`" + runDetails + "`";
+            assertTrue(BlockScanner.scan(input).isEmpty(), input);
+        }
+    }
+
+    @Test
+    public void testScan_MatchMarkdownCodeWithSpace() {
+        runInputs().forEach(runDetails -> {
+            String input = "` " + runDetails + " `";
+            List<Block> blocks = BlockScanner.scan(input);
+            assertEquals(1, blocks.size(), input);
+            assertEquals(runDetails.trim(), blocks.get(0).getContent());
+        });
+    }
+
+    @Test
+    public void testScan_LineOffsets() {
+        String comment = "!roster\n" +
+                "SMCX (Lv15, SL2, 15/15) !end\n" +
+                "\n" +
+                "!eb 75  \n" +
+                "team: m-bee, buzzwole, s-diancie, hitmonlee ()  \n" +
+                "moves left: 9  \n" +
+                "items: none  \n" +
+                "!end  \n" +
+                "\n";
+        List<Block> blocks = BlockScanner.scan(comment);
+        assertEquals(2, blocks.size());
+
+        assertEquals(BlockType.ROSTER, blocks.get(0).getType());
+        assertEquals(0, blocks.get(0).getLineOffset());
+        assertEquals(0, blocks.get(0).getColOffset());
+
+        assertEquals(BlockType.RUN, blocks.get(1).getType());
+        assertEquals(3, blocks.get(1).getLineOffset());
+        assertEquals(0, blocks.get(1).getColOffset());
+    }
+
+    @Test
+    public void testScan_ColumnOffsets() {
+        String comment = "  !roster\n" +
+                "SMCX (Lv15, SL2, 15/15) !end\n" +
+                "\n" +
+                "zz  !eb 75  \n" +
+                "team: m-bee, buzzwole, s-diancie, hitmonlee ()  \n" +
+                "moves left: 9  \n" +
+                "items: none  \n" +
+                "!end  \n" +
+                "\n";
+        List<Block> blocks = BlockScanner.scan(comment);
+        assertEquals(2, blocks.size());
+
+        assertEquals(BlockType.ROSTER, blocks.get(0).getType());
+        assertEquals(0, blocks.get(0).getLineOffset());
+        assertEquals(2, blocks.get(0).getColOffset());
+
+        assertEquals(BlockType.RUN, blocks.get(1).getType());
+        assertEquals(3, blocks.get(1).getLineOffset());
+        assertEquals(4, blocks.get(1).getColOffset());
+    }
+
+    /**
+     * How UserCommentHandler found blocks before BlockScanner, ordered the same way BlockScanner orders them.
+     */
+    static List<Block> scanWithRegex(String comment) {
+        List<int[]> ends = new ArrayList<>();
+        List<Block> blocks = new ArrayList<>();
+        scanWithRegex(comment, PATTERN, BlockType.RUN, blocks, ends);
+        scanWithRegex(comment, ROSTER_PATTERN, BlockType.ROSTER, blocks, ends);
+
+        List<Integer> order = new ArrayList<>();
+        for (int i=0; i < blocks.size(); i++) {
+            order.add(i);
+        }
+        // by end, runs before rosters when they share an !end
+        order.sort(Comparator.comparingInt((Integer i) -> ends.get(i)[0]).thenComparingInt(i -> ends.get(i)[1]));
+
+        List<Block> ret = new ArrayList<>(blocks.size());
+        for (int i : order) {
+            ret.add(blocks.get(i));
+        }
+        return ret;
+    }
+
+    private static void scanWithRegex(String comment,
+                                      Pattern pattern,
+                                      BlockType type,
+                                      List<Block> blocks,
+                                      List<int[]> ends) {
+        Matcher m = pattern.matcher(comment);
+        while (m.find()) {
+            int start = m.start();
+            while (Character.isWhitespace(comment.codePointAt(start))) {
+                start += Character.charCount(comment.codePointAt(start));
+            }
+
+            String content = comment.substring(start, m.end()).trim();
+            blocks.add(new Block(type,
+                                 content,
+                                 getLineOffset(comment, start),
+                                 getColumnOffset(comment, start)));
+            ends.add(new int[] { m.end(), type.ordinal() });
+        }
+    }
+
+    /**
+     * @param comment   full comment
+     * @param start     start of run details block
+     * @return          number of new lines before start
+     */
+    private static int getLineOffset(String comment, int start) {
+        if (start == 0) {
+            return 0;
+        }
+
+        int cnt = 0;
+        int pos = comment.lastIndexOf('\n', start - 1);
+        while (pos >= 0) {
+            cnt++;
+            pos = comment.lastIndexOf('\n', pos - 1);
+        }
+        return cnt;
+    }
+
+    /**
+     * @param comment   full comment
+     * @param start     start of run details block
+     * @return          number of characters between start and the preceding new line
+     */
+    private static int getColumnOffset(String comment, int start) {
+        if (start == 0) {
+            return 0;
+        }
+
+        int newLinePos = comment.lastIndexOf('\n', start - 1);
+        // lastIndexOf will return -1 if no new line is found, which is actually what we want,
+        // that is to treat beginning of the string as having followed a new line
+        return start - newLinePos - 1;
+    }
+}
@@ -6,6 +6,7 @@ import org.jchien.shuffle.formatter.InvalidRunFormatter;
 import org.jchien.shuffle.formatter.RunFormatter;
 import org.jchien.shuffle.formatter.SummaryFormatter;
 import org.jchien.shuffle.model.BotComment;
+import org.jchien.shuffle.model.BotOutput;
 import org.jchien.shuffle.model.Stage;
 import org.jchien.shuffle.model.StageType;
 import org.jchien.shuffle.model.TablePartId;
@@ -13,6 +14,8 @@ import org.jchien.shuffle.model.UserRunDetails;
 import org.junit.jupiter.api.Test;
 
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -104,9 +107,9 @@ public class BotCommentHandlerTest {
     public void testWriteAggregateTable_OnePart() {
         RedditClient redditClient = mock(RedditClient.class);
         Submission submission = mock(Submission.class);
-        BotComment summaryContent = new BotComment("summaryId", "");
-        Map<TablePartId, BotComment> tableMap = mock(Map.class);
-        Map<String, BotComment> replyMap = mock(Map.class);
+        BotOutput summaryContent = new BotOutput("summaryId", BotOutput.hashContent(""));
+        Map<TablePartId, BotOutput> tableMap = mock(Map.class);
+        Map<String, BotOutput> replyMap = mock(Map.class);
         RunFormatter runFormatter = mock(RunFormatter.class);
 
         BotCommentHandler bch = spy(new BotCommentHandler(
@@ -141,9 +144,9 @@ public class BotCommentHandlerTest {
     public void testWriteAggregateTable_MultiPart() {
         RedditClient redditClient = mock(RedditClient.class);
         Submission submission = mock(Submission.class);
-        BotComment summaryContent = new BotComment("summaryId", "");
-        Map<TablePartId, BotComment> tableMap = mock(Map.class);
-        Map<String, BotComment> replyMap = mock(Map.class);
+        BotOutput summaryContent = new BotOutput("summaryId", BotOutput.hashContent(""));
+        Map<TablePartId, BotOutput> tableMap = mock(Map.class);
+        Map<String, BotOutput> replyMap = mock(Map.class);
         RunFormatter runFormatter = mock(RunFormatter.class);
 
         BotCommentHandler bch = spy(new BotCommentHandler(
@@ -191,6 +194,57 @@ public class BotCommentHandlerTest {
         }
     }
 
+    @Test
+    public void testWriteTablePart_UpToDate() {
+        RedditClient redditClient = mock(RedditClient.class);
+        Submission submission = mock(Submission.class);
+        Stage stage = new Stage(StageType.COMPETITION, null);
+        TablePartId partId = new TablePartId(stage, 0);
+        Map<TablePartId, BotOutput> tableMap = new HashMap<>();
+        tableMap.put(partId, new BotOutput("id0", BotOutput.hashContent("table\n\n")));
+
+        BotCommentHandler bch = new BotCommentHandler(
+                redditClient,
+                submission,
+                new BotOutput("summaryId", BotOutput.hashContent("")),
+                tableMap,
+                new HashMap<>(),
+                mock(RunFormatter.class)
+        );
+
+        // only the hash of the trimmed content is known, and that's enough to tell nothing needs writing
+        BotComment comment = bch.writeTablePart(partId, "summaryId", "table");
+        assertEquals("id0", comment.getCommentId());
+        assertEquals("table", comment.getContent());
+        verifyZeroInteractions(redditClient);
+    }
+
+    @Test
+    public void testCreateOrUpdateBotComments_LegacyReply() {
+        RedditClient redditClient = mock(RedditClient.class, RETURNS_DEEP_STUBS);
+        Submission submission = mock(Submission.class);
+        Map<String, BotOutput> replyMap = new HashMap<>();
+        // written before replies had markers
+        replyMap.put("userCommentId", new BotOutput("replyId", BotOutput.hashContent("Everything is good now.")));
+
+        BotCommentHandler bch = new BotCommentHandler(
+                redditClient,
+                submission,
+                null,
+                new HashMap<>(),
+                replyMap,
+                mock(RunFormatter.class)
+        );
+
+        bch.createOrUpdateBotComments(Collections.emptyMap(),
+                                      Collections.singletonMap("userCommentId", "user"),
+                                      Collections.emptyMap());
+
+        // marker gets added, but the user doesn't get a message about it
+        verify(redditClient.comment("replyId")).edit(InvalidRunFormatter.getAllGoodMessage());
+        verify(redditClient.me().inbox(), never()).compose(anyString(), anyString(), anyString());
+    }
+
     @Test
     public void testIsSummaryComment() {
         assertTrue(BotCommentHandler.isSummaryComment(SummaryFormatter.SUMMARY_HEADER));
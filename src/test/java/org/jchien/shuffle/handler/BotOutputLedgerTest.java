@@ -0,0 +1,123 @@
+package org.jchien.shuffle.handler;
+
+import org.jchien.shuffle.model.BotOutput;
+import org.jchien.shuffle.model.Stage;
+import org.jchien.shuffle.model.StageType;
+import org.jchien.shuffle.model.SubmissionOutput;
+import org.jchien.shuffle.model.TablePartId;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author jchien
+ */
+public class BotOutputLedgerTest {
+    private static final TablePartId COMP_PART = new TablePartId(new Stage(StageType.COMPETITION, null), 1);
+
+    private static final TablePartId EB_PART = new TablePartId(new Stage(StageType.ESCALATION_BATTLE, "50"), 0);
+
+    private static SubmissionOutput createOutput(String submissionId, Instant reconciledDate) {
+        Map<TablePartId, BotOutput> tables = new HashMap<>();
+        tables.put(COMP_PART, new BotOutput("t1", -5L, new HashSet<>(Arrays.asList("r1", "r2"))));
+        tables.put(EB_PART, new BotOutput("t2", 7L));
+
+        Map<String, BotOutput> replies = new HashMap<>();
+        replies.put("u1", new BotOutput("b1", 9L));
+
+        return new SubmissionOutput(submissionId, new BotOutput("s1", 3L), tables, replies, reconciledDate);
+    }
+
+    @Test
+    public void testFormatAndParseLines() {
+        SubmissionOutput expected = createOutput("abc", Instant.ofEpochMilli(2000));
+        SubmissionOutput actual = BotOutputLedger.parseLines(BotOutputLedger.formatLines(expected)).get("abc");
+
+        assertEquals(Instant.ofEpochMilli(2000), actual.getReconciledDate());
+        assertEquals("s1", actual.getSummary().getCommentId());
+        assertEquals(3L, actual.getSummary().getContentHash());
+
+        BotOutput comp = actual.getTables().get(COMP_PART);
+        assertEquals("t1", comp.getCommentId());
+        assertEquals(-5L, comp.getContentHash());
+        assertEquals(new HashSet<>(Arrays.asList("r1", "r2")), comp.getRunCommentIds());
+
+        BotOutput eb = actual.getTables().get(EB_PART);
+        assertEquals("t2", eb.getCommentId());
+        assertTrue(eb.getRunCommentIds().isEmpty());
+
+        assertEquals("b1", actual.getReplies().get("u1").getCommentId());
+        assertEquals(9L, actual.getReplies().get("u1").getContentHash());
+    }
+
+    @Test
+    public void testFormatAndParseLines_NoSummary() {
+        SubmissionOutput expected = new SubmissionOutput("abc",
+                                                         null,
+                                                         Collections.emptyMap(),
+                                                         Collections.emptyMap(),
+                                                         Instant.ofEpochMilli(2000));
+        SubmissionOutput actual = BotOutputLedger.parseLines(BotOutputLedger.formatLines(expected)).get("abc");
+
+        assertNull(actual.getSummary());
+        assertTrue(actual.getTables().isEmpty());
+    }
+
+    @Test
+    public void testParseLines_BadLine() {
+        List<String> lines = BotOutputLedger.formatLines(createOutput("abc", Instant.ofEpochMilli(2000)));
+        lines.addAll(BotOutputLedger.formatLines(createOutput("xyz", Instant.ofEpochMilli(2000))));
+        lines.add("T\tabc\tNOT_A_STAGE\t-\t0\tt3\t1\t-");
+
+        // a submission with a bad line is dropped entirely, so its comments get read back from reddit
+        Map<String, SubmissionOutput> outputs = BotOutputLedger.parseLines(lines);
+        assertFalse(outputs.containsKey("abc"));
+        assertTrue(outputs.containsKey("xyz"));
+    }
+
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        Path dir = Files.createTempDirectory("bot-output-ledger");
+        Path file = dir.resolve("ledger.tsv");
+        Instant reconciled = Instant.now();
+
+        BotOutputLedger ledger = new BotOutputLedger(file, 1000);
+        ledger.put(createOutput("abc", reconciled));
+        ledger.save();
+
+        BotOutputLedger loaded = new BotOutputLedger(file, 1000);
+        assertEquals(1, loaded.size());
+        assertEquals("t1", loaded.getTrusted("abc", reconciled).getTables().get(COMP_PART).getCommentId());
+    }
+
+    @Test
+    public void testGetTrusted() {
+        Instant reconciled = Instant.ofEpochMilli(10000);
+        BotOutputLedger ledger = new BotOutputLedger(null, 1000);
+        assertNull(ledger.getTrusted("abc", reconciled));
+
+        ledger.put(createOutput("abc", reconciled));
+        assertNotNull(ledger.getTrusted("abc", reconciled.plusMillis(999)));
+
+        // due to be read back from reddit
+        assertNull(ledger.getTrusted("abc", reconciled.plusMillis(1000)));
+
+        ledger.remove("abc");
+        assertNull(ledger.getTrusted("abc", reconciled));
+    }
+}
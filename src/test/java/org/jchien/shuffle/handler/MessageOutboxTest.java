@@ -0,0 +1,129 @@
+package org.jchien.shuffle.handler;
+
+import com.google.common.base.Strings;
+import com.google.common.util.concurrent.RateLimiter;
+import net.dean.jraw.RedditClient;
+import net.dean.jraw.references.InboxReference;
+import org.jchien.shuffle.formatter.InvalidRunFormatter;
+import org.jchien.shuffle.metrics.ScoreBotMetrics;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author jchien
+ */
+public class MessageOutboxTest {
+    private static final String URL = "https://www.reddit.com/r/test/comments/abc/title/";
+
+    @Test
+    public void testFormatDigests_OneNotification() {
+        List<String> digests = MessageOutbox.formatDigests(
+                Arrays.asList(new MessageOutbox.Notification(URL, "c1", "reply")));
+
+        // same message we'd send without the outbox
+        assertEquals(Arrays.asList(InvalidRunFormatter.getPrivateMessageContent(URL, "c1", "reply")), digests);
+    }
+
+    @Test
+    public void testFormatDigests_SplitAtMaxLength() {
+        String reply = Strings.repeat("x", 3000);
+        List<MessageOutbox.Notification> notifications = new ArrayList<>();
+        for (int i=0; i < 10; i++) {
+            notifications.add(new MessageOutbox.Notification(URL, "c" + i, reply));
+        }
+
+        List<String> digests = MessageOutbox.formatDigests(notifications);
+
+        // three per message
+        assertEquals(4, digests.size());
+        int found = 0;
+        for (String digest : digests) {
+            assertTrue(digest.length() <= MessageOutbox.MAX_MESSAGE_LENGTH);
+            for (int i=0; i < 10; i++) {
+                if (digest.contains(InvalidRunFormatter.getPrivateMessageContent(URL, "c" + i, reply))) {
+                    found++;
+                }
+            }
+        }
+        assertEquals(10, found);
+    }
+
+    @Test
+    public void testFormatDigests_TruncateLongReply() {
+        String reply = Strings.repeat("x", MessageOutbox.MAX_MESSAGE_LENGTH);
+        List<String> digests = MessageOutbox.formatDigests(
+                Arrays.asList(new MessageOutbox.Notification(URL, "c1", reply)));
+
+        assertEquals(1, digests.size());
+        assertEquals(MessageOutbox.MAX_MESSAGE_LENGTH, digests.get(0).length());
+    }
+
+    @Test
+    public void testDeliver_Coalesced() {
+        RedditClient redditClient = mock(RedditClient.class, RETURNS_DEEP_STUBS);
+        InboxReference inbox = redditClient.me().inbox();
+
+        // long enough that only the explicit deliver() below sends anything
+        MessageOutbox outbox = new MessageOutbox(redditClient, null, 60000, 3, ScoreBotMetrics.NOOP);
+        outbox.add("user", URL, "c1", "old reply");
+        outbox.add("user", URL, "c2", "other reply");
+        outbox.add("user", URL, "c1", "new reply");
+        outbox.add("someone", URL, "c3", "reply");
+        assertEquals(2, outbox.getPendingUsers());
+
+        outbox.deliver("user");
+
+        String expected = InvalidRunFormatter.getPrivateMessageContent(URL, "c1", "new reply") +
+                "\n\n*****\n\n" +
+                InvalidRunFormatter.getPrivateMessageContent(URL, "c2", "other reply");
+        verify(inbox).compose("user", MessageOutbox.SUBJECT, expected);
+        verify(inbox, times(1)).compose(eq("user"), any(), any());
+        assertEquals(1, outbox.getPendingUsers());
+
+        outbox.shutdown();
+        verify(inbox).compose("someone", MessageOutbox.SUBJECT,
+                              InvalidRunFormatter.getPrivateMessageContent(URL, "c3", "reply"));
+        assertEquals(0, outbox.getPendingUsers());
+    }
+
+    @Test
+    public void testShutdown_SendsPendingRetry() {
+        RedditClient redditClient = mock(RedditClient.class, RETURNS_DEEP_STUBS);
+        InboxReference inbox = redditClient.me().inbox();
+        doThrow(new RuntimeException("503")).doNothing().when(inbox).compose(any(), any(), any());
+
+        MessageOutbox outbox = new MessageOutbox(redditClient, null, 60000, 3, ScoreBotMetrics.NOOP);
+        outbox.add("user", URL, "c1", "reply");
+        outbox.deliver("user");
+        assertEquals(1, outbox.getPendingRetries());
+
+        // the retry is still minutes away, shutdown sends it instead of dropping it
+        outbox.shutdown();
+        verify(inbox, times(2)).compose("user", MessageOutbox.SUBJECT,
+                                        InvalidRunFormatter.getPrivateMessageContent(URL, "c1", "reply"));
+        assertEquals(0, outbox.getPendingRetries());
+    }
+
+    @Test
+    public void testShutdown_DropsWhatRateLimiterWontAllow() {
+        RedditClient redditClient = mock(RedditClient.class, RETURNS_DEEP_STUBS);
+        InboxReference inbox = redditClient.me().inbox();
+
+        // first permit is free, the next one is far past the shutdown deadline
+        RateLimiter rateLimiter = RateLimiter.create(0.001);
+        MessageOutbox outbox = new MessageOutbox(redditClient, rateLimiter, 60000, 3, ScoreBotMetrics.NOOP);
+        outbox.add("user", URL, "c1", "reply");
+        outbox.add("someone", URL, "c2", "reply");
+
+        outbox.shutdown();
+        verify(inbox, times(1)).compose(any(), any(), any());
+        assertEquals(0, outbox.getPendingUsers());
+    }
+}
@@ -0,0 +1,46 @@
+package org.jchien.shuffle.handler;
+
+import org.jchien.shuffle.model.ParsedComment;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * @author jchien
+ */
+public class ParsedCommentCacheTest {
+    private static final Instant CREATED = Instant.ofEpochMilli(1000);
+
+    private static final ParsedComment PARSED = new ParsedComment(Collections.emptyList(), Collections.emptyList());
+
+    @Test
+    public void testGet_Unchanged() {
+        ParsedCommentCache cache = new ParsedCommentCache(10);
+        cache.put("id", CREATED, "user", "!comp !end", PARSED);
+        assertSame(PARSED, cache.get("id", CREATED, "user", "!comp !end"));
+    }
+
+    @Test
+    public void testGet_Missing() {
+        ParsedCommentCache cache = new ParsedCommentCache(10);
+        assertNull(cache.get("id", CREATED, "user", "!comp !end"));
+    }
+
+    @Test
+    public void testGet_Edited() {
+        ParsedCommentCache cache = new ParsedCommentCache(10);
+        cache.put("id", CREATED, "user", "!comp !end", PARSED);
+        assertNull(cache.get("id", CREATED.plusMillis(1), "user", "!comp !end"));
+    }
+
+    @Test
+    public void testGet_Deleted() {
+        ParsedCommentCache cache = new ParsedCommentCache(10);
+        cache.put("id", CREATED, "user", "!comp !end", PARSED);
+        assertNull(cache.get("id", CREATED, "[deleted]", "[deleted]"));
+    }
+}
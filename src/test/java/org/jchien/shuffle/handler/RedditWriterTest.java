@@ -0,0 +1,115 @@
+package org.jchien.shuffle.handler;
+
+import net.dean.jraw.RedditClient;
+import net.dean.jraw.references.CommentReference;
+import net.dean.jraw.references.InboxReference;
+import org.jchien.shuffle.metrics.ScoreBotMetrics;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.actuate.metrics.GaugeService;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author jchien
+ */
+public class RedditWriterTest {
+    @Test
+    public void testFlush_LatestEditWins() {
+        RedditClient redditClient = mock(RedditClient.class);
+        CommentReference comment = mock(CommentReference.class);
+        doReturn(comment).when(redditClient).comment("a");
+
+        RedditWriter writer = new RedditWriter(redditClient, null, ScoreBotMetrics.NOOP);
+        writer.edit("a", "1");
+        writer.edit("a", "2");
+        assertEquals(1, writer.getQueueDepth());
+
+        writer.flush();
+
+        verify(comment, never()).edit("1");
+        verify(comment).edit("2");
+        assertEquals(0, writer.getQueueDepth());
+    }
+
+    @Test
+    public void testFlush_DeleteDropsEdit() {
+        RedditClient redditClient = mock(RedditClient.class);
+        CommentReference comment = mock(CommentReference.class);
+        doReturn(comment).when(redditClient).comment("a");
+
+        RedditWriter writer = new RedditWriter(redditClient, null, ScoreBotMetrics.NOOP);
+        writer.edit("a", "1");
+        writer.delete("a");
+        writer.edit("a", "2");
+        writer.delete("a");
+
+        writer.flush();
+
+        verify(comment, never()).edit(any());
+        verify(comment, times(1)).delete();
+    }
+
+    @Test
+    public void testFlush_FailureDoesNotStopOtherWrites() {
+        RedditClient redditClient = mock(RedditClient.class);
+        CommentReference a = mock(CommentReference.class);
+        CommentReference b = mock(CommentReference.class);
+        doReturn(a).when(redditClient).comment("a");
+        doReturn(b).when(redditClient).comment("b");
+        doThrow(new IllegalStateException()).when(a).edit(any());
+
+        RedditWriter writer = new RedditWriter(redditClient, null, ScoreBotMetrics.NOOP);
+        writer.edit("a", "1");
+        writer.edit("b", "1");
+
+        assertEquals(1, writer.flush());
+        verify(b).edit("1");
+    }
+
+    @Test
+    public void testFlush_RecordsQueueMetrics() {
+        RedditClient redditClient = mock(RedditClient.class);
+        doReturn(mock(CommentReference.class)).when(redditClient).comment(any());
+        GaugeService gaugeService = mock(GaugeService.class);
+
+        RedditWriter writer = new RedditWriter(redditClient, null, new ScoreBotMetrics(null, gaugeService));
+        writer.edit("a", "1");
+        writer.edit("b", "1");
+        writer.delete("a");
+        writer.flush();
+
+        verify(gaugeService).submit("gauge.shufflescorebot." + ScoreBotMetrics.WRITE_QUEUE_DEPTH, 2.0);
+        verify(gaugeService).submit(eq("timer.shufflescorebot." + ScoreBotMetrics.WRITE_DRAIN), anyDouble());
+    }
+
+    @Test
+    public void testFlush_NotifiesAfterEdit() {
+        RedditClient redditClient = mock(RedditClient.class, RETURNS_DEEP_STUBS);
+        CommentReference comment = mock(CommentReference.class);
+        doReturn(comment).when(redditClient).comment("a");
+        InboxReference inbox = redditClient.me().inbox();
+
+        RedditWriter writer = new RedditWriter(redditClient, null, ScoreBotMetrics.NOOP);
+        writer.editAndNotify("a", "reply", "user", "url", "b");
+        writer.flush();
+
+        verify(comment).edit("reply");
+        verify(inbox).compose(eq("user"), eq(MessageOutbox.SUBJECT), any());
+    }
+
+    @Test
+    public void testFlush_FailedEditDropsNotification() {
+        RedditClient redditClient = mock(RedditClient.class, RETURNS_DEEP_STUBS);
+        CommentReference comment = mock(CommentReference.class);
+        doReturn(comment).when(redditClient).comment("a");
+        doThrow(new IllegalStateException()).when(comment).edit(any());
+        InboxReference inbox = redditClient.me().inbox();
+
+        RedditWriter writer = new RedditWriter(redditClient, null, ScoreBotMetrics.NOOP);
+        writer.editAndNotify("a", "reply", "user", "url", "b");
+
+        assertEquals(1, writer.flush());
+        verify(inbox, never()).compose(any(), any(), any());
+    }
+}
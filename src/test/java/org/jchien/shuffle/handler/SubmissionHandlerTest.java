@@ -0,0 +1,81 @@
+package org.jchien.shuffle.handler;
+
+import net.dean.jraw.RedditClient;
+import net.dean.jraw.models.Comment;
+import net.dean.jraw.models.Submission;
+import net.dean.jraw.tree.CommentNode;
+import net.dean.jraw.tree.ReplyCommentNode;
+import net.dean.jraw.tree.RootCommentNode;
+import org.jchien.shuffle.metrics.ScoreBotMetrics;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author jchien
+ */
+public class SubmissionHandlerTest {
+    @Test
+    public void testProcessCommentsStreaming_NestedRepliesInLoadedBatch() {
+        RedditClient redditClient = mock(RedditClient.class);
+        Submission submission = mock(Submission.class);
+        doReturn("s").when(submission).getId();
+
+        RootCommentNode root = mock(RootCommentNode.class);
+        doReturn(submission).when(root).getSubject();
+
+        ReplyCommentNode a = mockNode("a", root);
+        doReturn(new ArrayList<>(Collections.singletonList(a))).when(root).getReplies();
+
+        // the loaded batch has b and its reply c, and c is also linked under b
+        ReplyCommentNode b = mockNode("b", root);
+        ReplyCommentNode c = mockNode("c", b);
+        doReturn(new ArrayList<>(Collections.singletonList(c))).when(b).getReplies();
+
+        // second batch comes back empty even though reddit says there's more
+        doReturn(true, true, false).when(root).hasMoreChildren();
+        doReturn(Arrays.asList(b, c), Collections.emptyList()).when(root).replaceMore(redditClient);
+
+        SubmissionHandler handler = new SubmissionHandler(createContext(redditClient), submission);
+
+        // root, a, b, and c each processed once
+        assertEquals(4, handler.processCommentsStreaming(root, "bot", 0));
+        verify(root, times(2)).replaceMore(redditClient);
+    }
+
+    private static ReplyCommentNode mockNode(String id, CommentNode<?> parent) {
+        Comment comment = mock(Comment.class);
+        doReturn(id).when(comment).getId();
+        doReturn("user").when(comment).getAuthor();
+        doReturn("no runs here").when(comment).getBody();
+        doReturn(new Date(1000)).when(comment).getCreated();
+
+        ReplyCommentNode node = mock(ReplyCommentNode.class);
+        doReturn(comment).when(node).getSubject();
+        doReturn(parent).when(node).getParent();
+        doReturn(new ArrayList<>()).when(node).getReplies();
+        return node;
+    }
+
+    private static HandlerContext createContext(RedditClient redditClient) {
+        return new HandlerContext(redditClient,
+                                  new ParsedCommentCache(100),
+                                  null,
+                                  true,
+                                  false,
+                                  0,
+                                  false,
+                                  null,
+                                  null,
+                                  null,
+                                  null,
+                                  ScoreBotMetrics.NOOP);
+    }
+}
@@ -0,0 +1,73 @@
+package org.jchien.shuffle.model;
+
+import org.jchien.shuffle.parser.exception.ItemException;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author jchien
+ */
+public class ItemTest {
+    @Test
+    public void testGet_AllAliases() throws ItemException {
+        for (Item item : Item.values()) {
+            for (String alias : item.getAliases()) {
+                assertEquals(item, Item.get(alias), alias);
+                assertEquals(item, Item.get(alias.toUpperCase()), alias);
+                assertEquals(item, Item.get(alias.toLowerCase()), alias);
+                assertEquals(item, Item.get(alias.replace(" ", "")), alias);
+                assertEquals(item, Item.get(" \t" + alias.replace(" ", "\n ") + "\r\n"), alias);
+            }
+        }
+    }
+
+    @Test
+    public void testGet_Spacing() throws ItemException {
+        assertEquals(Item.MOVES_PLUS_5, Item.get("m + 5"));
+        assertEquals(Item.MEGA_START, Item.get("M S"));
+        assertEquals(Item.ATTACK_POWER_UP, Item.get("Attack\u000BPower\fUp"));
+        assertEquals(Item.DISRUPTION_DELAY, Item.get("disruptiondelay"));
+    }
+
+    @Test
+    public void testGet_NoSuchItem() {
+        String[] inputs = { "", " ", "m", "full", "ms+5", "+5 movesx", "d d d", "jewels" };
+        for (String input : inputs) {
+            ItemException e = assertThrows(ItemException.class, () -> Item.get(input));
+            assertTrue(e.getMessage().startsWith("No such item: \"" + input + "\"."), e.getMessage());
+        }
+
+        assertThrows(ItemException.class, () -> Item.get(null));
+    }
+
+    @Test
+    public void testGet_Suggestions() {
+        assertEquals("No such item: \"ms+5\". Did you mean \"M+5\"?", getMessage("ms+5"));
+        assertEquals("No such item: \"attak up\". Did you mean \"attack up\"?", getMessage("attak up"));
+        assertEquals("No such item: \"Disruption Dealy\". Did you mean \"disruption delay\"?",
+                     getMessage("Disruption Dealy"));
+        assertEquals("No such item: \"jewels\". Did you mean \"Jewel\"?", getMessage("jewels"));
+
+        // too short to guess at
+        assertEquals("No such item: \"+6\".", getMessage("+6"));
+        assertEquals("No such item: \"full\".", getMessage("full"));
+    }
+
+    @Test
+    public void testSuggest_ClosestFirst() {
+        ItemAliasTrie trie = new ItemAliasTrie(Item.values());
+
+        assertEquals(Collections.singletonList("+10"), trie.suggest("+1O", 1, 3));
+        assertEquals(Arrays.asList("+10", "+5", "T+10"), trie.suggest("+1O", 2, 3));
+        assertEquals(Collections.singletonList("+10 Secs"), trie.suggest("+10 sec", 2, 3));
+        assertTrue(trie.suggest("ms", 1, 0).isEmpty());
+    }
+
+    private static String getMessage(String input) {
+        return assertThrows(ItemException.class, () -> Item.get(input)).getMessage();
+    }
+}
@@ -0,0 +1,237 @@
+package org.jchien.shuffle.parser;
+
+import org.jchien.shuffle.parser.exception.FormatException;
+import org.jchien.shuffle.parser.exception.SkillException;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks Canonicalizer's field parsers against the regexes they replaced.
+ *
+ * @author jchien
+ */
+public class CanonicalizerRegexTest {
+    private static final String[] INPUTS = {
+            "",
+            " ",
+            "10",
+            "lv10",
+            "Lvl 10",
+            "LV\t10",
+            "lv",
+            "lvl",
+            "lvll10",
+            "l10",
+            "10 ",
+            "99999999999",
+            "lv00000000000000000015",
+            "sl5",
+            "SL 5 shot out",
+            "shot out sl5",
+            "shot out SL 5 ",
+            "shot sl5 out",
+            "sl5 shot sl4",
+            "sl5sl4",
+            "sl5_",
+            "xsl5",
+            "_sl5",
+            "sl5 x sl4 y",
+            "sl0",
+            "sl6",
+            "sl99999999999",
+            "sl",
+            "sl ",
+            "slx",
+            "sl 5",
+            "sl\n5",
+            " sl5 ",
+            "swap++",
+            "power  of\t4",
+            "\u0001 power of 4 \u0001",
+            "sl5\u0301 shot",
+            "a\u0301sl5",
+            "\u0301sl5",
+            "shot sl5\u0301",
+            "12/15",
+            " 12 / 15 ",
+            "12/",
+            "/15",
+            "12/15/18",
+            "12\t/\n15",
+            "1a/15",
+            "99999999999/1",
+            "had  a\tbunch of\n disruptions   early on",
+    };
+
+    private static final String[] FUZZ_TOKENS = {
+            "sl", "SL", "Sl", "lv", "lvl", "LV", "5", "10", "0", "6", "/", " ", " ", "\t", "\n", "\u000B",
+            "shot", "out", "x", "_", "+", "\u0301", "\u0001",
+    };
+
+    @Test
+    public void testMatchesRegex() {
+        for (String input : INPUTS) {
+            assertMatchesRegex(input);
+        }
+    }
+
+    @Test
+    public void testMatchesRegex_Fuzz() {
+        Random random = new Random(0);
+        StringBuilder sb = new StringBuilder();
+        for (int i=0; i < 20000; i++) {
+            sb.setLength(0);
+            int numTokens = random.nextInt(8);
+            for (int t=0; t < numTokens; t++) {
+                sb.append(FUZZ_TOKENS[random.nextInt(FUZZ_TOKENS.length)]);
+            }
+            assertMatchesRegex(sb.toString());
+        }
+    }
+
+    private static void assertMatchesRegex(String input) {
+        Canonicalizer c = new Canonicalizer();
+        assertEquals(outcome(() -> getLevel(input)), outcome(() -> c.getLevel(input)), "level: " + input);
+        assertEquals(outcome(() -> getSkillLevel(input)), outcome(() -> c.getSkillLevel(input)), "skill level: " + input);
+        assertEquals(outcome(() -> getSkillName(input)), outcome(() -> c.getSkillName(input)), "skill name: " + input);
+        assertEquals(outcome(() -> getMsuCount(input)), outcome(() -> c.getMsuCount(input)), "msu count: " + input);
+        assertEquals(outcome(() -> getMaxMsus(input)), outcome(() -> c.getMaxMsus(input)), "max msus: " + input);
+        assertEquals(outcome(() -> getNotes(input)), outcome(() -> c.getNotes(input)), "notes: " + input);
+    }
+
+    private static String outcome(Callable<?> callable) {
+        try {
+            return String.valueOf(callable.call());
+        } catch (Exception e) {
+            return e.getClass().getName() + ": " + e.getMessage();
+        }
+    }
+
+    // How Canonicalizer parsed fields before it scanned characters
+
+    private static final Pattern LEVEL_PATTERN = Pattern.compile("(?:lvl?\\s*)?(\\d+)", Pattern.CASE_INSENSITIVE);
+
+    static Integer getLevel(String raw) throws FormatException {
+        if (raw == null) {
+            return null;
+        }
+
+        Matcher m = LEVEL_PATTERN.matcher(raw);
+        if (!m.matches()) {
+            throw new FormatException("Unable to parse level: \"" + raw + "\".");
+        }
+        return Integer.parseInt(m.group(1), 10);
+    }
+
+    private static final Pattern SKILL_LEVEL_PATTERN = Pattern.compile("\\s*\\bsl\\s*(\\d+)\\b\\s*", Pattern.CASE_INSENSITIVE);
+
+    static Integer getSkillLevel(String raw) throws FormatException {
+        if (raw == null) {
+            return null;
+        }
+
+        Matcher m = SKILL_LEVEL_PATTERN.matcher(raw);
+        if (!m.find()) {
+            return null;
+        }
+
+        String levelStr = m.group(1);
+        int start = m.start();
+        int end = m.end();
+
+        if (start != 0 && end != raw.length()) {
+            String matchedText = m.group(0).trim();
+            throw new SkillException(
+                    String.format("Skill level \"%s\" must be at the start or end of the skill section \"%s\".",
+                            matchedText,
+                            raw));
+        }
+
+        if (m.find()) {
+            throw new SkillException("Multiple skill levels defined: \"" + raw + "\".");
+        }
+
+        int skillLevel = Integer.parseInt(levelStr, 10);
+        if (skillLevel < 1 || skillLevel > 5) {
+            throw new SkillException("Invalid skill level " + skillLevel + ": \"" + raw + "\".");
+        }
+        return skillLevel;
+    }
+
+    private static final Pattern SKILL_NAME_PATTERN = Pattern.compile("(?:\\bsl\\s*\\d+\\b)?(.*?)(?:\\bsl\\s*\\d+\\b)?",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    static String getSkillName(String raw) {
+        if (raw == null) {
+            return null;
+        }
+
+        Matcher m = SKILL_NAME_PATTERN.matcher(raw);
+        if (!m.matches()) {
+            return null;
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (int i=1; i <= m.groupCount(); i++) {
+            if (m.group(i).length() == 0) {
+                continue;
+            }
+
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            sb.append(m.group(i));
+        }
+
+        String ret = sb.toString()
+                .replaceAll("\\s+", " ")
+                .trim();
+
+        if (ret.length() == 0) {
+            return null;
+        }
+        return ret;
+    }
+
+    private static final Pattern MSU_PATTERN = Pattern.compile("\\s*(\\d+)\\s*/\\s*(\\d+)\\s*");
+
+    static Integer getMsuCount(String raw) throws FormatException {
+        if (raw == null) {
+            return null;
+        }
+
+        Matcher m = MSU_PATTERN.matcher(raw);
+        if (!m.matches()) {
+            throw new FormatException("Unable to parse msu count: \n" + raw +"\n");
+        }
+        return Integer.parseInt(m.group(1));
+    }
+
+    static Integer getMaxMsus(String raw) throws FormatException {
+        if (raw == null) {
+            return null;
+        }
+
+        Matcher m = MSU_PATTERN.matcher(raw);
+        if (!m.matches()) {
+            throw new FormatException("Unable to parse max msus: \n" + raw +"\n");
+        }
+        return Integer.parseInt(m.group(2));
+    }
+
+    static String getNotes(String raw) {
+        if (raw == null) {
+            return null;
+        }
+
+        return raw.replaceAll("[\\t\\n\\r]", " ")
+                .replaceAll("\\s+", " ")
+                .trim();
+    }
+}
@@ -3,6 +3,7 @@ package org.jchien.shuffle.parser;
 import org.jchien.shuffle.model.StageType;
 import org.jchien.shuffle.parser.exception.FormatException;
 import org.jchien.shuffle.model.Item;
+import org.jchien.shuffle.model.Pokemon;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
@@ -654,4 +655,22 @@ public class CanonicalizerTest {
             assertThrows(FormatException.class, () -> c.getStage(input, StageType.ESCALATION_BATTLE));
         }
     }
+
+    @Test
+    public void testValidate() throws FormatException {
+        Canonicalizer c = new Canonicalizer();
+
+        c.validate(new Pokemon("Mega Tyranitar", 15, null, null, 12, 20, false));
+        c.validate(new Pokemon("Vanilluxe", Canonicalizer.MAX_LEVEL, 5, "Shot Out", 0, 0, false));
+        c.validate(new Pokemon("Missingno", 1, 5, "Anything", 1, 1, false));
+        c.validate(new Pokemon("Vanilluxe", null, null, null, null, null, true));
+
+        Pokemon[] invalid = {
+                new Pokemon("Mega Tyranitar", Canonicalizer.MAX_LEVEL + 1, null, null, null, null, false),
+                new Pokemon("Missingno", null, null, null, 5, 3, false),
+        };
+        for (Pokemon pokemon : invalid) {
+            assertThrows(FormatException.class, () -> c.validate(pokemon));
+        }
+    }
 }
@@ -0,0 +1,143 @@
+package org.jchien.shuffle.parser;
+
+import org.jchien.shuffle.parser.exception.FormatException;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks FastRunParser against RunParser. Whenever FastRunParser accepts a block, RunParser has to accept it too and
+ * give the same details.
+ *
+ * @author jchien
+ */
+public class FastRunParserTest {
+    // blocks the fast path is expected to handle
+    private static final String[] WELL_FORMED = {
+            "!eb 100\n" +
+                    "notes: basic notes about the run\n" +
+                    "team: mmy (Lv10, sl5 power of 4, 14/14), unown! (sl1), necrozma (Lv1), silvally (perfect)\n" +
+                    "items: m+5, dd\n" +
+                    "moves left: 5\n" +
+                    "!end\n",
+            "!comp  \nTeam: M-Ttar (Lv10), A-Ninetales (Lv12, SL4)  \nItems: MS, DD, APU  \nScore: 123,456  \n!end  \n",
+            "!COMP TEAM: mmy (LV 10, 3/3) SCORE: 100 !END",
+            "!run meowth\nteam: a, b, c, d\nitems: none\ntime left: 12\n!end",
+            "!run Meowth Coin Mania\nteam: a (Lv 5)\n!end",
+            "!eb 50 team: a (sl5 Shot Out, Lv15) moves left: 0 !end",
+            "!comp team: mmy (Lv1 Lv2) !end",
+            "!comp\tteam:\tmmy\r\nscore:\t1\r\n!end\r\n",
+            "!comp moves\nleft: 3 team: a !end",
+            "!comp team: a notes: used the wrong skill (oops), next time: swap++ !end",
+            "!comp notes: !end",
+            "!comp notes: first notes: second team: a !end",
+            "!comp team: a's pokemon (sl?) !end",
+            "!comp team: a !end ~~ :: ~~ ",
+            // !endx is just a word
+            "!comp team: a !endx !end",
+    };
+
+    // blocks that have to go to RunParser, either because they're malformed or they aren't ascii
+    private static final String[] FALLBACK = {
+            "",
+            "!comp !end",
+            "!comp team: a",
+            "!comp team: a team: b !end",
+            "!comp score: 1 score: 2 team: a !end",
+            "!comp items: a items: b !end",
+            "!comp moves left: 1 time left: 2 !end",
+            "!comp time left: 1 moves left: 2 !end",
+            "!comp moves left: 1 moves left: 2 !end",
+            "!comp team: perfect !end",
+            "!comp team: a (perfect, lv1) !end",
+            "!comp team: a (lv1 !end",
+            "!comp team: a (1/) !end",
+            "!comp moves  left: 3 !end",
+            "!comp team: a !end x",
+            "!comp team: a !end )",
+            "!compx team: a !end",
+            "!eb team: a !end",
+            "!run !end",
+            "!roster a !end",
+            "team: a !end",
+            "!comp team: \u00e9 !end",
+            "!comp team: a\u00A0b !end",
+            "!comp moves\u2003left: 3 team: a !end",
+            "!comp team: \u017Fcore !end",
+    };
+
+    private static final String[] FUZZ_TOKENS = {
+            "!comp", "!eb", "!run", "!roster", "!end", "!COMP", "!End", "!ending",
+            "team:", "Team:", "score:", "items:", "moves left:", "moves", "left:", "time left:", "notes:",
+            "perfect", "perfectly", "mmy", "Lv10", "lv", "sl5", "3/4", "+5", "50", "1,234",
+            "(", ")", ",", "/", ":", "'", "*", " ", " ", " ", "\n", "\t", "\r\n",
+    };
+
+    @Test
+    public void testWellFormed() {
+        for (String input : WELL_FORMED) {
+            assertNotNull(FastRunParser.parse(input), input);
+            assertSameAsRunParser(input);
+        }
+    }
+
+    @Test
+    public void testFallback() {
+        for (String input : FALLBACK) {
+            assertNull(FastRunParser.parse(input), input);
+        }
+    }
+
+    @Test
+    public void testFuzz() {
+        Random random = new Random(0);
+        StringBuilder sb = new StringBuilder();
+        int accepted = 0;
+        for (int i=0; i < 20000; i++) {
+            sb.setLength(0);
+            // mostly start with a header, otherwise almost nothing would get past the first token
+            if (random.nextInt(10) > 0) {
+                sb.append(FUZZ_TOKENS[random.nextInt(3)]).append(' ');
+            }
+            int numTokens = random.nextInt(25);
+            for (int t=0; t < numTokens; t++) {
+                sb.append(FUZZ_TOKENS[random.nextInt(FUZZ_TOKENS.length)]);
+                if (random.nextBoolean()) {
+                    sb.append(' ');
+                }
+            }
+            if (random.nextInt(10) > 0) {
+                sb.append(" !end");
+            }
+
+            if (assertSameAsRunParser(sb.toString())) {
+                accepted++;
+            }
+        }
+
+        // make sure the fuzzing actually exercises the fast path
+        assertTrue(accepted > 100, "only " + accepted + " inputs were accepted");
+    }
+
+    /**
+     * @return true if FastRunParser accepted the input
+     */
+    private static boolean assertSameAsRunParser(String input) {
+        RawRunDetails fast = FastRunParser.parse(input);
+        if (fast == null) {
+            return false;
+        }
+
+        RunParser p = new RunParser(new StringReader(input));
+        try {
+            p.start();
+        } catch (ParseException | FormatException | TokenMgrError e) {
+            fail("RunParser rejected input that FastRunParser accepted: " + input, e);
+        }
+        assertEquals(p.getDetails(), fast, input);
+        return true;
+    }
+}
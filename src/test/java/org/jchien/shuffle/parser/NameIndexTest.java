@@ -0,0 +1,96 @@
+package org.jchien.shuffle.parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author jchien
+ */
+public class NameIndexTest {
+    private static final String DATA = "# comment\n" +
+            "\n" +
+            "Mega Tyranitar\tM-Ttar\tMega Ttar\n" +
+            "Mega Latias\tM-Latias\n" +
+            "Mega Latios\tM-Latios\n" +
+            "Landorus (Therian Forme)\tLando-T\n" +
+            "Unown !\n" +
+            "Unown ?\n";
+
+    @Test
+    public void testExact() throws IOException {
+        NameIndex index = load(DATA);
+        assertEquals("Mega Tyranitar", index.canonicalize("Mega Tyranitar"));
+        assertEquals("Mega Tyranitar", index.canonicalize("m-ttar"));
+        assertEquals("Mega Tyranitar", index.canonicalize("MTTAR"));
+        assertEquals("Mega Tyranitar", index.canonicalize("mega  ttar"));
+        assertEquals("Mega Tyranitar", index.canonicalize("mega-tyranitar"));
+        assertEquals("Landorus (Therian Forme)", index.canonicalize("lando t"));
+        assertEquals("Unown !", index.canonicalize("unown!"));
+        assertEquals("Unown ?", index.canonicalize("Unown?"));
+    }
+
+    @Test
+    public void testTypos() throws IOException {
+        NameIndex index = load(DATA);
+        assertEquals("Mega Tyranitar", index.canonicalize("mega tyranitr"));
+        assertEquals("Mega Tyranitar", index.canonicalize("mega tryanitar"));
+        assertEquals("Mega Tyranitar", index.canonicalize("M-Tar"));
+        assertEquals("Landorus (Therian Forme)", index.canonicalize("Lando-TT"));
+    }
+
+    @Test
+    public void testNoMatch() throws IOException {
+        NameIndex index = load(DATA);
+        assertNull(index.canonicalize("silvally"));
+        assertNull(index.canonicalize(""));
+
+        // too far off
+        assertNull(index.canonicalize("mega tyrant"));
+
+        // one edit from both
+        assertNull(index.canonicalize("mega latis"));
+
+        // too short to guess at
+        assertNull(index.canonicalize("unown"));
+    }
+
+    @Test
+    public void testConflictingAliases() {
+        assertThrows(IllegalArgumentException.class, () -> load("Mega Latias\tMLat\nMega Latios\tM-Lat\n"));
+    }
+
+    @Test
+    public void testBundledData() {
+        NameIndex pokemon = ShuffleDex.getPokemonNames();
+        assertEquals("Mega Tyranitar", pokemon.canonicalize("M-Ttar"));
+        assertEquals("Shiny Mega Charizard X", pokemon.canonicalize("SMCX"));
+        assertEquals("Mega Mewtwo Y", pokemon.canonicalize("mmy"));
+        assertEquals("Alolan Ninetales", pokemon.canonicalize("A-Ninetales"));
+        assertEquals("Unown !", pokemon.canonicalize("unown!"));
+
+        NameIndex skills = ShuffleDex.getSkillNames();
+        assertEquals("Power of 4", skills.canonicalize("power of 4"));
+        assertEquals("Shot Out", skills.canonicalize("shot out"));
+        assertEquals("Swap++", skills.canonicalize("swap++"));
+        assertEquals("Swap+", skills.canonicalize("swap+"));
+        assertEquals("Mega Boost++", skills.canonicalize("mega boost++"));
+
+        // fuzzy matching is off until the name lists are complete
+        assertNull(pokemon.canonicalize("mega tyranitr"));
+    }
+
+    @Test
+    public void testFuzzyOff() throws IOException {
+        NameIndex index = NameIndex.load(new StringReader(DATA), false);
+        assertEquals("Mega Tyranitar", index.canonicalize("m-ttar"));
+        assertNull(index.canonicalize("mega tyranitr"));
+    }
+
+    private static NameIndex load(String data) throws IOException {
+        return NameIndex.load(new StringReader(data), true);
+    }
+}
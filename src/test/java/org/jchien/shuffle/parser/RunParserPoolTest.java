@@ -0,0 +1,70 @@
+package org.jchien.shuffle.parser;
+
+import org.jchien.shuffle.model.MoveType;
+import org.jchien.shuffle.model.StageType;
+import org.jchien.shuffle.parser.exception.FormatException;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author jchien
+ */
+public class RunParserPoolTest {
+    private static final String FULL_RUN = "!eb 100\n" +
+            "notes: basic notes about the run\n" +
+            "team: mmy (Lv10, sl5 power of 4, 14/14), silvally (perfect)\n" +
+            "items: m+5, dd\n" +
+            "moves left: 5\n" +
+            "!end\n";
+
+    private static final List<RawPokemon> FULL_RUN_TEAM = Arrays.asList(
+            new RawPokemon("mmy", "Lv10", "sl5 power of 4", "14/14", false),
+            new RawPokemon("silvally", null, null, null, true)
+    );
+
+    @Test
+    public void testReusedParser() throws ParseException, FormatException {
+        RunParser first = RunParserPool.acquire(FULL_RUN);
+        first.start();
+        RawRunDetails firstDetails = first.getDetails();
+
+        RunParser second = RunParserPool.acquire("!comp\nteam: mmy\n!end\n");
+        assertSame(first, second);
+        second.start();
+        RawRunDetails secondDetails = second.getDetails();
+
+        // nothing from the first run carries over
+        RawRunDetails expected = new RawRunDetails(
+                Collections.singletonList(new RawPokemon("mmy", null, null, null, false)),
+                null,
+                null,
+                null,
+                null,
+                null,
+                StageType.COMPETITION,
+                MoveType.MOVES,
+                null);
+        assertEquals(expected, secondDetails);
+
+        // and the first run's details aren't changed by reusing the parser
+        assertEquals(FULL_RUN_TEAM, firstDetails.getTeam());
+        assertEquals(Arrays.asList("m+5", "dd"), firstDetails.getItems());
+        assertEquals("5", firstDetails.getMovesLeft());
+        assertEquals(MoveType.MOVES, firstDetails.getMoveType());
+    }
+
+    @Test
+    public void testReusedAfterError() throws ParseException, FormatException {
+        RunParser p = RunParserPool.acquire("!eb 100\nteam: mmy\nteam: mmy\n!end\n");
+        assertThrows(FormatException.class, p::start);
+
+        p = RunParserPool.acquire(FULL_RUN);
+        p.start();
+        assertEquals(FULL_RUN_TEAM, p.getDetails().getTeam());
+    }
+}